@@ -14,6 +14,12 @@ public class NailgunRunner {
   private static final String SERVER_DESCRIPTION = "Scala compile server";
   private static final String SERVER_CLASS_NAME = "org.jetbrains.jps.incremental.scala.remote.Main";
 
+  private static final String STATUS_ALIAS = "compile-server-status";
+  private static final String STATUS_DESCRIPTION = "Scala compile server status";
+
+  private static final String WARMUP_ALIAS = "compile-server-warmup";
+  private static final String WARMUP_DESCRIPTION = "Scala compile server warm-up";
+
   private static final String STOP_ALIAS_START = "stop_";
   private static final String STOP_CLASS_NAME = "com.martiansoftware.nailgun.builtins.NGStop";
 
@@ -41,6 +47,8 @@ public class NailgunRunner {
 
     Class serverClass = Class.forName(SERVER_CLASS_NAME);
     server.getAliasManager().addAlias(new Alias(SERVER_ALIAS, SERVER_DESCRIPTION, serverClass));
+    server.getAliasManager().addAlias(new Alias(STATUS_ALIAS, STATUS_DESCRIPTION, serverClass));
+    server.getAliasManager().addAlias(new Alias(WARMUP_ALIAS, WARMUP_DESCRIPTION, serverClass));
 
     Class stopClass = Class.forName(STOP_CLASS_NAME);
     String stopAlias = STOP_ALIAS_START + id;
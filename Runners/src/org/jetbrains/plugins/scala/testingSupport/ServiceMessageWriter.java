@@ -0,0 +1,175 @@
+package org.jetbrains.plugins.scala.testingSupport;
+
+/**
+ * Buffered output of the ##teamcity service messages of the test runners.
+ * <p/>
+ * A message is built in a reusable per-thread buffer, the attribute values are escaped as they are appended.
+ * The complete messages are collected in a shared buffer, which is printed when it's full or when it's flushed
+ * explicitly. The runners flush it before the exit. The writer itself flushes it after the messages that the
+ * output of a test or a suite has to follow (the suite start and the test start events), on suite completion,
+ * and on the JVM shutdown (as a test may call System.exit). The test completion events stay buffered.
+ */
+public class ServiceMessageWriter {
+  private static final int BUFFER_LIMIT = 8 * 1024;
+
+  private static final String MESSAGE_PREFIX = "##teamcity[";
+
+  private static final String[] FLUSHING_MESSAGES = {"testSuiteStarted", "testStarted", "testSuiteFinished"};
+
+  private static final Object LOCK = new Object();
+  private static final StringBuilder buffer = new StringBuilder(2 * BUFFER_LIMIT);
+
+  private static final ThreadLocal<Message> messages = new ThreadLocal<Message>() {
+    @Override
+    protected Message initialValue() {
+      return new Message();
+    }
+  };
+
+  static {
+    Runtime.getRuntime().addShutdownHook(new Thread("ServiceMessageWriter flush") {
+      @Override
+      public void run() {
+        flush();
+      }
+    });
+  }
+
+  public static class Message {
+    private final StringBuilder builder = new StringBuilder(256);
+
+    private Message start(String text) {
+      builder.setLength(0);
+      builder.append("\n##teamcity[").append(text);
+      return this;
+    }
+
+    public Message attribute(String name, String value) {
+      builder.append(' ').append(name).append("='");
+      appendEscaped(builder, value);
+      builder.append('\'');
+      return this;
+    }
+
+    public Message attribute(String name, long value) {
+      builder.append(' ').append(name).append("='").append(value).append('\'');
+      return this;
+    }
+
+    /**
+     * Appends a text that is formatted (and escaped) already, e.g. a location hint
+     */
+    public Message raw(String text) {
+      builder.append(text);
+      return this;
+    }
+
+    public void send() {
+      builder.append(']');
+      write(builder);
+    }
+
+    public void sendAndFlush() {
+      send();
+      flush();
+    }
+  }
+
+  /**
+   * @param text the message name, possibly followed by the formatted attributes
+   */
+  public static Message message(String text) {
+    return messages.get().start(text);
+  }
+
+  /**
+   * Writes a complete line (the message is formatted already)
+   */
+  public static void write(CharSequence line) {
+    synchronized (LOCK) {
+      buffer.append(line).append('\n');
+      if (buffer.length() >= BUFFER_LIMIT || isFlushing(line)) flushBuffer();
+    }
+  }
+
+  public static void flush() {
+    synchronized (LOCK) {
+      flushBuffer();
+    }
+  }
+
+  private static boolean isFlushing(CharSequence line) {
+    int start = 0;
+    while (start < line.length() && line.charAt(start) == '\n') start++;
+    if (!startsWith(line, start, MESSAGE_PREFIX)) return false;
+
+    int nameStart = start + MESSAGE_PREFIX.length();
+    for (String name : FLUSHING_MESSAGES) {
+      int nameEnd = nameStart + name.length();
+      if (startsWith(line, nameStart, name) && nameEnd < line.length() &&
+          (line.charAt(nameEnd) == ' ' || line.charAt(nameEnd) == ']')) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean startsWith(CharSequence s, int offset, String prefix) {
+    if (offset + prefix.length() > s.length()) return false;
+    for (int i = 0; i < prefix.length(); i++) {
+      if (s.charAt(offset + i) != prefix.charAt(i)) return false;
+    }
+    return true;
+  }
+
+  private static void flushBuffer() {
+    if (buffer.length() == 0) return;
+    System.out.print(buffer);
+    System.out.flush();
+    buffer.setLength(0);
+  }
+
+  /**
+   * Escapes the value of a service message attribute in a single pass
+   */
+  public static void appendEscaped(StringBuilder builder, String s) {
+    if (s == null) return;
+    int start = 0;
+    for (int i = 0; i < s.length(); i++) {
+      char escaped = escapedChar(s.charAt(i));
+      if (escaped != 0) {
+        builder.append(s, start, i).append('|').append(escaped);
+        start = i + 1;
+      }
+    }
+    builder.append(s, start, s.length());
+  }
+
+  public static String escape(String s) {
+    for (int i = 0; i < s.length(); i++) {
+      if (escapedChar(s.charAt(i)) != 0) {
+        StringBuilder builder = new StringBuilder(s.length() + 16);
+        appendEscaped(builder, s);
+        return builder.toString();
+      }
+    }
+    return s;
+  }
+
+  private static char escapedChar(char c) {
+    switch (c) {
+      case '|':
+        return '|';
+      case '\'':
+        return '\'';
+      case '\n':
+        return 'n';
+      case '\r':
+        return 'r';
+      case ']':
+        return ']';
+      default:
+        return 0;
+    }
+  }
+}
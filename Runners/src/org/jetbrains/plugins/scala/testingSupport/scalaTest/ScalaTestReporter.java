@@ -1,5 +1,6 @@
 package org.jetbrains.plugins.scala.testingSupport.scalaTest;
 
+import org.jetbrains.plugins.scala.testingSupport.ServiceMessageWriter;
 import org.jetbrains.plugins.scala.testingSupport.scalaTest.treeBuilder.SequentialTreeBuilder;
 import org.scalatest.Reporter;
 import org.scalatest.events.*;
@@ -52,7 +53,7 @@ public class ScalaTestReporter implements Reporter {
       RunStarting r = (RunStarting) event;
       treeBuilder.initRun(r);
       int testCount = r.testCount();
-      System.out.println("##teamcity[testCount count='" + testCount + "']");
+      ServiceMessageWriter.write("##teamcity[testCount count='" + testCount + "']");
     } else if (event instanceof TestStarting) {
       String testName = ((TestStarting) event).testName();
       String locationHint = getLocationHint(((TestStarting) event).suiteClassName(), testName);
@@ -72,8 +73,8 @@ public class ScalaTestReporter implements Reporter {
         if (formatter.get() instanceof IndentedText) {
           IndentedText t = (IndentedText) formatter.get();
           if (myShowProgressMessages) {
-            String escaped = escapeString(t.formattedText() + "\n");
-            System.out.println("\n##teamcity[message text='" + escaped + "' status='INFO'" + "]");
+            ServiceMessageWriter.message("message").attribute("text", t.formattedText() + "\n").attribute("status", "INFO")
+                .send();
           }
         }
       }
@@ -147,7 +148,7 @@ public class ScalaTestReporter implements Reporter {
       String statusText = "ERROR";
       String escapedMessage = escapeString(message);
       if (!escapedMessage.isEmpty()) {
-        System.out.println("\n##teamcity[message text='" + escapedMessage + "' status='" + statusText + "'" +
+        ServiceMessageWriter.write("\n##teamcity[message text='" + escapedMessage + "' status='" + statusText + "'" +
             throwableString + "]");
       }
     } else if (event instanceof InfoProvided) {
@@ -162,11 +163,11 @@ public class ScalaTestReporter implements Reporter {
       if (myShowProgressMessages) {
         String escapedMessage = escapeString(message.replaceFirst("\\s+$", ""));
         if (!escapedMessage.isEmpty()) {
-          System.out.println("\n##teamcity[message text='" + escapedMessage + ":|n' status='INFO'" + "]");
+          ServiceMessageWriter.write("\n##teamcity[message text='" + escapedMessage + ":|n' status='INFO'" + "]");
         }
       }
     } else if (event instanceof RunStopped) {
-
+      ServiceMessageWriter.flush();
     } else if (event instanceof RunAborted) {
       String message = ((RunAborted) event).message();
       Option<Throwable> throwableOption = ((RunAborted) event).throwable();
@@ -176,11 +177,12 @@ public class ScalaTestReporter implements Reporter {
       }
       String escapedMessage = escapeString(message);
       if (!escapedMessage.isEmpty()) {
-        System.out.println("\n##teamcity[message text='" + escapedMessage + "' status='ERROR'" +
+        ServiceMessageWriter.write("\n##teamcity[message text='" + escapedMessage + "' status='ERROR'" +
             throwableString + "]");
       }
+      ServiceMessageWriter.flush();
     } else if (event instanceof RunCompleted) {
-
+      ServiceMessageWriter.flush();
     }
   }
 }
@@ -1,5 +1,6 @@
 package org.jetbrains.plugins.scala.testingSupport.scalaTest;
 
+import org.jetbrains.plugins.scala.testingSupport.ServiceMessageWriter;
 import org.jetbrains.plugins.scala.testingSupport.scalaTest.treeBuilder.ParallelTreeBuilder;
 import org.jetbrains.plugins.scala.testingSupport.scalaTest.treeBuilder.SequentialTreeBuilder;
 import org.jetbrains.plugins.scala.testingSupport.scalaTest.treeBuilder.TreeBuilder;
@@ -62,7 +63,7 @@ public class ScalaTestReporterWithLocation implements Reporter {
       RunStarting r = (RunStarting) event;
       treeBuilder.initRun(r);
       int testCount = r.testCount();
-      System.out.println("##teamcity[testCount count='" + testCount + "']");
+      ServiceMessageWriter.write("##teamcity[testCount count='" + testCount + "']");
     } else if (event instanceof TestStarting) {
       TestStarting testStarting = ((TestStarting) event);
       String testText = testStarting.testText();
@@ -181,17 +182,17 @@ public class ScalaTestReporterWithLocation implements Reporter {
       String statusText = "ERROR";
       String escapedMessage = escapeString(message);
       if (!escapedMessage.isEmpty()) {
-        System.out.println("\n##teamcity[message text='" + escapedMessage + "' status='" + statusText + "'" +
+        ServiceMessageWriter.write("\n##teamcity[message text='" + escapedMessage + "' status='" + statusText + "'" +
             throwableString + "]");
       }
     } else if (event instanceof InfoProvided) {
       String message = ((InfoProvided) event).message();
       String escapedMessage = escapeString(message + "\n");
       if (!escapedMessage.isEmpty()) {
-          System.out.println("\n##teamcity[message text='" + escapedMessage + "' status='WARNING'" + "]");
+          ServiceMessageWriter.write("\n##teamcity[message text='" + escapedMessage + "' status='WARNING'" + "]");
       }
     } else if (event instanceof RunStopped) {
-
+      ServiceMessageWriter.flush();
     } else if (event instanceof RunAborted) {
       String message = ((RunAborted) event).message();
       Option<Throwable> throwableOption = ((RunAborted) event).throwable();
@@ -201,11 +202,12 @@ public class ScalaTestReporterWithLocation implements Reporter {
       }
       String escapedMessage = escapeString(message);
       if (!escapedMessage.isEmpty()) {
-        System.out.println("\n##teamcity[message text='" + escapedMessage + "' status='ERROR'" +
+        ServiceMessageWriter.write("\n##teamcity[message text='" + escapedMessage + "' status='ERROR'" +
             throwableString + "]");
       }
+      ServiceMessageWriter.flush();
     } else if (event instanceof RunCompleted) {
-
+      ServiceMessageWriter.flush();
     }
     else if(event instanceof ScopeOpened) {
       ScopeOpened scopeOpened = (ScopeOpened) event;
@@ -255,7 +257,7 @@ public class ScalaTestReporterWithLocation implements Reporter {
     String message = infoProvided.message();
     String escapedMessage = escapeString(message + "\n");
     if (!escapedMessage.isEmpty()) {
-      System.out.println("\n##teamcity[message text='" + escapedMessage + "' status='INFO'" + "]");
+      ServiceMessageWriter.write("\n##teamcity[message text='" + escapedMessage + "' status='INFO'" + "]");
     }
   }
 
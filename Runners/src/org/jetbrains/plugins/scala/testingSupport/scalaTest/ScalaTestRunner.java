@@ -1,5 +1,6 @@
 package org.jetbrains.plugins.scala.testingSupport.scalaTest;
 
+import org.jetbrains.plugins.scala.testingSupport.ServiceMessageWriter;
 import org.jetbrains.plugins.scala.testingSupport.TestRunnerUtil;
 import org.scalatest.*;
 import org.scalatest.tools.Runner;
@@ -33,6 +34,7 @@ public class ScalaTestRunner {
       ignore.printStackTrace();
     }
 
+    ServiceMessageWriter.flush();
     System.exit(0);
   }
 
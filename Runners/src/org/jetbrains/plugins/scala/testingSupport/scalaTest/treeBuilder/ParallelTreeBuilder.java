@@ -1,5 +1,6 @@
 package org.jetbrains.plugins.scala.testingSupport.scalaTest.treeBuilder;
 
+import org.jetbrains.plugins.scala.testingSupport.ServiceMessageWriter;
 import org.scalatest.events.Ordinal;
 import org.scalatest.events.RunStarting;
 import org.scalatest.events.SuiteCompleted;
@@ -10,7 +11,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import static org.jetbrains.plugins.scala.testingSupport.TestRunnerUtil.escapeString;
+import static org.jetbrains.plugins.scala.testingSupport.ServiceMessageWriter.message;
 
 /**
  * @author Roman.Shein
@@ -153,12 +154,14 @@ public class ParallelTreeBuilder implements TreeBuilder {
       myIds.push(id);
       myWaitingMessages.push("\n##teamcity[" + message + " nodeId='" + id + "' parentNodeId='" + parentNode + "']");
       if (isTestStarted) {
-        for (String openMessage : myWaitingMessages) {
-          synchronized (outLock) {
-            System.out.println(openMessage);
+        synchronized (outLock) {
+          for (String openMessage : myWaitingMessages) {
+            ServiceMessageWriter.write(openMessage);
           }
         }
         myWaitingMessages.clear();
+        // the test is run after this
+        ServiceMessageWriter.flush();
       }
     }
 
@@ -167,11 +170,11 @@ public class ParallelTreeBuilder implements TreeBuilder {
       Stack<String> myWaitingMessages = waitingScopeMessages.get(this);
       if (myWaitingMessages.isEmpty()) {
         //print three messages from ScopePending event processing
-        System.out.println("\n##teamcity[testIgnored name='(Scope Pending)' message='" +
-            escapeString("Scope Pending") + "' nodeId='" + myIds.peek() + "']");
-        System.out.println("\n##teamcity[testIgnored name='" + escapeString(scopePendingMessage) + "' message='" +
-            escapeString("Scope Pending") + "' nodeId='" + myIds.peek() + "']");
-        System.out.println("\n##teamcity[testSuiteFinished name='" + escapeString(scopePendingMessage) + "' nodeId='" + myIds.peek() + "']");
+        message("testIgnored").attribute("name", "(Scope Pending)").attribute("message", "Scope Pending")
+            .attribute("nodeId", myIds.peek()).send();
+        message("testIgnored").attribute("name", scopePendingMessage).attribute("message", "Scope Pending")
+            .attribute("nodeId", myIds.peek()).send();
+        message("testSuiteFinished").attribute("name", scopePendingMessage).attribute("nodeId", myIds.peek()).send();
       } else {
         myWaitingMessages.pop();
       }
@@ -183,7 +186,7 @@ public class ParallelTreeBuilder implements TreeBuilder {
       Stack<String> myWaitingMessages = waitingScopeMessages.get(this);
       if (myWaitingMessages.isEmpty()) {
         //there are no open empty scopes, so scope currently being closed must be not empty, print the actual message
-        System.out.println("\n##teamcity[" + message + "nodeId='" + myIds.peek() + "']");
+        message(message).attribute("nodeId", myIds.peek()).send();
       } else {
         myWaitingMessages.pop();
       }
@@ -236,9 +239,7 @@ public class ParallelTreeBuilder implements TreeBuilder {
     myIds.push(id);
     ids.put(nextSuite, myIds);
     //suite palce found, report that it has started
-    synchronized (outLock) {
-      System.out.println("\n##teamcity[" + message + " nodeId='" + id + "' parentNodeId='" + parentId + "']");
-    }
+    message(message).attribute("nodeId", id).attribute("parentNodeId", parentId).send();
   }
 
 
@@ -250,9 +251,7 @@ public class ParallelTreeBuilder implements TreeBuilder {
         suiteStack.pop();
       }
     }
-    synchronized (outLock) {
-      System.out.println("\n##teamcity[" + message + "nodeId='" + parentId + "']");
-    }
+    message(message).attribute("nodeId", parentId).sendAndFlush();
   }
 
   @Override
@@ -1,5 +1,6 @@
 package org.jetbrains.plugins.scala.testingSupport.scalaTest.treeBuilder;
 
+import org.jetbrains.plugins.scala.testingSupport.ServiceMessageWriter;
 import org.scalatest.events.Ordinal;
 import org.scalatest.events.RunStarting;
 import org.scalatest.events.SuiteCompleted;
@@ -7,7 +8,7 @@ import org.scalatest.events.SuiteStarting;
 
 import java.util.Stack;
 
-import static org.jetbrains.plugins.scala.testingSupport.TestRunnerUtil.escapeString;
+import static org.jetbrains.plugins.scala.testingSupport.ServiceMessageWriter.message;
 
 /**
  * @author Roman.Shein
@@ -36,19 +37,21 @@ public class SequentialTreeBuilder implements TreeBuilder {
 
   private void onTestStarted() {
     for (String openScopeMessage : waitingScopeMessagesQueue) {
-      System.out.println(openScopeMessage);
+      ServiceMessageWriter.write(openScopeMessage);
     }
     waitingScopeMessagesQueue.clear();
+    // the test is run after this
+    ServiceMessageWriter.flush();
   }
 
   public void closePendingScope(String scopePendingMessage, Ordinal ordinal, String suiteId) {
     if (waitingScopeMessagesQueue.isEmpty()) {
       //print three messages from ScopePending event processing
-      System.out.println("\n##teamcity[testIgnored name='(Scope Pending)' message='" +
-          escapeString("Scope Pending") + "' nodeId='" + getCurrentId() + "']");
-      System.out.println("\n##teamcity[testIgnored name='" + escapeString(scopePendingMessage) + "' message='" +
-          escapeString("Scope Pending") + "' nodeId='" + getCurrentId() + "']");
-      System.out.println("\n##teamcity[testSuiteFinished name='" + escapeString(scopePendingMessage) + "' nodeId='" + getCurrentId() + "']");
+      message("testIgnored").attribute("name", "(Scope Pending)").attribute("message", "Scope Pending")
+          .attribute("nodeId", getCurrentId()).send();
+      message("testIgnored").attribute("name", scopePendingMessage).attribute("message", "Scope Pending")
+          .attribute("nodeId", getCurrentId()).send();
+      message("testSuiteFinished").attribute("name", scopePendingMessage).attribute("nodeId", getCurrentId()).send();
     } else {
       waitingScopeMessagesQueue.pop();
     }
@@ -58,7 +61,7 @@ public class SequentialTreeBuilder implements TreeBuilder {
   public void closeScope(String message, Ordinal ordinal, String suiteId, boolean isTestFinished) {
     if (waitingScopeMessagesQueue.isEmpty()) {
       //there are no open empty scopes, so scope currently being closed must be not empty, print the actual message
-      System.out.println("\n##teamcity[" + message +  "nodeId='" + getCurrentId() + "']");
+      message(message).attribute("nodeId", getCurrentId()).send();
     } else {
       waitingScopeMessagesQueue.pop();
     }
@@ -68,11 +71,12 @@ public class SequentialTreeBuilder implements TreeBuilder {
   public void closeSuite(String message, SuiteCompleted suiteCompleted) {
     if (waitingScopeMessagesQueue.isEmpty()) {
       //there are no open empty scopes, so scope currently being closed must be not empty, print the actual message
-      System.out.println("\n##teamcity[" + message +  "nodeId='" + getCurrentId() + "']");
+      message(message).attribute("nodeId", getCurrentId()).send();
     } else {
       waitingScopeMessagesQueue.pop();
     }
     idStack.pop();
+    ServiceMessageWriter.flush();
   }
 
   public void initRun(RunStarting runStarting) {
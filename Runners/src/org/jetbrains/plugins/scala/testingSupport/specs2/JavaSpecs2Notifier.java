@@ -1,5 +1,6 @@
 package org.jetbrains.plugins.scala.testingSupport.specs2;
 
+import org.jetbrains.plugins.scala.testingSupport.ServiceMessageWriter;
 import org.jetbrains.plugins.scala.testingSupport.TestRunnerUtil;
 import org.specs2.execute.Details;
 import org.specs2.reporter.Notifier;
@@ -9,7 +10,7 @@ import java.io.StringWriter;
 import java.util.HashMap;
 import java.util.Stack;
 
-import static org.jetbrains.plugins.scala.testingSupport.TestRunnerUtil.escapeString;
+import static org.jetbrains.plugins.scala.testingSupport.ServiceMessageWriter.message;
 import static org.jetbrains.plugins.scala.testingSupport.TestRunnerUtil.formatCurrentTimestamp;
 
 /**
@@ -40,31 +41,27 @@ public class JavaSpecs2Notifier implements Notifier {
       idStack.push(id);
     }
     int parentId = descend();
-    System.out.println("\n##teamcity[testSuiteStarted name='" + escapeString(title) + "'"+ TestRunnerUtil.parseLocation(location).toHint() +
-        " nodeId='" + getCurrentId() + "' parentNodeId='" + parentId + "']");
+    message("testSuiteStarted").attribute("name", title).raw(TestRunnerUtil.parseLocation(location).toHint())
+        .attribute("nodeId", getCurrentId()).attribute("parentNodeId", parentId).send();
   }
 
   public void specEnd(String title, String location) {
-    System.out.println("\n##teamcity[testSuiteFinished name='" + escapeString(title) + "' nodeId='" +
-        getCurrentId() + "']");
+    message("testSuiteFinished").attribute("name", title).attribute("nodeId", getCurrentId()).sendAndFlush();
     ascend();
   }
 
   public void contextStart(String text, String location) {
     int parentId = descend();
-    System.out.println("##teamcity[testSuiteStarted name='" + escapeString(text) + "'" + TestRunnerUtil.parseLocation(location).toHint() +
-        " nodeId='" + getCurrentId() + "' parentNodeId='" + parentId + "']");
+    message("testSuiteStarted").attribute("name", text).raw(TestRunnerUtil.parseLocation(location).toHint())
+        .attribute("nodeId", getCurrentId()).attribute("parentNodeId", parentId).send();
     if (myShowProgressMessages) {
-      String escapedMessage = escapeString(text.replaceFirst("\\s+$", ""));
-      if (!escapedMessage.isEmpty()) {
-        System.out.println("\n##teamcity[message text='" + escapedMessage + "|n' status='INFO'" + "]");
-      }
+      sendInfo(text);
     }
   }
 
   public void contextEnd(String text, String location) {
-    System.out.println("\n##teamcity[testSuiteFinished name='" + escapeString(text) + "'"+ TestRunnerUtil.parseLocation(location).toHint() +
-        " nodeId='" + getCurrentId() + "']");
+    message("testSuiteFinished").attribute("name", text).raw(TestRunnerUtil.parseLocation(location).toHint())
+        .attribute("nodeId", getCurrentId()).send();
     ascend();
   }
 
@@ -73,19 +70,24 @@ public class JavaSpecs2Notifier implements Notifier {
 
   public void exampleStarted(String name, String location) {
     int parentId = descend();
-    System.out.println("\n##teamcity[testStarted name='" + escapeString(name) + "'" + TestRunnerUtil.parseLocation(location).toHint() +
-            " captureStandardOutput='true' nodeId='" + getCurrentId() + "' parentNodeId='" + parentId + "']");
+    message("testStarted").attribute("name", name).raw(TestRunnerUtil.parseLocation(location).toHint())
+        .attribute("captureStandardOutput", "true").attribute("nodeId", getCurrentId())
+        .attribute("parentNodeId", parentId).sendAndFlush();
   }
 
   public void exampleSuccess(String text, long duration) {
-    System.out.println("\n##teamcity[testFinished name='" + escapeString(text) + "' duration='"+ duration +
-        "' nodeId='" + getCurrentId() + "']");
+    message("testFinished").attribute("name", text).attribute("duration", duration)
+        .attribute("nodeId", getCurrentId()).send();
     ascend();
     if (myShowProgressMessages) {
-      String escapedMessage = escapeString(text.replaceFirst("\\s+$", ""));
-      if (!escapedMessage.isEmpty()) {
-        System.out.println("\n##teamcity[message text='" + escapedMessage + "|n' status='INFO'" + "]");
-      }
+      sendInfo(text);
+    }
+  }
+
+  private static void sendInfo(String text) {
+    String trimmed = text.replaceFirst("\\s+$", "");
+    if (!trimmed.isEmpty()) {
+      message("message").attribute("text", trimmed + "\n").attribute("status", "INFO").send();
     }
   }
 
@@ -100,14 +102,12 @@ public class JavaSpecs2Notifier implements Notifier {
   }
 
   public void exampleSkipped(String name, String message, long duration) {
-    System.out.println("\n##teamcity[testIgnored name='" + escapeString(name) + "' message='" + escapeString(message) +
-        "' nodeId='" + getCurrentId() + "']");
+    message("testIgnored").attribute("name", name).attribute("message", message).attribute("nodeId", getCurrentId()).send();
     ascend();
   }
 
   public void exampleSkipped(String name, String message, String location, long duration) {
-    System.out.println("\n##teamcity[testIgnored name='" + escapeString(name) + "' message='" + escapeString(message) +
-        "' nodeId='" + getCurrentId() + "']");
+    message("testIgnored").attribute("name", name).attribute("message", message).attribute("nodeId", getCurrentId()).send();
     ascend();
   }
 
@@ -125,12 +125,10 @@ public class JavaSpecs2Notifier implements Notifier {
     StringWriter writer = new StringWriter();
     f.printStackTrace(new PrintWriter(writer));
     detail = writer.getBuffer().toString();
-    String res = "\n##teamcity[testFailed name='" + escapeString(name) + "' message='" + escapeString(message) +
-        "' details='" + escapeString(detail) + "'";
-    if (error) res += "error = '" + error + "'";
-    res += actualExpectedAttrs;
-    res += " timestamp='" + escapeString(formatCurrentTimestamp()) +  "' nodeId='" + getCurrentId() + "']";
-    System.out.println(res);
+    ServiceMessageWriter.Message res = message("testFailed").attribute("name", name).attribute("message", message)
+        .attribute("details", detail);
+    if (error) res.attribute("error", "true");
+    res.raw(actualExpectedAttrs).attribute("timestamp", formatCurrentTimestamp()).attribute("nodeId", getCurrentId()).send();
     ascend();
     //exampleSuccess(name, 0);
   }
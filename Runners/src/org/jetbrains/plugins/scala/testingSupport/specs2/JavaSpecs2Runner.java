@@ -1,5 +1,6 @@
 package org.jetbrains.plugins.scala.testingSupport.specs2;
 
+import org.jetbrains.plugins.scala.testingSupport.ServiceMessageWriter;
 import org.jetbrains.plugins.scala.testingSupport.TestRunnerUtil;
 import org.specs2.runner.NotifierRunner;
 import testingSupport.specs2.MyNotifierRunner;
@@ -89,6 +90,7 @@ public class JavaSpecs2Runner {
         runSingleTest(clazz, testName, isSpecs2_3, specialArgs, notifier);
       }
     }
+    ServiceMessageWriter.flush();
     System.exit(0);
   }
 
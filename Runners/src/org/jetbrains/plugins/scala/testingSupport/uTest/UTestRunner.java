@@ -1,5 +1,6 @@
 package org.jetbrains.plugins.scala.testingSupport.uTest;
 
+import org.jetbrains.plugins.scala.testingSupport.ServiceMessageWriter;
 import org.jetbrains.plugins.scala.testingSupport.TestRunnerUtil;
 import scala.concurrent.ExecutionContext;
 import scala.util.Failure;
@@ -15,6 +16,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.*;
 
+import static org.jetbrains.plugins.scala.testingSupport.ServiceMessageWriter.message;
 import static org.jetbrains.plugins.scala.testingSupport.TestRunnerUtil.escapeString;
 
 public class UTestRunner {
@@ -51,11 +53,11 @@ public class UTestRunner {
         suiteId++;
         nextPrevId++;
         //it's a test with inner tests, build tree structure
-        System.out.println("\n##teamcity[testSuiteStarted name='" + escapeString(suiteName) + "' nodeId='" + suiteId +
-            "' parentNodeId='" + parentId + "'" + locationHint + " captureStandardOutput='true']");
+        message("testSuiteStarted").attribute("name", suiteName).attribute("nodeId", suiteId)
+            .attribute("parentNodeId", parentId).raw(locationHint).attribute("captureStandardOutput", "true").send();
       }
-      System.out.println("\n##teamcity[testStarted name='" + escapeString(testName) +
-          "' nodeId='" + currentTestId + "' parentNodeId='" + parentId + "'" + locationHint + " captureStandardOutput='true']");
+      message("testStarted").attribute("name", testName).attribute("nodeId", currentTestId)
+          .attribute("parentNodeId", parentId).raw(locationHint).attribute("captureStandardOutput", "true").send();
     }
     for (scala.collection.Iterator<Tree<Result>> it =  result.children().iterator(); it.hasNext();) {
       nextPrevId = traverseResults(it.next(), suiteClassName, false, suiteId, nextPrevId, method);
@@ -66,15 +68,15 @@ public class UTestRunner {
         StringWriter stringWriter = new StringWriter();
         PrintWriter printWriter = new PrintWriter(stringWriter);
         failure.exception().printStackTrace(printWriter);
-        System.out.println("\n##teamcity[testFailed name='" + escapeString(testName) + "' message='" + escapeString(failure.exception().getMessage()) +
-            "' details='" + escapeString(stringWriter.toString()) + "' nodeId='" + currentTestId + "']");
+        message("testFailed").attribute("name", testName).attribute("message", failure.exception().getMessage())
+            .attribute("details", stringWriter.toString()).attribute("nodeId", currentTestId).send();
       } else {
-        System.out.println("\n##teamcity[testFinished name='" + escapeString(testName) +
-            "' duration='" + currentRes.milliDuration() + "' nodeId='" + currentTestId + "']");
+        message("testFinished").attribute("name", testName).attribute("duration", currentRes.milliDuration())
+            .attribute("nodeId", currentTestId).send();
       }
       if (result.children().nonEmpty()) {
         //it's a test with inner tests, build tree structure
-        System.out.println("\n##teamcity[testSuiteFinished name='" + escapeString(suiteName) + "' nodeId='"+ suiteId + "']");
+        message("testSuiteFinished").attribute("name", suiteName).attribute("nodeId", suiteId).send();
       }
     }
     return nextPrevId;
@@ -179,12 +181,13 @@ public class UTestRunner {
       }
     }
     int testCount = testsToRun.size();
-    System.out.println("##teamcity[testCount count='" + testCount + "']");
+    message("testCount").attribute("count", testCount).send();
     int parentNodeId = 0;
     int nodeId = 1;
     int prevId = nodeId;
-    System.out.println("\n##teamcity[testSuiteStarted name='" + escapeString(suiteName) + "'" + getLocationHint(className, suiteName) +
-        " nodeId='" + nodeId + "' parentNodeId='" + parentNodeId + "' captureStandardOutput='true']");
+    message("testSuiteStarted").attribute("name", suiteName).raw(getLocationHint(className, suiteName))
+        .attribute("nodeId", nodeId).attribute("parentNodeId", parentNodeId).attribute("captureStandardOutput", "true")
+        .sendAndFlush();
     for (TestMethod testMethod : testsToRun) {
       Method test = testMethod.method;
       Tree<Test> testTree = (Tree) test.invoke(null);
@@ -193,8 +196,8 @@ public class UTestRunner {
       String testMethodName = test.getName();
       String locationHint = getLocationHint(className, testMethodName);
       int currentSuiteId = ++prevId;
-      System.out.println("\n##teamcity[testSuiteStarted name='" + escapeString(testMethodName) + "' nodeId='" +
-          currentSuiteId + "' parentNodeId='" + nodeId + "'" + locationHint + " captureStandardOutput='true']");
+      message("testSuiteStarted").attribute("name", testMethodName).attribute("nodeId", currentSuiteId)
+          .attribute("parentNodeId", nodeId).raw(locationHint).attribute("captureStandardOutput", "true").sendAndFlush();
       Tree<Result> result = treeSeq.run(treeSeq.run$default$1(),
           treeSeq.run$default$2(),
           testMethod.testPath != null ? scala.collection.JavaConversions.asScalaBuffer(testMethod.testPath.path).toList() : treeSeq.run$default$3(),
@@ -202,9 +205,9 @@ public class UTestRunner {
       boolean classTestKind = testMethod.testPath == null || testMethod.testPath.path.isEmpty();
       prevId = traverseResults(result, clazz.getName(), classTestKind, currentSuiteId, prevId, test);
 
-      System.out.println("\n##teamcity[testSuiteFinished name='" + escapeString(testMethodName) + "' nodeId='" + currentSuiteId + "']");
+      message("testSuiteFinished").attribute("name", testMethodName).attribute("nodeId", currentSuiteId).sendAndFlush();
     }
-    System.out.println("\n##teamcity[testSuiteFinished name='" + escapeString(suiteName) + "' nodeId='" + nodeId + "']");
+    message("testSuiteFinished").attribute("name", suiteName).attribute("nodeId", nodeId).sendAndFlush();
   }
 
 
@@ -259,6 +262,7 @@ public class UTestRunner {
       }
     }
 
+    ServiceMessageWriter.flush();
     System.exit(0);
   }
 }
@@ -0,0 +1,117 @@
+package examples
+
+import scala.xml.{Elem, Node, NodeSeq}
+
+/**
+ * A catalog of compact discs, which can be rendered as XHTML.
+ *
+ * @param discs the discs, in the order of their appearance
+ * @see [[examples.Disc]]
+ */
+class Catalog(discs: Seq[Disc]) {
+  /**
+   * Discs of the given country.
+   *
+   * {{{
+   *   catalog.of("UK").map(_.title)
+   * }}}
+   */
+  def of(country: String): Seq[Disc] = discs.filter(_.country == country)
+
+  /** The total price of all the discs. */
+  def price: BigDecimal = discs.map(_.price).sum
+
+  /**
+   * Serializes the catalog to XHTML. Scala supports XML literals
+   * which may contain Scala expressions between braces.
+   */
+  def toXHTML: Elem =
+    <table cellpadding="2" cellspacing="0">
+      <tr>
+        <th>Title</th>
+        <th>Artist</th>
+        <th>Country</th>
+        <th>Price</th>
+      </tr>
+      {for (disc <- discs) yield
+      <tr class={if (disc.price > 10) "expensive" else "cheap"}>
+        <td>{disc.title}</td>
+        <td>{disc.artist}</td>
+        <td>{disc.country}</td>
+        <td>{"%.2f".format(disc.price)}</td>
+      </tr>}
+      <!-- the total price -->
+      <tr>
+        <td colspan="3">Total</td>
+        <td>{price}</td>
+      </tr>
+    </table>
+
+  def toXML: Elem =
+    <CATALOG>
+      {discs.map(_.toXML)}
+    </CATALOG>
+}
+
+/**
+ * A compact disc.
+ */
+case class Disc(title: String, artist: String, country: String, company: String, price: BigDecimal, year: Int) {
+  def toXML: Elem =
+    <CD>
+      <TITLE>{title}</TITLE>
+      <ARTIST>{artist}</ARTIST>
+      <COUNTRY>{country}</COUNTRY>
+      <COMPANY>{company}</COMPANY>
+      <PRICE>{price}</PRICE>
+      <YEAR>{year}</YEAR>
+      <NOTES><![CDATA[Prices are <b>approximate</b>]]></NOTES>
+    </CD>
+}
+
+object Disc {
+  /**
+   * Reads a disc from its XML representation.
+   *
+   * @throws NumberFormatException if the price or the year are malformed
+   */
+  def fromXML(node: Node): Disc = Disc(
+    (node \ "TITLE").text,
+    (node \ "ARTIST").text,
+    (node \ "COUNTRY").text,
+    (node \ "COMPANY").text,
+    BigDecimal((node \ "PRICE").text),
+    (node \ "YEAR").text.toInt)
+
+  def fromXML(catalog: NodeSeq): Seq[Disc] = (catalog \ "CD").map(fromXML)
+
+  val Sample: Seq[Disc] = fromXML(
+    <CATALOG>
+      <CD>
+        <TITLE>Empire Burlesque</TITLE>
+        <ARTIST>Bob Dylan</ARTIST>
+        <COUNTRY>USA</COUNTRY>
+        <COMPANY>Columbia</COMPANY>
+        <PRICE>10.90</PRICE>
+        <YEAR>1985</YEAR>
+      </CD>
+      <CD>
+        <TITLE>Hide your heart</TITLE>
+        <ARTIST>Bonnie Tyler</ARTIST>
+        <COUNTRY>UK</COUNTRY>
+        <COMPANY>CBS Records</COMPANY>
+        <PRICE>9.90</PRICE>
+        <YEAR>1988</YEAR>
+      </CD>
+      <CD>
+        <TITLE>Greatest Hits</TITLE>
+        <ARTIST>Dolly Parton</ARTIST>
+        <COUNTRY>USA</COUNTRY>
+        <COMPANY>RCA</COMPANY>
+        <PRICE>9.90</PRICE>
+        <YEAR>1982</YEAR>
+      </CD>
+    </CATALOG>)
+
+  def describe(disc: Disc): String = s"${disc.title} by ${disc.artist} (${disc.year}), $$${disc.price}"
+}
@@ -0,0 +1,40 @@
+package org.jetbrains.plugins.scala
+package benchmarks
+
+import java.io.File
+
+import com.intellij.openapi.util.io.FileUtil
+
+/**
+ * Scala sources that are processed by the benchmarks, an invocation of a benchmark processes all of them.
+ *
+ * The directories are given in the "benchmark.corpus" property (separated by the path separator), by default
+ * it's a sample with XML literals and the type system sources of the plugin (which have plenty of scaladoc).
+ */
+object Corpus {
+  private val DefaultDirectories = Seq("benchmarks/corpus", "src/org/jetbrains/plugins/scala/lang/psi/types")
+
+  lazy val files: Seq[(String, String)] = {
+    val directories = Option(System.getProperty("benchmark.corpus"))
+            .map(_.split(File.pathSeparator).toSeq)
+            .getOrElse(DefaultDirectories)
+
+    val result = directories.map(new File(_)).flatMap(sourcesIn).sortBy(_.getPath).map { file =>
+      (file.getName, FileUtil.loadFile(file, "UTF-8"))
+    }
+
+    if (result.isEmpty) throw new IllegalStateException("No Scala files in " + directories.mkString(", "))
+
+    println("Corpus: %d files, %d KB".format(result.size, result.map(_._2.length).sum / 1024))
+
+    result
+  }
+
+  private def sourcesIn(directory: File): Seq[File] = {
+    Option(directory.listFiles).map(_.toSeq).getOrElse(Seq.empty).flatMap { file =>
+      if (file.isDirectory) sourcesIn(file)
+      else if (file.getName.endsWith(".scala")) Seq(file)
+      else Seq.empty
+    }
+  }
+}
@@ -0,0 +1,21 @@
+package org.jetbrains.plugins.scala.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * The numbers of the processed files and elements, which JMH reports as rates along with the primary result
+ * (JMH needs public fields for that, so it's written in Java).
+ */
+@State(Scope.Thread)
+@AuxCounters
+public class Counters {
+  public long files;
+
+  public long elements;
+
+  @Setup(Level.Iteration)
+  public void reset() {
+    files = 0;
+    elements = 0;
+  }
+}
@@ -0,0 +1,62 @@
+package org.jetbrains.plugins.scala
+package benchmarks
+
+import java.io.File
+import java.util.concurrent.TimeUnit
+import java.util.zip.ZipFile
+
+import com.intellij.openapi.util.io.FileUtil
+import org.jetbrains.plugins.scala.decompiler.ScalaSignatureScanner
+import org.openjdk.jmh.annotations._
+
+import scala.collection.JavaConverters._
+import scala.tools.scalap.scalax.rules.scalasig.{ByteCode, ClassFileParser}
+
+/**
+ * Class files per second of the detection of Scala class files in a jar (the standard library by default,
+ * or the "benchmark.jar" property): the class file scanner, and the full class file parsing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.Throughput))
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+class DecompilerBenchmark {
+  private var classFiles: Seq[Array[Byte]] = Seq.empty
+
+  @Setup(Level.Trial)
+  def setUp() {
+    val jar = Option(System.getProperty("benchmark.jar")).map(new File(_))
+            .getOrElse(new File(classOf[Option[_]].getProtectionDomain.getCodeSource.getLocation.toURI))
+
+    val zip = new ZipFile(jar)
+    try {
+      classFiles = zip.entries.asScala.filter(_.getName.endsWith(".class")).map { entry =>
+        FileUtil.loadBytes(zip.getInputStream(entry))
+      }.toVector
+    } finally {
+      zip.close()
+    }
+
+    println("%s: %d class files".format(jar.getName, classFiles.size))
+  }
+
+  @Benchmark
+  def scanner(counters: Counters): Int = detect(counters)(ScalaSignatureScanner.scan(_).isScala)
+
+  @Benchmark
+  def parser(counters: Counters): Int = detect(counters)(bytes => ClassFileParser.parse(ByteCode(bytes)).attribute("ScalaSig").isDefined)
+
+  private def detect(counters: Counters)(isScala: Array[Byte] => Boolean): Int = {
+    var result = 0
+    for (bytes <- classFiles) {
+      if (isScala(bytes)) {
+        result += 1
+        counters.elements += 1
+      }
+      counters.files += 1
+    }
+    result
+  }
+}
@@ -0,0 +1,70 @@
+package org.jetbrains.plugins.scala
+package benchmarks
+
+import java.io.File
+import java.util.concurrent.TimeUnit
+
+import com.intellij.util.Base64Converter
+import org.jetbrains.jps.incremental.messages.BuildMessage.Kind
+import org.jetbrains.jps.incremental.scala.remote._
+import org.openjdk.jmh.annotations._
+
+/**
+ * Events per second of the encoding and the decoding of the compile server events, for a batch of typical events:
+ * the legacy Base64-encoded serialization and the binary EventCodec.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.Throughput))
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+class EventCodecBenchmark {
+  import EventCodecBenchmark._
+
+  private var legacyEvents: Array[Array[Byte]] = Array.empty
+  private var binaryEvents: Array[Array[Byte]] = Array.empty
+
+  @Setup(Level.Trial)
+  def setUp() {
+    legacyEvents = Events.map(legacyEncode)
+    binaryEvents = Events.map(EventCodec.encode)
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BatchSize)
+  def legacyEncoding(): Int = Events.map(legacyEncode(_).length).sum
+
+  @Benchmark
+  @OperationsPerInvocation(BatchSize)
+  def binaryEncoding(): Int = Events.map(EventCodec.encode(_).length).sum
+
+  @Benchmark
+  @OperationsPerInvocation(BatchSize)
+  def legacyDecoding(): Int = legacyEvents.map(bytes => Event.fromBytes(Base64Converter.decode(bytes)).hashCode).sum
+
+  @Benchmark
+  @OperationsPerInvocation(BatchSize)
+  def binaryDecoding(): Int = binaryEvents.map(EventCodec.decode(_).hashCode).sum
+}
+
+object EventCodecBenchmark {
+  final val BatchSize = 10
+
+  private val Source = new File("/project/src/main/scala/org/example/Foo.scala")
+  private val Module = new File("/project/target/classes/org/example/Foo.class")
+
+  private val Events: Array[Event] = Array(
+    MessageEvent(Kind.ERROR, "type mismatch;\n found   : Int\n required: String", Some(Source), Some(42L), Some(7L)),
+    MessageEvent(Kind.INFO, "Compiling 3 Scala sources", None, None, None),
+    ProgressEvent("Compiling module foo", Some(0.5F)),
+    ProgressEvent("Searching for changed files...", None),
+    DebugEvent("Invalidated sources: " + Source.getPath),
+    GeneratedEvent(Source, Module, "org.example.Foo"),
+    DeletedEvent(Module),
+    SourceProcessedEvent(Source),
+    CompilationEndEvent(),
+    WorksheetOutputEvent("res0: Int = 42\n"))
+
+  private def legacyEncode(event: Event): Array[Byte] = Base64Converter.encode(event.toBytes).getBytes
+}
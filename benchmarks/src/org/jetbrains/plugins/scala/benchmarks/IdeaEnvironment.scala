@@ -0,0 +1,35 @@
+package org.jetbrains.plugins.scala
+package benchmarks
+
+import com.intellij.openapi.application.ApplicationManager
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.util.Computable
+import com.intellij.testFramework.fixtures.{IdeaProjectTestFixture, IdeaTestFixtureFactory}
+import org.openjdk.jmh.annotations._
+
+/**
+ * A light IDEA project, which is needed for the element types, the PSI builder and the PSI files.
+ * It's set up once per benchmark VM.
+ */
+@State(Scope.Benchmark)
+class IdeaEnvironment {
+  private var fixture: IdeaProjectTestFixture = _
+
+  def project: Project = fixture.getProject
+
+  @Setup(Level.Trial)
+  def setUp() {
+    fixture = IdeaTestFixtureFactory.getFixtureFactory.createFixtureBuilder("benchmarks").getFixture
+    fixture.setUp()
+  }
+
+  @TearDown(Level.Trial)
+  def tearDown() {
+    fixture.tearDown()
+    fixture = null
+  }
+
+  def inReadAction[T](body: => T): T = ApplicationManager.getApplication.runReadAction(new Computable[T] {
+    def compute(): T = body
+  })
+}
@@ -0,0 +1,65 @@
+package org.jetbrains.plugins.scala
+package benchmarks
+
+import java.io.Reader
+import java.util.concurrent.TimeUnit
+
+import org.jetbrains.plugins.scala.lang.lexer.ScalaLexer
+import org.jetbrains.plugins.scala.lang.lexer.core.{_ScalaCoreLexer, _ScalaSplittingLexer}
+import org.openjdk.jmh.annotations._
+
+/**
+ * Tokens per second of the generated core and splitting lexers, and of the complete Scala lexer (with XML).
+ */
+@BenchmarkMode(Array(Mode.Throughput))
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+class LexerBenchmark {
+  @Benchmark
+  def coreLexer(environment: IdeaEnvironment, counters: Counters): Long = {
+    val lexer = new _ScalaCoreLexer(null: Reader)
+    count(counters) { text =>
+      lexer.reset(text, 0, text.length, _ScalaCoreLexer.YYINITIAL)
+      var tokens = 0L
+      while (lexer.advance() != null) tokens += 1
+      tokens
+    }
+  }
+
+  @Benchmark
+  def splittingLexer(environment: IdeaEnvironment, counters: Counters): Long = {
+    val lexer = new _ScalaSplittingLexer(null: Reader)
+    count(counters) { text =>
+      lexer.reset(text, 0, text.length, _ScalaSplittingLexer.YYINITIAL)
+      var tokens = 0L
+      while (lexer.advance() != null) tokens += 1
+      tokens
+    }
+  }
+
+  @Benchmark
+  def scalaLexer(environment: IdeaEnvironment, counters: Counters): Long = {
+    val lexer = new ScalaLexer()
+    count(counters) { text =>
+      lexer.start(text)
+      var tokens = 0L
+      while (lexer.getTokenType != null) {
+        tokens += 1
+        lexer.advance()
+      }
+      tokens
+    }
+  }
+
+  private def count(counters: Counters)(tokensIn: String => Long): Long = {
+    var result = 0L
+    for ((_, text) <- Corpus.files) {
+      result += tokensIn(text)
+      counters.files += 1
+    }
+    counters.elements += result
+    result
+  }
+}
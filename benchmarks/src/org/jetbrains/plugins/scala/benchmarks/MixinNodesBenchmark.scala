@@ -0,0 +1,103 @@
+package org.jetbrains.plugins.scala
+package benchmarks
+
+import java.util.concurrent.TimeUnit
+
+import com.intellij.psi.PsiFileFactory
+import org.jetbrains.plugins.scala.lang.psi.api.ScalaFile
+import org.jetbrains.plugins.scala.lang.psi.api.toplevel.typedef.{ScClass, ScObject}
+import org.jetbrains.plugins.scala.lang.psi.impl.toplevel.typedef.TypeDefinitionMembers.SignatureNodes
+import org.openjdk.jmh.annotations._
+
+/**
+ * The member signatures of a class with a deep trait hierarchy: the time of building all the nodes, and the throughput
+ * of the name lookups in a shared map (the scaling on multiple cores can be checked with the "-t" JMH option).
+ * The heap that is retained by the nodes is printed on setup, the allocations are reported by "-prof gc".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.Throughput))
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+class MixinNodesBenchmark {
+  import MixinNodesBenchmark._
+
+  private var environment: IdeaEnvironment = _
+
+  private var clazz: ScClass = _
+
+  private var names: Array[String] = Array.empty
+
+  private var map: SignatureNodes.Map = _
+
+  @Setup(Level.Trial)
+  def setUp(environment: IdeaEnvironment) {
+    this.environment = environment
+
+    clazz = environment.inReadAction {
+      // the traits are members of an object, so that they are resolved without the indices
+      val file = PsiFileFactory.getInstance(environment.project).createFileFromText("Mixins.scala",
+        ScalaFileType.SCALA_LANGUAGE, text).asInstanceOf[ScalaFile]
+      val holder = file.typeDefinitions.collectFirst { case o: ScObject => o }.get
+      holder.members.collectFirst { case c: ScClass => c }.get
+    }
+
+    names = environment.inReadAction(SignatureNodes.build(clazz).allNames().toArray)
+
+    val before = usedHeap()
+    val retainedMap = environment.inReadAction(SignatureNodes.build(clazz))
+    val nodes = environment.inReadAction(retainedMap.allFirstSeq().map(_.iterator.size).sum)
+    val retained = usedHeap() - before
+    // the map is used after the measurement, so that it's not collected before
+    println("%d signatures of %d names, %d KB retained".format(nodes, retainedMap.size, retained / 1024))
+  }
+
+  // a fresh map per iteration, so that the lookups include the calculation of the nodes
+  @Setup(Level.Iteration)
+  def setUpMap() {
+    map = environment.inReadAction(SignatureNodes.build(clazz))
+  }
+
+  @Benchmark
+  def build(counters: Counters): Int = environment.inReadAction {
+    val nodes = SignatureNodes.build(clazz).allFirstSeq().map(_.iterator.size).sum
+    counters.elements += nodes
+    nodes
+  }
+
+  @Benchmark
+  def lookups(counters: Counters): Int = environment.inReadAction {
+    var result = 0
+    for (name <- names) {
+      result += map.forName(name)._1.iterator.size
+    }
+    counters.elements += names.length
+    result
+  }
+}
+
+object MixinNodesBenchmark {
+  private val Traits = 30
+
+  private val Methods = 20
+
+  private def usedHeap(): Long = {
+    val runtime = Runtime.getRuntime
+    for (_ <- 0 until 3) {
+      System.gc()
+      Thread.sleep(50)
+    }
+    runtime.totalMemory - runtime.freeMemory
+  }
+
+  private def text: String = {
+    val traits = (0 until Traits).map { i =>
+      val parent = if (i == 0) "" else s" extends T${i - 1}"
+      val methods = (0 until Methods).map(j => s"    def m$j(x: Int): Int = x + $i\n    def t${i}m$j(s: String): String = s").mkString("\n")
+      s"  trait T$i$parent {\n$methods\n  }"
+    }
+
+    "object Mixins {\n" + traits.mkString("\n\n") + "\n\n  class C extends " + (0 until Traits).map("T" + _).mkString(" with ") + "\n}\n"
+  }
+}
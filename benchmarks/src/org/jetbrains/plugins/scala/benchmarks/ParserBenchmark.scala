@@ -0,0 +1,43 @@
+package org.jetbrains.plugins.scala
+package benchmarks
+
+import java.util.concurrent.TimeUnit
+
+import com.intellij.lang.{ASTNode, PsiBuilderFactory}
+import org.jetbrains.plugins.scala.lang.lexer.ScalaLexer
+import org.jetbrains.plugins.scala.lang.parser.{ScalaElementTypes, ScalaParser, ScalaParserDefinition}
+import org.openjdk.jmh.annotations._
+
+/**
+ * AST nodes per second of the Scala parser (including the lexing that the PSI builder does).
+ */
+@BenchmarkMode(Array(Mode.Throughput))
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+class ParserBenchmark {
+  private lazy val definition = new ScalaParserDefinition()
+
+  @Benchmark
+  def parser(environment: IdeaEnvironment, counters: Counters): Long = environment.inReadAction {
+    var result = 0L
+    for ((_, text) <- Corpus.files) {
+      val builder = PsiBuilderFactory.getInstance.createBuilder(definition, new ScalaLexer(), text)
+      result += nodesIn(new ScalaParser().parse(ScalaElementTypes.FILE, builder))
+      counters.files += 1
+    }
+    counters.elements += result
+    result
+  }
+
+  private def nodesIn(node: ASTNode): Long = {
+    var result = 1L
+    var child = node.getFirstChildNode
+    while (child != null) {
+      result += nodesIn(child)
+      child = child.getTreeNext
+    }
+    result
+  }
+}
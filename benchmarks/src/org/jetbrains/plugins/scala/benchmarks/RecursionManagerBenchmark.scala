@@ -0,0 +1,118 @@
+package org.jetbrains.plugins.scala
+package benchmarks
+
+import java.util.concurrent.TimeUnit
+
+import com.intellij.psi.{PsiElement, PsiFileFactory}
+import com.intellij.psi.search.PsiElementProcessor
+import com.intellij.psi.util.PsiTreeUtil
+import org.jetbrains.plugins.scala.caches.ScalaRecursionManager
+import org.openjdk.jmh.annotations._
+
+import scala.collection.mutable
+import scala.collection.mutable.ArrayBuffer
+
+/**
+ * Time per guarded computation of ScalaRecursionManager, for nested computations like the ones of a recursive implicit
+ * search: the guard stack and the ThreadLocal maps with the (element, key) tuple keys (as ScalaRecursionManager
+ * was before). Run with "-prof gc" for the allocated bytes per computation (gc.alloc.rate.norm).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+class RecursionManagerBenchmark {
+  import RecursionManagerBenchmark._
+
+  private var elements: Array[PsiElement] = Array.empty
+
+  private val added = Array.tabulate[Object](Depth)(i => "type" + i)
+
+  private val checkAdd = (obj: Object, searches: Seq[Object]) => !searches.contains(obj)
+
+  @Setup(Level.Trial)
+  def setUp(environment: IdeaEnvironment) {
+    elements = environment.inReadAction {
+      val file = PsiFileFactory.getInstance(environment.project).createFileFromText("Recursion.scala",
+        ScalaFileType.SCALA_LANGUAGE, "object A { def a = 1; def b = 2 }")
+      PsiTreeUtil.collectElements(file, new PsiElementProcessor[PsiElement] {
+        def execute(element: PsiElement) = true
+      }).take(2)
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(Depth)
+  def guardStack(): Int = guardStackLevel(0)
+
+  @Benchmark
+  @OperationsPerInvocation(Depth)
+  def tupleMaps(): Int = tupleMapsLevel(0)
+
+  private def guardStackLevel(level: Int): Int = {
+    if (level == Depth) return level
+    ScalaRecursionManager.doComputations(elements(level % 2), checkAdd, added(level), guardStackLevel(level + 1),
+      ScalaRecursionManager.IMPLICIT_PARAM_TYPES_KEY).getOrElse(-1)
+  }
+
+  private def tupleMapsLevel(level: Int): Int = {
+    if (level == Depth) return level
+    TupleMapsRecursionManager.doComputations(elements(level % 2), checkAdd, added(level), tupleMapsLevel(level + 1),
+      ScalaRecursionManager.IMPLICIT_PARAM_TYPES_KEY).getOrElse(-1)
+  }
+}
+
+object RecursionManagerBenchmark {
+  final val Depth = 4
+
+  private object TupleMapsRecursionManager {
+    val recursionMap: ThreadLocal[mutable.Map[(PsiElement, String), ArrayBuffer[Object]]] =
+      new ThreadLocal[mutable.Map[(PsiElement, String), ArrayBuffer[Object]]] {
+        override def initialValue(): mutable.Map[(PsiElement, String), ArrayBuffer[Object]] =
+          new mutable.HashMap[(PsiElement, String), ArrayBuffer[Object]]
+      }
+
+    private def getSearches(element: PsiElement, key: String): ArrayBuffer[Object] = {
+      recursionMap.get().get((element, key)) match {
+        case Some(buffer: ArrayBuffer[Object]) => buffer
+        case _ => ArrayBuffer.empty[Object]
+      }
+    }
+
+    private def addLast(element: PsiElement, key: String, obj: Object) {
+      recursionMap.get().get((element, key)) match {
+        case Some(buffer) => buffer += obj
+        case _ =>
+          val buffer = ArrayBuffer.empty[Object]
+          buffer += obj
+          recursionMap.get().put((element, key), buffer)
+      }
+    }
+
+    private def removeLast(element: PsiElement, key: String) {
+      recursionMap.get().get((element, key)) match {
+        case Some(buffer) =>
+          buffer.remove(buffer.length - 1)
+          if (buffer.isEmpty) recursionMap.get().remove((element, key))
+        case _ => throw new RuntimeException("Match is not exhaustive")
+      }
+    }
+
+    def doComputations[Result](element: PsiElement, checkAdd: (Object, Seq[Object]) => Boolean, addElement: Object,
+                               compute: => Result, key: String): Option[Result] = {
+      val searches: ArrayBuffer[Object] = getSearches(element, key)
+      if (checkAdd(addElement, searches)) {
+        try {
+          addLast(element, key, addElement)
+          Some(compute)
+        }
+        finally {
+          removeLast(element, key)
+        }
+      }
+      else None
+    }
+  }
+}
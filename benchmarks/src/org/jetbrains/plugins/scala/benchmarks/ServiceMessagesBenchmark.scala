@@ -0,0 +1,83 @@
+package org.jetbrains.plugins.scala
+package benchmarks
+
+import java.io.{OutputStream, PrintStream}
+import java.util.concurrent.TimeUnit
+
+import org.jetbrains.plugins.scala.testingSupport.ServiceMessageWriter
+import org.openjdk.jmh.annotations._
+
+/**
+ * Test events per second of the ##teamcity messages output of the test runners, for 1M synthetic events
+ * (testStarted and testFinished messages): the concatenation with the regexp-based escaping and a println per message
+ * (as the runners did before), and the buffered ServiceMessageWriter. The output is discarded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.Throughput))
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+class ServiceMessagesBenchmark {
+  import ServiceMessagesBenchmark._
+
+  private var names: Array[String] = Array.empty
+  private var originalOut: PrintStream = null
+
+  @Setup(Level.Trial)
+  def setUp() {
+    names = Array.tabulate(1000) { i =>
+      if (i % 10 == 0) s"property 'p$i' holds for [${i % 7}] | n" else s"test number $i should pass"
+    }
+
+    originalOut = System.out
+    System.setOut(new PrintStream(new OutputStream {
+      override def write(b: Int) {}
+
+      override def write(b: Array[Byte], off: Int, len: Int) {}
+    }))
+  }
+
+  @TearDown(Level.Trial)
+  def tearDown() {
+    System.setOut(originalOut)
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(Events)
+  def concatenation(): Int = {
+    var id = 0
+    while (id < Events / 2) {
+      val name = names(id % names.length)
+      System.out.println("\n##teamcity[testStarted name='" + regexpEscape(name) + "' captureStandardOutput='true'" +
+              " nodeId='" + (id + 1) + "' parentNodeId='0']")
+      System.out.println("\n##teamcity[testFinished name='" + regexpEscape(name) + "' duration='" + id % 100 +
+              "' nodeId='" + (id + 1) + "']")
+      id += 1
+    }
+    id
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(Events)
+  def writer(): Int = {
+    var id = 0
+    while (id < Events / 2) {
+      val name = names(id % names.length)
+      ServiceMessageWriter.message("testStarted").attribute("name", name).attribute("captureStandardOutput", "true")
+              .attribute("nodeId", id + 1).attribute("parentNodeId", 0).send()
+      ServiceMessageWriter.message("testFinished").attribute("name", name).attribute("duration", id % 100)
+              .attribute("nodeId", id + 1).send()
+      id += 1
+    }
+    ServiceMessageWriter.flush()
+    id
+  }
+}
+
+object ServiceMessagesBenchmark {
+  final val Events = 1000000
+
+  private def regexpEscape(s: String) =
+    s.replaceAll("[|]", "||").replaceAll("[']", "|'").replaceAll("[\n]", "|n").replaceAll("[\r]", "|r").replaceAll("]", "|]")
+}
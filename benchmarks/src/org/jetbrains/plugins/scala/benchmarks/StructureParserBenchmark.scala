@@ -0,0 +1,45 @@
+package org.jetbrains.plugins.scala
+package benchmarks
+
+import java.io.File
+import java.util.concurrent.TimeUnit
+
+import org.jetbrains.sbt.model.StructureParserTest
+import org.jetbrains.sbt.project.structure.StructureParser
+import org.openjdk.jmh.annotations._
+
+import scala.xml.XML
+
+/**
+ * Time of parsing a generated SBT structure file of 300 projects with 200 module dependencies each:
+ * the DOM parser (the whole XML is loaded first) and the streaming parser. The memory use can be compared
+ * with the "-prof gc" JMH option.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+class StructureParserBenchmark {
+  private val home = new File("$HOME")
+
+  private var file: File = _
+
+  @Setup(Level.Trial)
+  def setUp() {
+    file = StructureParserTest.createLargeStructureFile(projects = 300, modules = 200)
+    println("Structure file: %d MB".format(file.length / (1024 * 1024)))
+  }
+
+  @TearDown(Level.Trial)
+  def tearDown() {
+    file.delete()
+  }
+
+  @Benchmark
+  def dom(): Int = StructureParser.parse(XML.loadFile(file), home).projects.size
+
+  @Benchmark
+  def streaming(): Int = StructureParser.parse(file, home).projects.size
+}
@@ -0,0 +1,51 @@
+package org.jetbrains.plugins.scala
+package benchmarks
+
+import java.util.concurrent.TimeUnit
+
+import com.intellij.psi.{PsiFile, PsiFileFactory}
+import com.intellij.psi.stubs.StubElement
+import org.jetbrains.plugins.scala.lang.psi.stubs.ScalaFileStubBuilder
+import org.openjdk.jmh.annotations._
+
+import scala.collection.JavaConverters._
+
+/**
+ * Stubs per second of the stub building, the files are parsed in the setup, so only the stub building is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Array(Mode.Throughput))
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+class StubBuilderBenchmark {
+  private val builder = new ScalaFileStubBuilder()
+
+  private var files: Seq[PsiFile] = Seq.empty
+
+  @Setup(Level.Trial)
+  def setUp(environment: IdeaEnvironment) {
+    files = environment.inReadAction {
+      Corpus.files.map { case (name, text) =>
+        val file = PsiFileFactory.getInstance(environment.project).createFileFromText(name, ScalaFileType.SCALA_LANGUAGE, text)
+        // forces the parsing
+        file.getNode.getLastChildNode
+        file
+      }
+    }
+  }
+
+  @Benchmark
+  def stubBuilder(environment: IdeaEnvironment, counters: Counters): Long = environment.inReadAction {
+    var result = 0L
+    for (file <- files) {
+      result += stubsIn(builder.buildStubTree(file))
+      counters.files += 1
+    }
+    counters.elements += result
+    result
+  }
+
+  private def stubsIn(stub: StubElement[_]): Long = 1L + stub.getChildrenStubs.asScala.map(stubsIn(_)).sum
+}
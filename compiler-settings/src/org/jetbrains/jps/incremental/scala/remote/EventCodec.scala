@@ -0,0 +1,195 @@
+package org.jetbrains.jps.incremental.scala
+package remote
+
+import java.io._
+
+import org.jetbrains.jps.incremental.messages.BuildMessage.Kind
+
+/**
+ * Compact binary encoding of compile server events.
+ *
+ * Frame layout: marker byte, protocol version, event tag, then the event fields.
+ * Strings are written as a length-prefixed UTF-8 byte sequence, options as a presence flag followed by the value.
+ *
+ * The marker is not a Base64 character, so a binary frame can always be told apart from
+ * a legacy (Java-serialized and Base64-encoded) one.
+ */
+object EventCodec {
+  val Version: Byte = 1
+
+  /** Nailgun environment variable that the client uses to announce the highest supported protocol version. */
+  val ProtocolProperty = "scala.compile.server.event.protocol"
+
+  private val Marker: Byte = 0
+
+  private val MessageTag: Byte = 1
+  private val ProgressTag: Byte = 2
+  private val DebugTag: Byte = 3
+  private val TraceTag: Byte = 4
+  private val GeneratedTag: Byte = 5
+  private val DeletedTag: Byte = 6
+  private val SourceProcessedTag: Byte = 7
+  private val CompilationEndTag: Byte = 8
+  private val WorksheetOutputTag: Byte = 9
+
+  private val Kinds = Kind.values()
+
+  def isSupported(clientVersion: String): Boolean =
+    clientVersion != null && clientVersion.nonEmpty && clientVersion.forall(_.isDigit) && clientVersion.toInt >= Version
+
+  def isBinary(bytes: Array[Byte]): Boolean = bytes.length > 2 && bytes(0) == Marker
+
+  def encode(event: Event): Array[Byte] = {
+    val buffer = new ByteArrayOutputStream(64)
+    val output = new DataOutputStream(buffer)
+
+    output.writeByte(Marker)
+    output.writeByte(Version)
+
+    event match {
+      case MessageEvent(kind, text, source, line, column) =>
+        output.writeByte(MessageTag)
+        output.writeByte(kind.ordinal)
+        writeString(output, text)
+        writeOptionalFile(output, source)
+        writeOptionalLong(output, line)
+        writeOptionalLong(output, column)
+
+      case ProgressEvent(text, done) =>
+        output.writeByte(ProgressTag)
+        writeString(output, text)
+        output.writeBoolean(done.isDefined)
+        done.foreach(output.writeFloat(_))
+
+      case DebugEvent(text) =>
+        output.writeByte(DebugTag)
+        writeString(output, text)
+
+      case TraceEvent(message, lines) =>
+        output.writeByte(TraceTag)
+        writeString(output, message)
+        output.writeInt(lines.length)
+        lines.foreach(writeString(output, _))
+
+      case GeneratedEvent(source, module, name) =>
+        output.writeByte(GeneratedTag)
+        writeFile(output, source)
+        writeFile(output, module)
+        writeString(output, name)
+
+      case DeletedEvent(module) =>
+        output.writeByte(DeletedTag)
+        writeFile(output, module)
+
+      case SourceProcessedEvent(source) =>
+        output.writeByte(SourceProcessedTag)
+        writeFile(output, source)
+
+      case CompilationEndEvent() =>
+        output.writeByte(CompilationEndTag)
+
+      case WorksheetOutputEvent(text) =>
+        output.writeByte(WorksheetOutputTag)
+        writeString(output, text)
+    }
+
+    output.flush()
+    buffer.toByteArray
+  }
+
+  def decode(bytes: Array[Byte]): Event = {
+    val input = new DataInputStream(new ByteArrayInputStream(bytes))
+
+    if (input.readByte() != Marker) throw new IllegalArgumentException("Not a binary event frame")
+
+    val version = input.readByte()
+    if (version > Version) throw new IllegalArgumentException("Unsupported event protocol version: " + version)
+
+    val event = input.readByte() match {
+      case MessageTag =>
+        val kind = Kinds(input.readByte())
+        MessageEvent(kind, readString(input), readOptionalFile(input), readOptionalLong(input), readOptionalLong(input))
+
+      case ProgressTag =>
+        val text = readString(input)
+        val done = if (input.readBoolean()) Some(input.readFloat()) else None
+        ProgressEvent(text, done)
+
+      case DebugTag =>
+        DebugEvent(readString(input))
+
+      case TraceTag =>
+        val message = readString(input)
+        val lines = Array.fill(input.readInt())(readString(input))
+        TraceEvent(message, lines)
+
+      case GeneratedTag =>
+        GeneratedEvent(readFile(input), readFile(input), readString(input))
+
+      case DeletedTag =>
+        DeletedEvent(readFile(input))
+
+      case SourceProcessedTag =>
+        SourceProcessedEvent(readFile(input))
+
+      case CompilationEndTag =>
+        CompilationEndEvent()
+
+      case WorksheetOutputTag =>
+        WorksheetOutputEvent(readString(input))
+
+      case tag =>
+        throw new IllegalArgumentException("Unknown event tag: " + tag)
+    }
+
+    if (input.available > 0) {
+      throw new IllegalArgumentException("Excess bytes after event decoding: " + input.available)
+    }
+
+    event
+  }
+
+  private def writeString(output: DataOutputStream, s: String) {
+    if (s == null) {
+      output.writeInt(-1)
+    } else {
+      val bytes = s.getBytes("UTF-8")
+      output.writeInt(bytes.length)
+      output.write(bytes)
+    }
+  }
+
+  private def readString(input: DataInputStream): String = {
+    val length = input.readInt()
+    if (length < 0) null else {
+      val bytes = new Array[Byte](length)
+      input.readFully(bytes)
+      new String(bytes, "UTF-8")
+    }
+  }
+
+  private def writeFile(output: DataOutputStream, file: File) {
+    writeString(output, if (file == null) null else file.getPath)
+  }
+
+  private def readFile(input: DataInputStream): File = {
+    val path = readString(input)
+    if (path == null) null else new File(path)
+  }
+
+  private def writeOptionalFile(output: DataOutputStream, file: Option[File]) {
+    output.writeBoolean(file.isDefined)
+    file.foreach(writeFile(output, _))
+  }
+
+  private def readOptionalFile(input: DataInputStream): Option[File] =
+    if (input.readBoolean()) Some(readFile(input)) else None
+
+  private def writeOptionalLong(output: DataOutputStream, value: Option[Long]) {
+    output.writeBoolean(value.isDefined)
+    value.foreach(output.writeLong(_))
+  }
+
+  private def readOptionalLong(input: DataInputStream): Option[Long] =
+    if (input.readBoolean()) Some(input.readLong()) else None
+}
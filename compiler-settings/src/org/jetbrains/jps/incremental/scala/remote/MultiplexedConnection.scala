@@ -0,0 +1,281 @@
+package org.jetbrains.jps.incremental.scala
+package remote
+
+import java.io._
+import java.net.{InetAddress, Socket}
+import java.nio.ByteBuffer
+import java.util
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.{ConcurrentHashMap, LinkedBlockingQueue, TimeUnit}
+
+import com.martiansoftware.nailgun.NGConstants
+import org.jetbrains.jps.incremental.messages.BuildMessage.Kind
+import org.jetbrains.jps.incremental.scala.remote.MultiplexedConnection._
+
+import scala.collection.JavaConverters._
+
+/**
+ * A single long-lived Nailgun session that carries several compile requests at once.
+ *
+ * Requests are written to the session stdin as frames tagged with a request id,
+ * the server answers with stdout chunks that start with the same id, followed by a binary event
+ * (an id alone marks the end of the request).
+ *
+ * Nailgun accepts stdin data only when the server has asked for it, so the outgoing frames are queued
+ * and a single frame is written per SENDINPUT chunk.
+ */
+class MultiplexedConnection(address: InetAddress, port: Int, command: String, currentDirectory: String) {
+  private val socket = new Socket(address, port)
+
+  private val output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream))
+
+  private val input = new DataInputStream(new BufferedInputStream(socket.getInputStream))
+
+  private val requests = new ConcurrentHashMap[Integer, LinkedBlockingQueue[Chunk]]()
+
+  private val ids = new AtomicInteger()
+
+  @volatile private var closed = false
+
+  // guards the registration of the requests against close()
+  private val lock = new Object
+
+  private val outgoing = new util.ArrayDeque[Frame]()
+
+  private var inputRequested = false
+
+  write(Seq(
+    Chunk(NGConstants.CHUNKTYPE_ENVIRONMENT.toChar, (EventCodec.ProtocolProperty + "=" + EventCodec.Version).getBytes),
+    Chunk(NGConstants.CHUNKTYPE_ENVIRONMENT.toChar, (SessionProperty + "=" + SessionVersion).getBytes),
+    Chunk(NGConstants.CHUNKTYPE_WORKINGDIRECTORY.toChar, currentDirectory.getBytes),
+    Chunk(NGConstants.CHUNKTYPE_COMMAND.toChar, command.getBytes)))
+
+  daemon("Scala compile server connection reader") {
+    try {
+      while (!closed) read()
+    } catch {
+      case _: IOException => // the session is over
+    } finally {
+      close()
+    }
+  }
+
+  daemon("Scala compile server connection heartbeat") {
+    try {
+      while (!closed) {
+        Thread.sleep(NGConstants.HEARTBEAT_INTERVAL_MILLIS)
+        write(Seq(Chunk(NGConstants.CHUNKTYPE_HEARTBEAT.toChar, Array.empty)))
+      }
+    } catch {
+      case _: IOException | _: InterruptedException => close()
+    }
+  }
+
+  def isOpen: Boolean = !closed
+
+  /**
+   * @throws RequestLostException if the connection is lost after the request was written,
+   *                              so the request may still be running in the server
+   */
+  def send(arguments: Seq[String], client: Client) {
+    val id = ids.incrementAndGet()
+    val queue = new LinkedBlockingQueue[Chunk]()
+
+    lock.synchronized {
+      if (closed) throw new IOException("Connection to the compile server is closed")
+      requests.put(id, queue)
+    }
+
+    val request = new Frame(requestFrame(RequestFrame, id, arguments))
+
+    try {
+      enqueue(request)
+
+      val processor = new ClientEventProcessor(client)
+
+      while (!client.isCanceled) {
+        queue.poll(PollInterval, TimeUnit.MILLISECONDS) match {
+          case null =>
+          case Chunk(NGConstants.CHUNKTYPE_EXIT, data) =>
+            if (data eq Disconnected) {
+              if (request.written) throw new RequestLostException("Connection to the compile server is lost")
+              else throw new IOException("Connection to the compile server is lost")
+            }
+            return
+          case Chunk(NGConstants.CHUNKTYPE_STDOUT, data) =>
+            try {
+              processor.process(EventCodec.decode(data))
+            } catch {
+              case e: Exception =>
+                client.message(Kind.ERROR, "Unable to read an event from the compile server")
+                client.trace(e)
+            }
+          case Chunk(NGConstants.CHUNKTYPE_STDERR, data) =>
+            client.message(Kind.WARNING, new String(data))
+          case Chunk(kind, data) =>
+            client.message(Kind.ERROR, "Unexpected server output: " + new String(data))
+        }
+      }
+
+      enqueue(new Frame(requestFrame(CancelFrame, id, Seq.empty)))
+    } finally {
+      requests.remove(id)
+    }
+  }
+
+  def close() {
+    val wasClosed = lock.synchronized {
+      val result = closed
+      closed = true
+      result
+    }
+    if (wasClosed) return
+
+    try {
+      socket.close()
+    } catch {
+      case _: IOException =>
+    }
+
+    requests.values.asScala.foreach(_.offer(Chunk(NGConstants.CHUNKTYPE_EXIT.toChar, Disconnected)))
+  }
+
+  private def read() {
+    Chunk.readFrom(input) match {
+      case Chunk(NGConstants.CHUNKTYPE_STDOUT, data) if data.length >= 4 =>
+        val id = ByteBuffer.wrap(data).getInt
+        val queue = requests.get(id)
+        if (queue != null) {
+          val reply =
+            if (data.length == 4) Chunk(NGConstants.CHUNKTYPE_EXIT.toChar, Array.empty)
+            else Chunk(NGConstants.CHUNKTYPE_STDOUT.toChar, util.Arrays.copyOfRange(data, 4, data.length))
+          queue.offer(reply)
+        }
+      // stderr data can't be attributed to a particular request
+      case chunk @ Chunk(NGConstants.CHUNKTYPE_STDERR, _) =>
+        requests.values.asScala.foreach(_.offer(chunk))
+      case Chunk(NGConstants.CHUNKTYPE_EXIT, _) =>
+        close()
+      case Chunk(NGConstants.CHUNKTYPE_SENDINPUT, _) =>
+        val frame = outgoing.synchronized {
+          val next = outgoing.poll()
+          if (next == null) inputRequested = true
+          next
+        }
+        if (frame != null) writeFrame(frame)
+      case _ =>
+    }
+  }
+
+  /**
+   * Writes the frame at once if the server waits for input, otherwise on the next SENDINPUT
+   */
+  private def enqueue(frame: Frame) {
+    val now = outgoing.synchronized {
+      if (inputRequested) {
+        inputRequested = false
+        true
+      } else {
+        outgoing.add(frame)
+        false
+      }
+    }
+    if (now) writeFrame(frame)
+  }
+
+  private def writeFrame(frame: Frame) {
+    // a partially written request may have reached the server as well
+    frame.written = true
+    write(Seq(Chunk(NGConstants.CHUNKTYPE_STDIN.toChar, frame.bytes)))
+  }
+
+  private def write(chunks: Seq[Chunk]) {
+    output.synchronized {
+      chunks.foreach(_.writeTo(output))
+      output.flush()
+    }
+  }
+}
+
+object MultiplexedConnection {
+  /** Nailgun environment variable that turns a compile server session into a multiplexed one. */
+  val SessionProperty = "scala.compile.server.session"
+
+  val SessionVersion = 1
+
+  val RequestFrame: Byte = 1
+
+  val CancelFrame: Byte = 2
+
+  private val PollInterval = 100L
+
+  private val Disconnected = new Array[Byte](0)
+
+  private class Frame(val bytes: Array[Byte]) {
+    @volatile var written = false
+  }
+
+  /**
+   * The connection is lost while the request may be running in the server, so it shouldn't be sent again
+   */
+  class RequestLostException(message: String) extends IOException(message)
+
+  private val connections = new util.HashMap[(InetAddress, Int), MultiplexedConnection]()
+
+  /**
+   * Returns the connection shared by all the compile requests of the current process,
+   * a new connection is opened if there's none yet or the previous one is closed.
+   */
+  def get(address: InetAddress, port: Int, command: String, currentDirectory: String): MultiplexedConnection = {
+    connections.synchronized {
+      val key = (address, port)
+      val existing = connections.get(key)
+      if (existing != null && existing.isOpen) existing else {
+        val connection = new MultiplexedConnection(address, port, command, currentDirectory)
+        connections.put(key, connection)
+        connection
+      }
+    }
+  }
+
+  def isRequested(sessionVersion: String): Boolean = sessionVersion == SessionVersion.toString
+
+  def requestFrame(kind: Byte, id: Int, arguments: Seq[String]): Array[Byte] = {
+    val buffer = new ByteArrayOutputStream()
+    val output = new DataOutputStream(buffer)
+    output.writeByte(kind)
+    output.writeInt(id)
+    output.writeInt(arguments.length)
+    arguments.foreach { argument =>
+      val bytes = argument.getBytes("UTF-8")
+      output.writeInt(bytes.length)
+      output.write(bytes)
+    }
+    output.flush()
+    buffer.toByteArray
+  }
+
+  /**
+   * @return frame kind, request id and arguments
+   */
+  def readFrame(input: DataInputStream): (Byte, Int, Seq[String]) = {
+    val kind = input.readByte()
+    val id = input.readInt()
+    val arguments = Seq.fill(input.readInt()) {
+      val bytes = new Array[Byte](input.readInt())
+      input.readFully(bytes)
+      new String(bytes, "UTF-8")
+    }
+    (kind, id, arguments)
+  }
+
+  private def daemon(name: String)(body: => Unit) {
+    val thread = new Thread(new Runnable {
+      def run() {
+        body
+      }
+    }, name)
+    thread.setDaemon(true)
+    thread.start()
+  }
+}
@@ -20,7 +20,7 @@ trait RemoteResourceOwner {
   protected val serverAlias = "compile-server"
 
   def send(command: String, arguments: Seq[String], client: Client) {
-    val encodedArgs = arguments.map(s => Base64Converter.encode(s.getBytes("UTF-8")))
+    val encodedArgs = encode(arguments)
     using(new Socket(address, port)) { socket =>
       using(new DataOutputStream(new BufferedOutputStream(socket.getOutputStream))) { output =>
         createChunks(command, encodedArgs).foreach(_.writeTo(output))
@@ -34,6 +34,13 @@ trait RemoteResourceOwner {
     }
   }
 
+  /**
+   * Sends the command through the connection that is shared by all the requests of this process.
+   */
+  def sendMultiplexed(command: String, arguments: Seq[String], client: Client) {
+    MultiplexedConnection.get(address, port, command, currentDirectory).send(encode(arguments), client)
+  }
+
   protected def handle(input: DataInputStream, client: Client) {
     val processor = new ClientEventProcessor(client)
 
@@ -43,7 +50,9 @@ trait RemoteResourceOwner {
           return
         case Chunk(NGConstants.CHUNKTYPE_STDOUT, data) =>
           try {
-            val event = Event.fromBytes(Base64Converter.decode(data))
+            val event =
+              if (EventCodec.isBinary(data)) EventCodec.decode(data)
+              else Event.fromBytes(Base64Converter.decode(data))
             processor.process(event)
           } catch {
             case e: Exception =>
@@ -68,10 +77,13 @@ trait RemoteResourceOwner {
 
   protected def createChunks(command: String, args: Seq[String]): Seq[Chunk] = {
     args.map(s => Chunk(NGConstants.CHUNKTYPE_ARGUMENT.toChar, toBytes(s))) :+
+      Chunk(NGConstants.CHUNKTYPE_ENVIRONMENT.toChar, toBytes(EventCodec.ProtocolProperty + "=" + EventCodec.Version)) :+
       Chunk(NGConstants.CHUNKTYPE_WORKINGDIRECTORY.toChar, toBytes(currentDirectory)) :+
       Chunk(NGConstants.CHUNKTYPE_COMMAND.toChar, toBytes(command))
   }
 
+  private def encode(arguments: Seq[String]) = arguments.map(s => Base64Converter.encode(s.getBytes("UTF-8")))
+
   private def toBytes(s: String) = s.getBytes
 
   private def fromBytes(bytes: Array[Byte]) = new String(bytes)
@@ -0,0 +1,25 @@
+package org.jetbrains.jps.incremental.scala.remote
+
+/**
+ * The markers and the member names that are shared by the worksheet source processor of the IDE
+ * and the worksheet runner of the compile server
+ */
+object WorksheetMarkers {
+  val END_OUTPUT_MARKER = "###worksheet###$$end$$!@#$%^&*(("
+
+  /**
+   * Printed instead of the output when a segment of an incrementally run worksheet refers to a previous segment
+   * that is not available anymore (e.g. the compile server was restarted)
+   */
+  val STATE_LOST_MARKER = "###worksheet###$$state$$lost$$"
+
+  /**
+   * The generated worksheet object of an incrementally run worksheet keeps its instance in this field
+   */
+  val INSTANCE_METHOD = "instance$$worksheet"
+
+  /**
+   * The generated worksheet object of a segment that continues the previous segments returns the name of the previous one
+   */
+  val PREVIOUS_SEGMENT_METHOD = "previous$$worksheet"
+}
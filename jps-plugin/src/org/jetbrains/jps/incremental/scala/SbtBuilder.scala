@@ -31,6 +31,10 @@ class SbtBuilder extends ModuleLevelBuilder(BuilderCategory.TRANSLATOR) {
       JavaBuilder.IS_ENABLED.set(context, false)
   }
 
+  override def buildFinished(context: CompileContext) {
+    TargetTimestamps.release(context)
+  }
+
   override def build(context: CompileContext,
             chunk: ModuleChunk,
             dirtyFilesHolder: DirtyFilesHolder[JavaSourceRootDescriptor, ModuleBuildTarget],
@@ -122,14 +126,16 @@ class SbtBuilder extends ModuleLevelBuilder(BuilderCategory.TRANSLATOR) {
 
     val timestamps = new TargetTimestamps(context)
 
-    val targetTimestamp = timestamps.get(representativeTarget)
+    val dependencies = moduleDependenciesIn(context, representativeTarget)
 
-    val hasDirtyDependencies = {
-      val dependencies = moduleDependenciesIn(context, representativeTarget)
+    val knownTimestamps = timestamps.getAll(representativeTarget +: dependencies)
 
+    val targetTimestamp = knownTimestamps.get(representativeTarget)
+
+    val hasDirtyDependencies = {
       targetTimestamp.map { thisTimestamp =>
         dependencies.exists { dependency =>
-          val thatTimestamp = timestamps.get(dependency)
+          val thatTimestamp = knownTimestamps.get(dependency)
           thatTimestamp.map(_ > thisTimestamp).getOrElse(true)
         }
       } getOrElse {
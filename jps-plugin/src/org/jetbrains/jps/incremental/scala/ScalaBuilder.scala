@@ -184,7 +184,7 @@ object ScalaBuilder {
 
     if (settings.isCompileServerEnabled && JavaBuilderUtil.CONSTANT_SEARCH_SERVICE.get(context) != null) {
       cleanLocalServerCache()
-      new RemoteServer(InetAddress.getByName(null), settings.getCompileServerPort)
+      new RemoteServer(InetAddress.getByName(null), settings.getCompileServerPort, settings.isCompileServerConnectionShared)
     } else {
       localServer
     }
@@ -1,6 +1,9 @@
 package org.jetbrains.jps.incremental.scala
 
 import java.io._
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.util.zip.CRC32
 
 import org.jetbrains.jps.incremental.{CompileContext, ModuleBuildTarget}
 
@@ -10,32 +13,280 @@ import org.jetbrains.jps.incremental.{CompileContext, ModuleBuildTarget}
 class TargetTimestamps(context: CompileContext) {
   private val paths = context.getProjectDescriptor.dataManager.getDataPaths
 
+  private val store = TargetTimestamps.storeIn(paths.getDataStorageRoot)
+
   def get(target: ModuleBuildTarget): Option[Long] = {
-    Some(timestampFile(target)).filter(_.exists).flatMap { file =>
-      using(new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) { in =>
+    migrateLegacyTimestampOf(target)
+    store.get(keyOf(target))
+  }
+
+  /**
+   * Reads the timestamps of all the targets at once, targets without a timestamp are omitted.
+   */
+  def getAll(targets: Iterable[ModuleBuildTarget]): Map[ModuleBuildTarget, Long] = {
+    targets.foreach(migrateLegacyTimestampOf)
+    val timestamps = store.getAll(targets.map(keyOf))
+    targets.flatMap(target => timestamps.get(keyOf(target)).map(target -> _)).toMap
+  }
+
+  def set(target: ModuleBuildTarget, timestamp: Long) {
+    store.set(keyOf(target), timestamp)
+  }
+
+  private def keyOf(target: ModuleBuildTarget): String = target.getTargetType.getTypeId + ":" + target.getId
+
+  /**
+   * Moves a timestamp that was saved before the single store was introduced (one file per target) to the store.
+   * The file is deleted, so that it can't be read again when the store loses the key (which means "out of date").
+   */
+  private def migrateLegacyTimestampOf(target: ModuleBuildTarget) {
+    val file = new File(paths.getTargetDataRoot(target), TargetTimestamps.LegacyFilename)
+
+    if (file.exists) {
+      val timestamp = using(new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) { in =>
         try {
           Some(in.readLong())
         } catch {
           case _: IOException => None
         }
       }
+
+      val key = keyOf(target)
+      if (file.delete() && store.get(key).isEmpty) timestamp.foreach(store.set(key, _))
     }
   }
+}
 
-  def set(target: ModuleBuildTarget, timestamp: Long) {
-    val file = timestampFile(target)
+object TargetTimestamps {
+  private val LegacyFilename = "timestamp.dat"
+
+  private val Filename = "scala-target-timestamps.dat"
+
+  private val stores = new java.util.HashMap[File, TimestampStore]()
+
+  // One store per project data directory, shared by all the builders of the build
+  private def storeIn(dataStorageRoot: File): TimestampStore = stores.synchronized {
+    val file = new File(dataStorageRoot, Filename)
+    val existing = stores.get(file)
+    if (existing != null && file.exists) existing else {
+      if (existing != null) existing.close()
+      val store = new TimestampStore(file)
+      stores.put(file, store)
+      store
+    }
+  }
+
+  /**
+   * Writes and unmaps the store of the build, so that the mapping doesn't outlive it
+   * (the data directory may be cleaned by the next build of a preloaded build process).
+   */
+  def release(context: CompileContext): Unit = stores.synchronized {
+    val store = stores.remove(new File(context.getProjectDescriptor.dataManager.getDataPaths.getDataStorageRoot, Filename))
+    if (store != null) store.close()
+  }
+}
+
+/**
+ * A memory-mapped key-timestamp store.
+ *
+ * The file consists of a header and a sequence of records: key length, key bytes (UTF-8), timestamp and CRC32
+ * of the key and the timestamp. A new key is appended, while an existing key is updated in place, so a record
+ * never moves. A record that was torn by a crash fails its checksum and is treated as absent
+ * (i.e. the target is considered out of date), a truncated tail is discarded when the store is opened.
+ */
+private class TimestampStore(file: File) {
+  import TimestampStore._
+
+  private var buffer: MappedByteBuffer = _
+
+  // key -> offset of the record timestamp
+  private val offsets = new java.util.HashMap[String, Integer]()
+
+  private val timestamps = new java.util.HashMap[String, java.lang.Long]()
+
+  private var end = HeaderSize
+
+  private var closed = false
+
+  open()
+
+  def get(key: String): Option[Long] = synchronized {
+    Option(timestamps.get(key)).map(_.longValue)
+  }
+
+  def getAll(keys: Iterable[String]): Map[String, Long] = synchronized {
+    keys.flatMap(key => Option(timestamps.get(key)).map(key -> _.longValue)).toMap
+  }
+
+  def set(key: String, timestamp: Long): Unit = synchronized {
+    if (closed || buffer == null) {
+      // the value can't be persisted, so the target is considered out of date by the next build
+      invalidate(key)
+    } else try {
+      val offset = offsets.get(key)
+
+      if (offset == null) {
+        val keyBytes = key.getBytes("UTF-8")
+        val recordSize = 4 + keyBytes.length + 8 + 4
+        ensureCapacity(end + recordSize)
+        buffer.position(end)
+        buffer.putInt(keyBytes.length)
+        buffer.put(keyBytes)
+        buffer.putLong(timestamp)
+        buffer.putInt(checksum(keyBytes, timestamp))
+        offsets.put(key, end + 4 + keyBytes.length)
+        end += recordSize
+      } else {
+        val keyBytes = key.getBytes("UTF-8")
+        // the record is invalid while it's updated, so that a torn update isn't read as the previous timestamp
+        buffer.putInt(offset + 8, ~checksum(keyBytes, buffer.getLong(offset)))
+        buffer.putLong(offset, timestamp)
+        buffer.putInt(offset + 8, checksum(keyBytes, timestamp))
+      }
+
+      timestamps.put(key, timestamp)
+    } catch {
+      // a failed update results in a rebuild rather than in a stale timestamp
+      case _: IOException | _: InternalError => invalidate(key)
+    }
+  }
+
+  /**
+   * Writes the changes to the file and unmaps it, the store keeps serving the loaded timestamps.
+   */
+  def close(): Unit = synchronized {
+    if (!closed) {
+      closed = true
+      unmap()
+    }
+  }
+
+  // Drops the timestamp of the key, both in memory and on disk (by breaking the checksum of its record)
+  private def invalidate(key: String) {
+    timestamps.remove(key)
+
+    val offset = offsets.get(key)
+    if (offset != null) {
+      val keyBytes = key.getBytes("UTF-8")
+      try {
+        if (buffer != null) {
+          buffer.putInt(offset + 8, ~checksum(keyBytes, buffer.getLong(offset)))
+        } else if (file.exists) {
+          using(new RandomAccessFile(file, "rw")) { out =>
+            out.seek(offset.longValue)
+            val timestamp = out.readLong()
+            out.writeInt(~checksum(keyBytes, timestamp))
+          }
+        }
+      } catch {
+        case _: IOException | _: InternalError =>
+      }
+    }
+  }
+
+  private def open() {
+    try {
+      if (file.length < HeaderSize) create() else {
+        map(file.length)
+        if (buffer.getInt(0) != Magic || buffer.getInt(4) != Version) create() else load()
+      }
+    } catch {
+      case _: IOException => create()
+    }
+  }
+
+  private def create() {
+    offsets.clear()
+    timestamps.clear()
+    file.getParentFile.mkdirs()
+    // A file that is still mapped can't be deleted on Windows
+    unmap()
+    file.delete()
+    map(InitialSize)
+    buffer.putInt(0, Magic)
+    buffer.putInt(4, Version)
+    end = HeaderSize
+  }
+
+  private def load() {
+    val limit = buffer.capacity
+    var position = HeaderSize
+    var valid = true
+
+    while (valid && position + 4 <= limit) {
+      val keyLength = buffer.getInt(position)
 
-    using(new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) { out =>
-      out.writeLong(timestamp)
+      if (keyLength <= 0 || keyLength > MaxKeyLength || position + 4 + keyLength + 12 > limit) {
+        valid = false
+      } else {
+        val keyBytes = new Array[Byte](keyLength)
+        buffer.position(position + 4)
+        buffer.get(keyBytes)
+        val offset = position + 4 + keyLength
+        val timestamp = buffer.getLong(offset)
+        val key = new String(keyBytes, "UTF-8")
+        offsets.put(key, offset)
+        if (buffer.getInt(offset + 8) == checksum(keyBytes, timestamp)) timestamps.put(key, timestamp)
+        position = offset + 12
+      }
+    }
+
+    end = position
+
+    // Clear what's left of a partially written record, so that it's not mistaken for a valid one later
+    for (i <- end until limit) buffer.put(i, 0.toByte)
+  }
+
+  private def ensureCapacity(size: Int) {
+    if (size > buffer.capacity) map(math.max(size, buffer.capacity * 2))
+  }
+
+  private def map(size: Long) {
+    unmap()
+    val channel = new RandomAccessFile(file, "rw").getChannel
+    try {
+      buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size)
+    } finally {
+      channel.close()
     }
   }
 
-  private def timestampFile(target: ModuleBuildTarget): File = {
-    paths.getTargetDataRoot(target)
-    new File(paths.getTargetDataRoot(target), TargetTimestamps.Filename)
+  private def unmap() {
+    if (buffer != null) {
+      buffer.force()
+      clean(buffer)
+      buffer = null
+    }
   }
 }
 
-private object TargetTimestamps {
-  private val Filename = "timestamp.dat"
-}
\ No newline at end of file
+private object TimestampStore {
+  private val Magic = 0x53545453
+
+  private val Version = 1
+
+  private val HeaderSize = 8
+
+  private val InitialSize = 64 * 1024
+
+  private val MaxKeyLength = 64 * 1024
+
+  // There's no public API to unmap a buffer, otherwise the mapping is released only when the buffer is collected
+  private def clean(buffer: MappedByteBuffer) {
+    try {
+      val cleanerMethod = buffer.getClass.getMethod("cleaner")
+      cleanerMethod.setAccessible(true)
+      val cleaner = cleanerMethod.invoke(buffer)
+      if (cleaner != null) cleaner.getClass.getMethod("clean").invoke(cleaner)
+    } catch {
+      case _: Exception =>
+    }
+  }
+
+  private def checksum(keyBytes: Array[Byte], timestamp: Long): Int = {
+    val crc = new CRC32()
+    crc.update(keyBytes)
+    for (i <- 0 until 8) crc.update((timestamp >>> (i * 8)).toInt & 0xFF)
+    crc.getValue.toInt
+  }
+}
@@ -9,3 +9,17 @@ import java.io.File
 case class CompilerJars(library: File, compiler: File, extra: Seq[File]) {
   def files: Seq[File] = library +: compiler +: extra
 }
+
+object CompilerJars {
+  /**
+   * Finds the library and compiler JARs in a Scala compiler classpath, all the other files are treated as extra JARs.
+   */
+  def fromFiles(files: Seq[File]): Option[CompilerJars] = {
+    def find(prefix: String) = files.find(file => file.getName.startsWith(prefix) && file.getName.endsWith(".jar"))
+
+    for {
+      library <- find("scala-library")
+      compiler <- find("scala-compiler")
+    } yield CompilerJars(library, compiler, files.filterNot(file => file == library || file == compiler))
+  }
+}
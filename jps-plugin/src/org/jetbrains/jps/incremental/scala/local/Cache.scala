@@ -1,25 +1,174 @@
 package org.jetbrains.jps.incremental.scala
 package local
 
-import java.lang.ref.SoftReference
-import java.util.LinkedHashMap
-import java.util.Map.Entry
+import java.util
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.{Callable, ExecutionException, FutureTask}
 
 /**
+ * A thread-safe LRU cache: values are computed outside the lock, so lookups of different keys don't wait
+ * for each other's computations, and a value is computed only once even if several threads ask for the same key.
+ *
+ * Entries are evicted when their total weight exceeds the limit. The weight of an entry
+ * is re-estimated on every hit, so that values which grow over time (e.g. analysis stores) are accounted properly.
+ * The entry that was accessed last is never evicted, even if it alone is heavier than the limit.
+ *
  * @author Pavel Fatin
  */
-class Cache[K, V](capacity: Int) {
+class Cache[K, V](maxWeight: Long, weigher: (K, V) => Long) {
+  def this(capacity: Int) = this(capacity, (_: K, _: V) => 1L)
+
   private val lock = new Object()
 
-  private val map = new LinkedHashMap[K, SoftReference[V]](capacity, 0.75F, true) {
-    override def removeEldestEntry(eldest: Entry[K, SoftReference[V]]) = size > capacity
+  // In the access order, the eldest entries first
+  private val map = new util.LinkedHashMap[K, Entry](16, 0.75f, true)
+
+  private val totalWeight = new AtomicLong()
+
+  private val hits = new AtomicLong()
+
+  private val misses = new AtomicLong()
+
+  private val loadTime = new AtomicLong()
+
+  private val evictions = new AtomicLong()
+
+  def getOrUpdate(key: K)(value: => V): V = {
+    var newEntry: Entry = null
+
+    val existing = lock.synchronized {
+      val entry = map.get(key)
+      if (entry == null) {
+        newEntry = new Entry(new FutureTask[V](new Callable[V] {
+          def call() = value
+        }))
+        map.put(key, newEntry)
+      }
+      entry
+    }
+
+    if (existing != null) {
+      existing.get match {
+        case Some(v) => hit(key, existing, v)
+        case None =>
+          remove(key, existing)
+          getOrUpdate(key)(value)
+      }
+    } else {
+      misses.incrementAndGet()
+      val start = System.nanoTime()
+      try {
+        val v = newEntry.compute()
+        newEntry.updateWeight(weigher(key, v))
+        v
+      } catch {
+        case e: Throwable =>
+          remove(key, newEntry)
+          throw e
+      } finally {
+        loadTime.addAndGet(System.nanoTime() - start)
+        evictIfNeeded(key)
+      }
+    }
+  }
+
+  def statistics: CacheStatistics = CacheStatistics(hits.get, misses.get, loadTime.get / 1000000L, evictions.get,
+    lock.synchronized(map.size), totalWeight.get, maxWeight)
+
+  private def hit(key: K, entry: Entry, v: V): V = {
+    hits.incrementAndGet()
+    entry.updateWeight(weigher(key, v))
+    evictIfNeeded(key)
+    v
   }
 
-  def getOrUpdate(key: K)(value: => V): V = lock.synchronized {
-    Option(map.get(key)).flatMap(reference => Option(reference.get())).getOrElse {
-      val v = value
-      map.put(key, new SoftReference(v))
+  private def remove(key: K, entry: Entry) {
+    val removed = lock.synchronized {
+      val matches = map.get(key) eq entry
+      if (matches) map.remove(key)
+      matches
+    }
+    if (removed) entry.release()
+  }
+
+  // Evicts the least recently used entries (but not the entry of the given key) until the total weight fits the limit
+  private def evictIfNeeded(keep: K) {
+    if (totalWeight.get > maxWeight) {
+      lock.synchronized {
+        val iterator = map.entrySet.iterator
+        while (totalWeight.get > maxWeight && iterator.hasNext) {
+          val eldest = iterator.next()
+          if (eldest.getKey != keep) {
+            iterator.remove()
+            eldest.getValue.release()
+            evictions.incrementAndGet()
+          }
+        }
+      }
+    }
+  }
+
+  private class Entry(initialTask: FutureTask[V]) {
+    // The task is dropped once the value is computed, so that it doesn't retain the arguments of the computation
+    @volatile private var task = initialTask
+
+    @volatile private var value: V = _
+
+    private var weight = 0L
+
+    private var released = false
+
+    def compute(): V = {
+      val pending = task
+      pending.run()
+      unwrap(pending)
+    }
+
+    /**
+     * Waits for a value that is being computed by another thread,
+     * None means that the value failed to compute.
+     */
+    def get: Option[V] = {
+      val pending = task
+      if (pending == null) Some(value) else {
+        try {
+          Some(unwrap(pending))
+        } catch {
+          case _: Exception => None
+        }
+      }
+    }
+
+    def updateWeight(newWeight: Long): Unit = synchronized {
+      if (!released) {
+        totalWeight.addAndGet(newWeight - weight)
+        weight = newWeight
+      }
+    }
+
+    def release(): Unit = synchronized {
+      released = true
+      totalWeight.addAndGet(-weight)
+      weight = 0L
+    }
+
+    private def unwrap(pending: FutureTask[V]): V = {
+      val v = try {
+        pending.get()
+      } catch {
+        case e: ExecutionException => throw e.getCause
+      }
+      value = v
+      task = null
       v
     }
   }
 }
+
+case class CacheStatistics(hits: Long, misses: Long, loadTimeMillis: Long, evictions: Long,
+                           size: Int, weight: Long, maxWeight: Long) {
+  def hitRate: Double = if (hits + misses == 0) 0.0D else hits.toDouble / (hits + misses)
+
+  override def toString = "%d entries (weight %d of %d), %d hits, %d misses (%.0f%% hit rate), %d ms loading, %d evictions"
+          .format(size, weight, maxWeight, hits, misses, hitRate * 100, loadTimeMillis, evictions)
+}
@@ -4,30 +4,47 @@ package local
 import java.io.File
 
 import org.jetbrains.jps.incremental.scala.data.{CompilerData, CompilerJars, SbtData}
+import org.jetbrains.jps.incremental.scala.local.CachingFactory._
 import sbt.compiler.AnalyzingCompiler
 import sbt.inc.AnalysisStore
 
 /**
  * @author Pavel Fatin
  */
-class CachingFactory(delegate: CompilerFactory, compilersLimit: Int, analysisLimit: Int, scalacLimit: Int) extends CompilerFactory {
+class CachingFactory(delegate: CompilerFactory, sbtData: SbtData, compilersLimit: Int, analysisBudget: Long, scalacLimit: Int) extends CompilerFactory {
   private val compilerCache = new Cache[CompilerData, Compiler](compilersLimit)
 
-  private val analysisCache = new Cache[File, AnalysisStore](analysisLimit)
+  private val analysisCache = new Cache[File, AnalysisStore](analysisBudget, (file: File, _: AnalysisStore) => estimateAnalysisSize(file))
 
   private val scalacCache = new Cache[(SbtData, Option[CompilerJars]), Option[AnalyzingCompiler]](scalacLimit)
 
   def createCompiler(compilerData: CompilerData, client: Client, fileToStore: File => AnalysisStore): Compiler = {
     val cachingFileToStore = (file: File) => analysisCache.getOrUpdate(file)(fileToStore(file))
 
+    // The compilers share the scalac instances with the warm-up
     compilerCache.getOrUpdate(compilerData) {
-      delegate.createCompiler(compilerData, client, cachingFileToStore)
+      delegate.createCompiler(compilerData, getScalac(sbtData, compilerData.compilerJars, client), cachingFileToStore)
     }
   }
 
+  def createCompiler(compilerData: CompilerData, scalac: Option[AnalyzingCompiler], fileToStore: File => AnalysisStore): Compiler =
+    delegate.createCompiler(compilerData, scalac, fileToStore)
+
   def getScalac(sbtData: SbtData, compilerJars: Option[CompilerJars], client: Client): Option[AnalyzingCompiler] = {
     scalacCache.getOrUpdate((sbtData, compilerJars)) {
       delegate.getScalac(sbtData, compilerJars, client)
     }
   }
+
+  def statistics: Seq[(String, CacheStatistics)] = Seq(
+    "Compilers" -> compilerCache.statistics,
+    "Analysis" -> analysisCache.statistics,
+    "Scalac" -> scalacCache.statistics)
+}
+
+object CachingFactory {
+  // A loaded analysis takes several times more memory than its serialized form
+  private val AnalysisExpansionFactor = 4L
+
+  private def estimateAnalysisSize(cacheFile: File): Long = cacheFile.length * AnalysisExpansionFactor
 }
@@ -13,5 +13,7 @@ import sbt.inc.AnalysisStore
 trait CompilerFactory {
   def createCompiler(compilerData: CompilerData, client: Client, fileToStore: File => AnalysisStore): Compiler
 
+  def createCompiler(compilerData: CompilerData, scalac: Option[AnalyzingCompiler], fileToStore: File => AnalysisStore): Compiler
+
   def getScalac(sbtData: SbtData, compilerJars: Option[CompilerJars], client: Client): Option[AnalyzingCompiler]
 }
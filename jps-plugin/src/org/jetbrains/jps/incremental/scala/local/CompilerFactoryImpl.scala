@@ -17,10 +17,10 @@ import xsbti.{F0, Logger}
  */
 class CompilerFactoryImpl(sbtData: SbtData) extends CompilerFactory {
   
-  def createCompiler(compilerData: CompilerData, client: Client, fileToStore: File => AnalysisStore): Compiler = {
-
-    val scalac: Option[AnalyzingCompiler] = getScalac(sbtData, compilerData.compilerJars, client)
+  def createCompiler(compilerData: CompilerData, client: Client, fileToStore: File => AnalysisStore): Compiler =
+    createCompiler(compilerData, getScalac(sbtData, compilerData.compilerJars, client), fileToStore)
 
+  def createCompiler(compilerData: CompilerData, scalac: Option[AnalyzingCompiler], fileToStore: File => AnalysisStore): Compiler = {
     compilerData.incrementalType match {
       case IncrementalityType.SBT =>
         val javac = {
@@ -54,6 +54,8 @@ class CompilerFactoryImpl(sbtData: SbtData) extends CompilerFactory {
 
 object CompilerFactoryImpl {
   private val scalaInstanceCache = new Cache[CompilerJars, ScalaInstance](3)
+
+  private val interfaceLock = new Object()
   
   private def createScalaInstance(jars: CompilerJars): ScalaInstance = {
     scalaInstanceCache.getOrUpdate(jars) {
@@ -81,10 +83,13 @@ object CompilerFactoryImpl {
     val interfaceId = "compiler-interface-" + scalaVersion + "-" + javaClassVersion
     val targetJar = new File(home, interfaceId + ".jar")
 
-    if (!targetJar.exists) {
-      client.progress("Compiling Scalac " + scalaVersion + " interface")
-      home.mkdirs()
-      IC.compileInterfaceJar(interfaceId, sourceJar, targetJar, interfaceJar, scalaInstance, NullLogger)
+    if (!targetJar.exists) interfaceLock.synchronized {
+      // Another request may have compiled the same interface while we were waiting
+      if (!targetJar.exists) {
+        client.progress("Compiling Scalac " + scalaVersion + " interface")
+        home.mkdirs()
+        IC.compileInterfaceJar(interfaceId, sourceJar, targetJar, interfaceJar, scalaInstance, NullLogger)
+      }
     }
 
     targetJar
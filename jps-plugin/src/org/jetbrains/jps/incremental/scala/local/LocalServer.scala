@@ -2,9 +2,14 @@ package org.jetbrains.jps.incremental.scala
 package local
 
 import java.io.File
+import java.util.concurrent.atomic.AtomicInteger
 
+import com.intellij.openapi.util.io.FileUtil
 import org.jetbrains.jps.incremental.ModuleLevelBuilder.ExitCode
 import org.jetbrains.jps.incremental.scala.data._
+import org.jetbrains.jps.incremental.scala.model.CompileOrder
+import org.jetbrains.jps.incremental.scala.remote.EventGeneratingClient
+import org.jetbrains.plugin.scala.compiler.NameHashing
 import sbt.inc.{AnalysisStore, FileBasedStore}
 
 /**
@@ -13,17 +18,24 @@ import sbt.inc.{AnalysisStore, FileBasedStore}
 class LocalServer extends Server {
   private var cachedCompilerFactory: Option[CompilerFactory] = None
   private val lock = new Object()
+  private val activeCompilations = new AtomicInteger()
 
   def compile(sbtData: SbtData, compilerData: CompilerData, compilationData: CompilationData, client: Client): ExitCode = {
-    val compiler = lock.synchronized {
-      val compilerFactory = compilerFactoryFrom(sbtData)
+    val compilerFactory = lock.synchronized {
+      compilerFactoryFrom(sbtData)
+    }
 
+    activeCompilations.incrementAndGet()
+    try {
+      // The factory caches are thread-safe, so independent chunks can instantiate their compilers concurrently
       client.progress("Instantiating compiler...")
-      compilerFactory.createCompiler(compilerData, client, LocalServer.createAnalysisStore)
-    }
+      val compiler = compilerFactory.createCompiler(compilerData, client, LocalServer.createAnalysisStore)
 
-    if (!client.isCanceled) {
-      compiler.compile(compilationData, client)
+      if (!client.isCanceled) {
+        compiler.compile(compilationData, client)
+      }
+    } finally {
+      activeCompilations.decrementAndGet()
     }
 
     client.compilationEnd()
@@ -31,13 +43,95 @@ class LocalServer extends Server {
   }
 
   private def compilerFactoryFrom(sbtData: SbtData): CompilerFactory = cachedCompilerFactory.getOrElse {
-    val factory = new CachingFactory(new CompilerFactoryImpl(sbtData), 5, 5, 5)
+    val factory = new CachingFactory(new CompilerFactoryImpl(sbtData), sbtData, 5, LocalServer.AnalysisCacheSize, 5)
     cachedCompilerFactory = Some(factory)
     factory
   }
+
+  /**
+   * Preloads the compiler instance, compiles its interface and runs a few synthetic compilations to heat up the JIT,
+   * so that the first real build doesn't pay for all of that. The synthetic compilations are skipped while
+   * a real build is running (it warms up the compiler anyway).
+   */
+  def warmUp(sbtData: SbtData, compilerJars: CompilerJars, client: Client) {
+    val compilerFactory = lock.synchronized {
+      compilerFactoryFrom(sbtData)
+    }
+
+    compilerFactory.getScalac(sbtData, Some(compilerJars), client).foreach { scalac =>
+      LocalServer.compileSample(new IdeaIncrementalCompiler(scalac), compilerJars, activeCompilations.get == 0)
+    }
+  }
+
+  def statistics: Seq[(String, CacheStatistics)] = lock.synchronized {
+    cachedCompilerFactory.collect {
+      case factory: CachingFactory => factory.statistics
+    }.getOrElse(Seq.empty)
+  }
 }
 
 object LocalServer {
+  /** Memory budget of the analysis cache in bytes, a quarter of the maximum heap size by default. */
+  val AnalysisCacheSize: Long = Option(System.getProperty("scala.compile.server.analysis.cache.size"))
+          .filter(s => s.nonEmpty && s.forall(_.isDigit)).map(_.toLong * 1024L * 1024L)
+          .getOrElse(Runtime.getRuntime.maxMemory / 4)
+
+  private val WarmUpIterations = 3
+
+  private val SampleSource =
+    """package warmup
+      |
+      |case class Item(name: String, weight: Int)
+      |
+      |trait Show[A] { def show(a: A): String }
+      |
+      |object Sample {
+      |  implicit val itemShow: Show[Item] = new Show[Item] { def show(item: Item) = item.name + ":" + item.weight }
+      |
+      |  def describe[A](as: Seq[A])(implicit s: Show[A]): String = as.map(s.show).mkString(", ")
+      |
+      |  def classify(x: Any): String = x match {
+      |    case Item(name, w) if w > 10 => "heavy " + name
+      |    case Item(name, _) => "light " + name
+      |    case n: Int => "number " + n
+      |    case _ => "unknown"
+      |  }
+      |
+      |  val items = for (i <- 1 to 20; if i % 2 == 0) yield Item("item" + i, i)
+      |
+      |  val total = items.foldLeft(0)(_ + _.weight)
+      |
+      |  val groups: Map[Boolean, Seq[Item]] = items.groupBy(_.weight > 10)
+      |
+      |  def text = describe(items) + classify(items.head) + groups.keys.mkString
+      |}
+      |""".stripMargin
+
+  private def compileSample(compiler: Compiler, compilerJars: CompilerJars, isIdle: => Boolean) {
+    val directory = FileUtil.createTempDirectory("scala-compile-server-warmup", "")
+
+    try {
+      val sourceDirectory = new File(directory, "src")
+      val outputDirectory = new File(directory, "out")
+      outputDirectory.mkdirs()
+
+      val source = new File(sourceDirectory, "Sample.scala")
+      FileUtil.writeToFile(source, SampleSource)
+
+      val compilationData = CompilationData(Seq(source), Seq(compilerJars.library), outputDirectory,
+        Seq.empty, Seq.empty, CompileOrder.Mixed, new File(directory, "cache.dat"), Map.empty,
+        Seq((sourceDirectory, outputDirectory)), NameHashing.DEFAULT)
+
+      val client = new EventGeneratingClient(_ => (), false)
+
+      for (_ <- 0 until WarmUpIterations if isIdle) {
+        compiler.compile(compilationData, client)
+      }
+    } finally {
+      FileUtil.delete(directory)
+    }
+  }
+
   private def createAnalysisStore(cacheFile: File): AnalysisStore = {
     val store = FileBasedStore(cacheFile)
     AnalysisStore.sync(AnalysisStore.cached(store))
@@ -1,14 +1,17 @@
 package org.jetbrains.jps.incremental.scala.local
 
 import java.io.{File, OutputStream, PrintStream}
-import java.lang.reflect.InvocationTargetException
+import java.lang.reflect.{InvocationTargetException, Method}
 import java.net.{URLClassLoader, URL}
-import java.nio.ByteBuffer
+import java.util.{Timer, TimerTask}
 
-import com.intellij.util.Base64Converter
 import com.martiansoftware.nailgun.ThreadLocalPrintStream
 import org.jetbrains.jps.incremental.scala.data.CompilerJars
-import org.jetbrains.jps.incremental.scala.remote.{EventGeneratingClient, Arguments, WorksheetOutputEvent}
+import org.jetbrains.jps.incremental.scala.local.WorksheetInProcessRunnerFactory._
+import org.jetbrains.jps.incremental.scala.remote.WorksheetMarkers._
+import org.jetbrains.jps.incremental.scala.remote.{Arguments, Event, EventGeneratingClient, WorksheetOutputEvent}
+
+import scala.collection.mutable
 
 /**
  * User: Dmitry.Naydanov
@@ -19,17 +22,22 @@ class WorksheetInProcessRunnerFactory {
     def loadAndRun(arguments: Arguments, client: EventGeneratingClient)
   }
 
-  def getRunner(out: PrintStream, standalone: Boolean): WorksheetInProcessRunner = new WorksheetInProcessRunnerImpl(out, standalone)
+  def getRunner(eventHandler: Event => Unit): WorksheetInProcessRunner = new WorksheetInProcessRunnerImpl(eventHandler)
 
   private var classLoader: Option[(Set[URL], Set[URL], URLClassLoader)] = None
 
+  /**
+   * The evaluated segments of the incrementally run worksheets, by their output directories
+   */
+  private val incrementalStates = mutable.HashMap[String, IncrementalState]()
+
   private def createClassLoader(compilerUrls: Set[URL], classpathUrls: Set[URL]) = {
     val loader = new URLClassLoader((compilerUrls ++ classpathUrls).toArray, null)
     classLoader = Some((compilerUrls, classpathUrls, loader))
     loader
   }
 
-  private def getClassLoader(compilerUrls: Seq[URL], classpathUrls: Seq[URL]) = {
+  private def getClassLoader(compilerUrls: Seq[URL], classpathUrls: Seq[URL]) = synchronized {
     val compilerSet = compilerUrls.toSet
     val classpathSet = classpathUrls.toSet
 
@@ -40,38 +48,218 @@ class WorksheetInProcessRunnerFactory {
     }
   }
 
-  private class WorksheetInProcessRunnerImpl(out: PrintStream, standalone: Boolean) extends WorksheetInProcessRunner {
+  private def takeIncrementalState(key: String): Option[IncrementalState] = incrementalStates.synchronized {
+    incrementalStates.remove(key)
+  }
+
+  /**
+   * Drops the segments of a worksheet (with their class loader and instances) when it's closed in the IDE
+   */
+  def releaseIncrementalState(outputDir: String) {
+    takeIncrementalState(new File(outputDir).getCanonicalPath)
+  }
+
+  private def putIncrementalState(key: String, state: IncrementalState) {
+    incrementalStates.synchronized(incrementalStates.put(key, state))
+  }
+
+  private class WorksheetInProcessRunnerImpl(eventHandler: Event => Unit) extends WorksheetInProcessRunner {
     private val TRACE_PREFIX = 21
     private val WORKSHEET = "#worksheet#"
 
-    private val myOut = new OutputStream {
-      private var capacity = 1200
-      private var buffer = ByteBuffer.allocate(capacity)
+    /**
+     * The output of the segment that is being run, if the worksheet is run incrementally
+     */
+    @volatile private var capturedOutput: Option[CapturedOutput] = None
+
+    /**
+     * Collects the output in a buffer of a fixed size and sends it in chunks of whole lines: when the buffer is full,
+     * and periodically while the worksheet is running. The thread that prints waits while a chunk is sent,
+     * so a worksheet can't produce its output faster than the IDE receives it.
+     */
+    private val myOut = new OutputBuffer
 
-      override def write(b: Int) {
+    private class OutputBuffer extends OutputStream {
+      private val buffer = new Array[Byte](OUTPUT_BUFFER_SIZE)
+      private var position = 0
+
+      override def write(b: Int): Unit = synchronized {
         if (b == '\r') return
 
-        if (buffer.position() < capacity) buffer.put(b.toByte) else {
-          val copy = buffer.array().clone()
-          capacity *= 2
-          buffer = ByteBuffer.allocate(capacity)
-          buffer put copy
-          buffer put b.toByte
+        if (position == buffer.length) flushLines()
+
+        buffer(position) = b.toByte
+        position += 1
+      }
+
+      // The bytes of a character are copied at once, so that a periodic flush doesn't split it
+      override def write(bytes: Array[Byte], offset: Int, length: Int): Unit = synchronized {
+        for (i <- offset until offset + length) {
+          write(bytes(i))
         }
+      }
 
-        if (b == '\n') flush()
+      override def close() {
+        flush()
+      }
+
+      override def flush(): Unit = synchronized {
+        send(position)
+      }
+
+      /**
+       * Sends the output that has been printed so far, except for the bytes of an incomplete character
+       */
+      def flushCharacters(): Unit = synchronized {
+        send(characterBoundary(position))
+      }
+
+      /**
+       * Sends the complete lines and keeps the last incomplete one, unless it takes the whole buffer
+       */
+      private def flushLines() {
+        var end = position
+        while (end > 0 && buffer(end - 1) != '\n') end -= 1
+
+        if (end == 0) {
+          // a line that is longer than the buffer is split between the characters
+          end = characterBoundary(position)
+          if (end == 0) end = position
+        }
+
+        send(end)
+      }
+
+      // The end of the last complete UTF-8 character before the position
+      private def characterBoundary(position: Int): Int = {
+        var end = position
+        while (end > 0 && (buffer(end - 1) & 0xC0) == 0x80) end -= 1
+        if (end > 0 && (buffer(end - 1) & 0x80) != 0) {
+          val start = end - 1
+          val length = if ((buffer(start) & 0xE0) == 0xC0) 2 else if ((buffer(start) & 0xF0) == 0xE0) 3 else 4
+          end = if (position - start >= length) start + length else start
+        }
+        end
+      }
+
+      private def send(end: Int) {
+        if (end == 0) return
+
+        val text = new String(buffer, 0, end, "UTF-8")
+        System.arraycopy(buffer, end, buffer, 0, position - end)
+        position -= end
+
+        capturedOutput.foreach(_.append(text))
+        eventHandler(WorksheetOutputEvent(text))
+      }
+    }
+
+    def loadAndRun(arguments: Arguments, client: EventGeneratingClient)
+  }
+
+  def getRunner(eventHandler: Event => Unit): WorksheetInProcessRunner = new WorksheetInProcessRunnerImpl(eventHandler)
+
+  private var classLoader: Option[(Set[URL], Set[URL], URLClassLoader)] = None
+
+  /**
+   * The evaluated segments of the incrementally run worksheets, by their output directories
+   */
+  private val incrementalStates = mutable.HashMap[String, IncrementalState]()
+
+  private def createClassLoader(compilerUrls: Set[URL], classpathUrls: Set[URL]) = {
+    val loader = new URLClassLoader((compilerUrls ++ classpathUrls).toArray, null)
+    classLoader = Some((compilerUrls, classpathUrls, loader))
+    loader
+  }
+
+  private def getClassLoader(compilerUrls: Seq[URL], classpathUrls: Seq[URL]) = synchronized {
+    val compilerSet = compilerUrls.toSet
+    val classpathSet = classpathUrls.toSet
+
+    classLoader match {
+      case Some((urls1, urls2, loader)) =>
+        if (compilerSet == urls1 && classpathSet == urls2) loader else createClassLoader(compilerSet, classpathSet)
+      case _ => createClassLoader(compilerSet, classpathSet)
+    }
+  }
+
+  private def takeIncrementalState(key: String): Option[IncrementalState] = incrementalStates.synchronized {
+    incrementalStates.remove(key)
+  }
+
+  /**
+   * Drops the segments of a worksheet (with their class loader and instances) when it's closed in the IDE
+   */
+  def releaseIncrementalState(outputDir: String) {
+    takeIncrementalState(new File(outputDir).getCanonicalPath)
+  }
+
+  private def putIncrementalState(key: String, state: IncrementalState) {
+    incrementalStates.synchronized(incrementalStates.put(key, state))
+  }
+
+  private class WorksheetInProcessRunnerImpl(eventHandler: Event => Unit) extends WorksheetInProcessRunner {
+    private val TRACE_PREFIX = 21
+    private val WORKSHEET = "#worksheet#"
+
+    /**
+     * The output of the segment that is being run, if the worksheet is run incrementally
+     */
+    @volatile private var capturedOutput: Option[CapturedOutput] = None
+
+    /**
+     * Collects the output in a buffer of a fixed size and sends it in chunks of whole lines: when the buffer is full,
+     * and periodically while the worksheet is running. The thread that prints waits while a chunk is sent,
+     * so a worksheet can't produce its output faster than the IDE receives it.
+     */
+    private val myOut = new OutputStream {
+      private val buffer = new Array[Byte](OUTPUT_BUFFER_SIZE)
+      private var position = 0
+
+      override def write(b: Int): Unit = synchronized {
+        if (b == '\r') return
+
+        if (position == buffer.length) flushLines()
+
+        buffer(position) = b.toByte
+        position += 1
       }
 
       override def close() {
         flush()
       }
 
-      override def flush() {
-        if (buffer.position() == 0) return
-        val event = WorksheetOutputEvent(new String(buffer.array(), 0, buffer.position()))
-        buffer.clear()
-        val encode = Base64Converter.encode(event.toBytes)
-        out.write(if (standalone && !encode.endsWith("=")) (encode + "=").getBytes else encode.getBytes)
+      override def flush(): Unit = synchronized {
+        send(position)
+      }
+
+      /**
+       * Sends the complete lines and keeps the last incomplete one, unless it takes the whole buffer
+       */
+      private def flushLines() {
+        var end = position
+        while (end > 0 && buffer(end - 1) != '\n') end -= 1
+
+        if (end == 0) {
+          // a line that is longer than the buffer is split between the characters
+          end = position
+          while (end > 0 && (buffer(end - 1) & 0xC0) == 0x80) end -= 1
+          if (end > 0 && (buffer(end - 1) & 0x80) != 0) end -= 1
+          if (end == 0) end = position
+        }
+
+        send(end)
+      }
+
+      private def send(end: Int) {
+        if (end == 0) return
+
+        val text = new String(buffer, 0, end, "UTF-8")
+        System.arraycopy(buffer, end, buffer, 0, position - end)
+        position -= end
+
+        capturedOutput.foreach(_.append(text))
+        eventHandler(WorksheetOutputEvent(text))
       }
     }
 
@@ -88,7 +276,22 @@ class WorksheetInProcessRunnerFactory {
           val compilerUrlSeq = compilerUrls.map(toUrlSpec)
           val classpathUrls = arguments.compilationData.classpath.map(_.toURI.toURL)
 
-          val classLoader = new URLClassLoader(worksheetUrls.toArray, getClassLoader(compilerUrlSeq, classpathUrls diff worksheetUrls.map(_.toURI.toURL) ))
+          val parentLoader = getClassLoader(compilerUrlSeq, classpathUrls diff worksheetUrls.map(_.toURI.toURL))
+          val stateKey = arguments.compilationData.output.getCanonicalPath
+
+          // A segment of an incrementally run worksheet is loaded by the class loader of the previous segments,
+          // so that it can use their live instances. Any other worksheet run starts with a new class loader.
+          val state = takeIncrementalState(stateKey).filter { state =>
+            state.classLoader.getParent == parentLoader && isIncrementalSegment(Class.forName(className, false, state.classLoader))
+          }
+          val classLoader = state.map(_.classLoader).getOrElse(new URLClassLoader(worksheetUrls.toArray, parentLoader))
+
+          val flusher = new TimerTask {
+            override def run() {
+              myOut.flushCharacters()
+            }
+          }
+          OUTPUT_FLUSH_TIMER.schedule(flusher, OUTPUT_FLUSH_INTERVAL_MS, OUTPUT_FLUSH_INTERVAL_MS)
 
           try {
             val cl = Class.forName(className, true, classLoader)
@@ -98,10 +301,13 @@ class WorksheetInProcessRunnerFactory {
             } map {
               case method =>
                 System.out match {
-                  case threadLocal: ThreadLocalPrintStream => threadLocal.init(new PrintStream(myOut))
-                  case _ => System.setOut(new PrintStream(myOut))
+                  case threadLocal: ThreadLocalPrintStream => threadLocal.init(new PrintStream(myOut, false, "UTF-8"))
+                  case _ => System.setOut(new PrintStream(myOut, false, "UTF-8"))
                 }
-                method.invoke(null, null)
+
+                if (isIncrementalSegment(cl)) runSegment(cl, method, className, state, stateKey)
+                else if (hasIncrementalState(cl)) runFirstSegment(cl, method, className, stateKey, classLoader)
+                else method.invoke(null, null)
             }
           } catch {
             case userEx: InvocationTargetException =>
@@ -110,15 +316,62 @@ class WorksheetInProcessRunnerFactory {
               val e = if (userEx.getCause != null) userEx.getCause else userEx
               cleanStackTrace(
                 e, arguments.compilationData.sources.headOption.orNull.getName, className + "$" + className
-              ).printStackTrace(new PrintStream(myOut, false))
+              ).printStackTrace(new PrintStream(myOut, false, "UTF-8"))
             case e: Exception =>
               client trace e
           } finally {
+            flusher.cancel()
             myOut.flush()
           }
       }
     }
 
+    private def runFirstSegment(cl: Class[_], main: Method, className: String, stateKey: String, classLoader: URLClassLoader) {
+      val state = new IncrementalState(classLoader)
+      putIncrementalState(stateKey, state)
+      runAndRemember(cl, state, className) {
+        main.invoke(null, null)
+      }
+    }
+
+    private def runSegment(cl: Class[_], main: Method, className: String, state: Option[IncrementalState], stateKey: String) {
+      val previousName = cl.getMethod(PREVIOUS_SEGMENT_METHOD).invoke(null).asInstanceOf[String]
+      val previousIndex = state.map(_.segments.indexWhere(_.className == previousName)).getOrElse(-1)
+
+      if (previousIndex == -1) {
+        myOut.flush()
+        eventHandler(WorksheetOutputEvent(STATE_LOST_MARKER + "\n"))
+        eventHandler(WorksheetOutputEvent(END_OUTPUT_MARKER + "\n"))
+        return
+      }
+
+      state.foreach { state =>
+        putIncrementalState(stateKey, state)
+        state.segments.remove(previousIndex + 1, state.segments.length - previousIndex - 1)
+        for (segment <- state.segments if segment.output.nonEmpty) eventHandler(WorksheetOutputEvent(segment.output))
+
+        runAndRemember(cl, state, className) {
+          main.invoke(null, null, state.segments(previousIndex).instance)
+        }
+      }
+    }
+
+    /**
+     * Remembers the instance and the output of the segment even if it has thrown an exception,
+     * as its statements are not rerun until they are changed
+     */
+    private def runAndRemember(cl: Class[_], state: IncrementalState, className: String)(run: => Unit) {
+      val output = new CapturedOutput
+      capturedOutput = Some(output)
+      try run
+      finally {
+        myOut.flush()
+        capturedOutput = None
+        val instance = cl.getMethod(INSTANCE_METHOD).invoke(null)
+        if (instance != null) state.segments += Segment(className, instance, output.text)
+      }
+    }
+
     private def cleanStackTrace(e: Throwable, fileName: String, className: String): Throwable = {
       def transformElement(original: StackTraceElement): StackTraceElement = {
         val originalClassName = original.getClassName
@@ -151,3 +404,47 @@ class WorksheetInProcessRunnerFactory {
     }
   }
 }
+
+object WorksheetInProcessRunnerFactory {
+  private val OUTPUT_BUFFER_SIZE = 64 * 1024
+
+  private val OUTPUT_FLUSH_INTERVAL_MS = 100L
+
+  private val OUTPUT_FLUSH_TIMER = new Timer("Worksheet output flusher", true)
+
+  private case class Segment(className: String, instance: AnyRef, output: String)
+
+  /**
+   * The output of a segment without the end marker, which can be split between the chunks
+   */
+  private class CapturedOutput {
+    private val lines = new java.lang.StringBuilder
+    private val lastLine = new java.lang.StringBuilder
+
+    def append(chunk: String) {
+      var start = 0
+      var end = chunk.indexOf('\n')
+
+      while (end != -1) {
+        lastLine.append(chunk, start, end + 1)
+        if (lastLine.length != END_OUTPUT_MARKER.length + 1 || lastLine.indexOf(END_OUTPUT_MARKER) != 0) lines append lastLine
+        lastLine.setLength(0)
+
+        start = end + 1
+        end = chunk.indexOf('\n', start)
+      }
+
+      lastLine.append(chunk, start, chunk.length)
+    }
+
+    def text: String = lines.toString + lastLine
+  }
+
+  private class IncrementalState(val classLoader: URLClassLoader) {
+    val segments = mutable.ArrayBuffer[Segment]()
+  }
+
+  private def hasIncrementalState(cl: Class[_]) = cl.getMethods.exists(_.getName == INSTANCE_METHOD)
+
+  private def isIncrementalSegment(cl: Class[_]) = cl.getMethods.exists(_.getName == PREVIOUS_SEGMENT_METHOD)
+}
@@ -10,5 +10,7 @@ public interface GlobalSettings extends JpsElement {
 
   int getCompileServerPort();
 
+  boolean isCompileServerConnectionShared();
+
   String getCompileServerSdk();
 }
@@ -24,6 +24,10 @@ public class GlobalSettingsImpl extends JpsElementBase<GlobalSettingsImpl> imple
     return myState.COMPILE_SERVER_PORT;
   }
 
+  public boolean isCompileServerConnectionShared() {
+    return myState.COMPILE_SERVER_SHARED_CONNECTION;
+  }
+
   public String getCompileServerSdk() {
     return myState.COMPILE_SERVER_SDK;
   }
@@ -44,6 +48,8 @@ public class GlobalSettingsImpl extends JpsElementBase<GlobalSettingsImpl> imple
 
     public int COMPILE_SERVER_PORT = 3200;
 
+    public boolean COMPILE_SERVER_SHARED_CONNECTION = false;
+
     public String COMPILE_SERVER_SDK;
   }
 }
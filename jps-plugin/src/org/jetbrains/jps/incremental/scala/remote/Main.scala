@@ -1,13 +1,19 @@
 package org.jetbrains.jps.incremental.scala
 package remote
 
-import java.io.{File, PrintStream}
+import java.io.{ByteArrayOutputStream, File, OutputStream, PrintStream}
+import java.lang.management.ManagementFactory
+import java.util.concurrent.atomic.AtomicReference
+import java.util.concurrent.{ConcurrentLinkedQueue, Semaphore}
 
 import com.intellij.util.Base64Converter
-import com.martiansoftware.nailgun.NGContext
+import com.martiansoftware.nailgun.{NGContext, ThreadLocalPrintStream}
 import org.jetbrains.jps.incremental.messages.BuildMessage.Kind
+import org.jetbrains.jps.incremental.scala.data.{CompilerJars, SbtData}
 import org.jetbrains.jps.incremental.scala.local.{LocalServer, WorksheetInProcessRunnerFactory}
 
+import scala.collection.JavaConverters._
+
 /**
  * @author Pavel Fatin
  * @author Dmitry Naydanov         
@@ -16,23 +22,59 @@ object Main {
   private val Server = new LocalServer()
   private val worksheetFactory = new WorksheetInProcessRunnerFactory
 
+  /** Maximum number of compilations that run simultaneously, defaults to the number of cores. */
+  val Parallelism: Int = Option(System.getProperty("scala.compile.server.parallelism"))
+          .filter(s => s.nonEmpty && s.forall(_.isDigit)).map(_.toInt).filter(_ > 0)
+          .getOrElse(Runtime.getRuntime.availableProcessors)
+
+  private val permits = new Semaphore(Parallelism, true)
+
+  private val StatusCommand = "compile-server-status"
+
+  private val WarmUpCommand = "compile-server-warmup"
+
+  private val ReleaseWorksheetCommand = "worksheet-release"
+
+  private val warmUps = new ConcurrentLinkedQueue[String]()
+
+  private val firstCompilation = new AtomicReference[String]()
+
   def nailMain(context: NGContext) {
-    make(context.getArgs.toSeq, context.out, false)
+    val environment = context.getEnv
+
+    if (MultiplexedConnection.isRequested(environment.getProperty(MultiplexedConnection.SessionProperty))) {
+      new MultiplexedSession(context.in, context.out).run()
+    } else {
+      val binary = EventCodec.isSupported(environment.getProperty(EventCodec.ProtocolProperty))
+      val out = context.out
+      val eventHandler = (event: Event) => out.write(encodeEvent(event, false, binary))
+      context.getCommand match {
+        case StatusCommand => reportStatus(eventHandler)
+        case WarmUpCommand => warmUp(context.getArgs.toSeq, eventHandler)
+        case ReleaseWorksheetCommand => context.getArgs.foreach(worksheetFactory.releaseIncrementalState)
+        case _ => make(context.getArgs.toSeq, eventHandler, out.checkError)
+      }
+    }
   }
   
   def main(args: Array[String]) {
-    make(args, System.out, true)
+    val out = System.out
+    make(args, event => out.write(encodeEvent(event, true, false)), out.checkError)
+  }
+
+  // Standalone mode communicates through plain text stdout, so it always uses the Base64 encoding
+  private def encodeEvent(event: Event, standalone: Boolean, binary: Boolean): Array[Byte] = {
+    if (binary && !standalone) EventCodec.encode(event) else {
+      val encode = Base64Converter.encode(event.toBytes)
+      (if (standalone && !encode.endsWith("=")) encode + "=" else encode).getBytes
+    }
   }
   
-  private def make(arguments: Seq[String], out: PrintStream, standalone: Boolean) {
+  private[remote] def make(arguments: Seq[String], eventHandler: Event => Unit, canceled: => Boolean) {
     var hasErrors = false
 
     val client = {
-      val eventHandler = (event: Event) => {
-        val encode = Base64Converter.encode(event.toBytes)
-        out.write((if (standalone && !encode.endsWith("=")) encode + "=" else encode).getBytes)
-      }
-      new EventGeneratingClient(eventHandler, out.checkError) {
+      new EventGeneratingClient(eventHandler, canceled) {
         override def error(text: String, source: Option[File], line: Option[Long], column: Option[Long]) {
           hasErrors = true
           super.error(text, source, line, column)
@@ -45,28 +87,130 @@ object Main {
       }
     }
 
-    val oldOut = System.out
-    // Suppress any stdout data, interpret such data as error
-    System.setOut(System.err)
-    
+    permits.acquire()
+
     try {
-      val args = {
-        val strings = arguments.map {
-          arg => 
-            val s = new String(Base64Converter.decode(arg.getBytes), "UTF-8")
-            if (s == "#STUB#") "" else s
-        }
-        Arguments.from(strings)
-      }
-      
-      Server.compile(args.sbtData, args.compilerData, args.compilationData, client)
+      withStdoutRedirectedTo(client) {
+        val args = Arguments.from(decode(arguments))
 
-      if (!hasErrors) worksheetFactory.getRunner(out, standalone).loadAndRun(args, client)
+        val start = System.currentTimeMillis
+        Server.compile(args.sbtData, args.compilerData, args.compilationData, client)
+        recordFirstCompilation(start)
+
+        if (!hasErrors) worksheetFactory.getRunner(eventHandler).loadAndRun(args, client)
+      }
     } catch {
       case e: Throwable => 
         client.trace(e)
     } finally {
-      System.setOut(oldOut)
+      permits.release()
+    }
+  }
+
+  private def decode(arguments: Seq[String]): Seq[String] = arguments.map { arg =>
+    val s = new String(Base64Converter.decode(arg.getBytes), "UTF-8")
+    if (s == "#STUB#") "" else s
+  }
+
+  // Arguments: SBT interface JAR, SBT sources JAR, interfaces home, Java class version,
+  // and then a newline-separated compiler classpath per Scala SDK
+  private def warmUp(arguments: Seq[String], eventHandler: Event => Unit) {
+    val client = new EventGeneratingClient(eventHandler, false)
+
+    try {
+      decode(arguments) match {
+        case Seq(interfaceJar, sourceJar, interfacesHome, javaClassVersion, classpaths @ _*) =>
+          val sbtData = SbtData(new File(interfaceJar), new File(sourceJar), new File(interfacesHome), javaClassVersion)
+
+          val compilerJars = classpaths.filter(_.nonEmpty).flatMap(it => CompilerJars.fromFiles(it.split("\n").map(new File(_))))
+
+          compilerJars.foreach { jars =>
+            val start = System.currentTimeMillis
+            withStdoutRedirectedTo(client) {
+              Server.warmUp(sbtData, jars, client)
+            }
+            val line = "Warm-up of %s: %d ms".format(jars.compiler.getName, System.currentTimeMillis - start)
+            warmUps.add(line)
+            client.info(line)
+          }
+        case _ =>
+          client.error("Invalid warm-up arguments")
+      }
+    } catch {
+      case e: Throwable =>
+        client.trace(e)
+    }
+  }
+
+  private def recordFirstCompilation(start: Long) {
+    if (firstCompilation.get == null) {
+      val end = System.currentTimeMillis
+      val sinceServerStart = end - ManagementFactory.getRuntimeMXBean.getStartTime
+      val line = "First compilation: %d ms, finished %d ms after the server start (%s)".format(
+        end - start, sinceServerStart, if (warmUps.isEmpty) "without warm-up" else "after warm-up")
+      firstCompilation.compareAndSet(null, line)
+    }
+  }
+
+  private def reportStatus(eventHandler: Event => Unit) {
+    val runtime = Runtime.getRuntime
+    val megabyte = 1024L * 1024L
+
+    val lines = Seq(
+      "Memory: %d MB used, %d MB max".format((runtime.totalMemory - runtime.freeMemory) / megabyte, runtime.maxMemory / megabyte),
+      "Compilations: %d running, %d max".format(Parallelism - permits.availablePermits, Parallelism)) ++
+            Server.statistics.map {
+              case (name, statistics) => "%s cache: %s".format(name, statistics)
+            } ++
+            warmUps.asScala ++
+            Option(firstCompilation.get)
+
+    lines.foreach(line => eventHandler(MessageEvent(Kind.INFO, line, None, None, None)))
+  }
+
+  // Suppress any stdout data, interpret such data as warnings.
+  // Under Nailgun the standard streams are thread-local, so each request gets its own redirection.
+  private def withStdoutRedirectedTo(client: Client)(body: => Unit) {
+    (System.out, System.err) match {
+      case (out: ThreadLocalPrintStream, err: ThreadLocalPrintStream) =>
+        val stream = new PrintStream(new LineOutputStream(client.warning(_)), false)
+        out.init(stream)
+        err.init(stream)
+        try {
+          body
+        } finally {
+          stream.flush()
+          out.init(null)
+          err.init(null)
+        }
+      case _ =>
+        val oldOut = System.out
+        System.setOut(System.err)
+        try {
+          body
+        } finally {
+          System.setOut(oldOut)
+        }
+    }
+  }
+
+  private class LineOutputStream(consumer: String => Unit) extends OutputStream {
+    private val buffer = new ByteArrayOutputStream()
+
+    def write(b: Int) {
+      synchronized {
+        if (b == '\n') flush() else buffer.write(b)
+      }
+    }
+
+    override def flush() {
+      synchronized {
+        if (buffer.size > 0) {
+          val line = buffer.toString
+          buffer.reset()
+          consumer(line)
+        }
+      }
     }
   }
 }
@@ -0,0 +1,61 @@
+package org.jetbrains.jps.incremental.scala
+package remote
+
+import java.io.{DataInputStream, EOFException, InputStream, PrintStream}
+import java.nio.ByteBuffer
+import java.util.Collections
+import java.util.concurrent.{ConcurrentHashMap, Executors, TimeUnit}
+
+import org.jetbrains.jps.incremental.scala.remote.MultiplexedConnection._
+
+/**
+ * Server side of a [[MultiplexedConnection]]: reads request frames from the session stdin
+ * and writes events, prefixed with the request id, to the session stdout.
+ */
+class MultiplexedSession(in: InputStream, out: PrintStream) {
+  private val canceled = Collections.newSetFromMap(new ConcurrentHashMap[Integer, java.lang.Boolean]())
+
+  private val executor = Executors.newFixedThreadPool(Main.Parallelism)
+
+  def run() {
+    val input = new DataInputStream(in)
+
+    try {
+      while (true) {
+        readFrame(input) match {
+          case (RequestFrame, id, arguments) =>
+            executor.submit(new Runnable {
+              def run() {
+                process(id, arguments)
+              }
+            })
+          case (CancelFrame, id, _) =>
+            canceled.add(id)
+          case (kind, _, _) =>
+            throw new IllegalArgumentException("Unknown frame kind: " + kind)
+        }
+      }
+    } catch {
+      case _: EOFException => // the client has closed the session
+    } finally {
+      executor.shutdown()
+      executor.awaitTermination(Long.MaxValue, TimeUnit.MILLISECONDS)
+    }
+  }
+
+  private def process(id: Int, arguments: Seq[String]) {
+    val prefix = ByteBuffer.allocate(4).putInt(id).array()
+
+    // A single write produces a single Nailgun chunk, so events of different requests never interleave
+    def write(bytes: Array[Byte]) {
+      out.write(prefix ++ bytes)
+    }
+
+    try {
+      Main.make(arguments, event => write(EventCodec.encode(event)), canceled.contains(id) || out.checkError)
+    } finally {
+      write(Array.empty)
+      canceled.remove(id)
+    }
+  }
+}
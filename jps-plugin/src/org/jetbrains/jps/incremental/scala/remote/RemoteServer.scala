@@ -1,6 +1,7 @@
 package org.jetbrains.jps.incremental.scala
 package remote
 
+import java.io.IOException
 import java.net.{ConnectException, InetAddress, UnknownHostException}
 
 import org.jetbrains.jps.incremental.ModuleLevelBuilder.ExitCode
@@ -9,12 +10,12 @@ import org.jetbrains.jps.incremental.scala.data.{CompilationData, CompilerData,
 /**
  * @author Pavel Fatin
  */
-class RemoteServer(val address: InetAddress, val port: Int) extends Server with RemoteResourceOwner {
+class RemoteServer(val address: InetAddress, val port: Int, sharedConnection: Boolean = false) extends Server with RemoteResourceOwner {
   def compile(sbtData: SbtData, compilerData: CompilerData, compilationData: CompilationData, client: Client): ExitCode = {
     val arguments = Arguments(sbtData, compilerData, compilationData, Seq.empty).asStrings
 
     try {
-      send(serverAlias, arguments, client)
+      if (sharedConnection) sendThroughSharedConnection(arguments, client) else send(serverAlias, arguments, client)
       ExitCode.OK
     } catch {
       case e: ConnectException =>
@@ -27,4 +28,17 @@ class RemoteServer(val address: InetAddress, val port: Int) extends Server with
         ExitCode.ABORT
     }
   }
-}
\ No newline at end of file
+
+  private def sendThroughSharedConnection(arguments: Seq[String], client: Client) {
+    try {
+      sendMultiplexed(serverAlias, arguments, client)
+    } catch {
+      // the compilation may still be running in the server, so it's not started again
+      case e: MultiplexedConnection.RequestLostException =>
+        client.error("Connection to the compile server is lost during the compilation")
+      case e: IOException if !e.isInstanceOf[ConnectException] =>
+        client.debug("Shared compile server connection failed (%s), using a dedicated one".format(e.getMessage))
+        send(serverAlias, arguments, client)
+    }
+  }
+}
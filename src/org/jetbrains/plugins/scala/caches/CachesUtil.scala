@@ -2,9 +2,9 @@ package org.jetbrains.plugins.scala
 package caches
 
 
-import com.intellij.openapi.util.{Computable, Key, RecursionGuard, RecursionManager}
+import com.intellij.openapi.util.{Computable, Key, RecursionGuard, RecursionManager, UserDataHolderEx}
 import com.intellij.psi._
-import com.intellij.psi.util.{CachedValue, CachedValueProvider, CachedValuesManager, PsiTreeUtil}
+import com.intellij.psi.util.{CachedValue, CachedValueProvider, CachedValuesManager, PsiModificationTracker, PsiTreeUtil}
 import com.intellij.util.containers.ConcurrentHashMap
 import org.jetbrains.plugins.scala.lang.psi.api.base.types.ScTypeElement
 import org.jetbrains.plugins.scala.lang.psi.api.expr.ScExpression.ExpressionTypeResult
@@ -50,6 +50,15 @@ object CachesUtil {
   val EXPRESSION_APPLY_SHAPE_RESOLVE_KEY: MappedKey[(ScType, Seq[ScExpression], Option[MethodInvocation]), Array[ScalaResolveResult]] =
     Key.create("expression.apply.shape.resolve.key")
 
+  /**
+   * Whether the results of the mapped caches that depend on the PSI modification count are kept in a table
+   * of the containing file (see FileMemoTable) instead of a cached map in the user data of every element.
+   * Set by the "scala.caches.file.tables" system property, the user data is used by default.
+   */
+  @volatile var useFileMemoTables: Boolean = java.lang.Boolean.getBoolean("scala.caches.file.tables")
+
+  private val FILE_MEMO_TABLE_KEY: Key[FileMemoTable] = Key.create("file.memo.table.key")
+
   //keys for cachedValue
   val REF_ELEMENT_SHAPE_RESOLVE_CONSTR_KEY: Key[CachedValue[Array[ResolveResult]]] =
     Key.create("ref.element.shape.resolve.constr.key")
@@ -92,6 +101,7 @@ object CachesUtil {
   val EFFECTIVE_PARAMETER_CLAUSE: Key[CachedValue[Seq[ScParameterClause]]] =
     Key.create("effective.parameter.clause.key")
   val PATTERN_EXPECTED_TYPE: Key[CachedValue[Option[ScType]]] = Key.create("pattern.expected.type.key")
+  val IMPLICIT_RESULT_CLASSES: Key[CachedValue[Option[Set[PsiClass]]]] = Key.create("implicit.result.classes.key")
   val PROJECTION_TYPE_ACTUAL_INNER: Key[CachedValue[ConcurrentHashMap[ScType, Option[(PsiNamedElement, ScSubstitutor)]]]] =
     Key.create("projection.type.actual.inner.key")
 
@@ -210,18 +220,13 @@ object CachesUtil {
                                                                         builder: (Dom, Data) => Result,
                                                                         defaultValue: => Result,
                                                                         dependencyItem: Object): Result = {
-    var computed: CachedValue[ConcurrentHashMap[Data, Result]] = e.getUserData(key)
-    if (computed == null) {
-      val manager = CachedValuesManager.getManager(e.getProject)
-      computed = manager.createCachedValue(new CachedValueProvider[ConcurrentHashMap[Data, Result]] {
-        def compute(): CachedValueProvider.Result[ConcurrentHashMap[Data, Result]] = {
-          new CachedValueProvider.Result(new ConcurrentHashMap[Data, Result](), dependencyItem)
-        }
-      }, false)
-      e.putUserData(key, computed)
-    }
-    val map = computed.getValue
-    var result = map.get(data)
+    val table = if (useFileMemoTables && (dependencyItem eq PsiModificationTracker.MODIFICATION_COUNT)) fileMemoTable(e)
+    else null
+    val modificationCount = if (table != null) e.getManager.getModificationTracker.getModificationCount else 0L
+    val map = if (table == null) mappedCache(e, key, dependencyItem) else null
+    var result =
+      if (table != null) table.get(e, key.hashCode(), data, modificationCount).asInstanceOf[Result]
+      else map.get(data)
     if (result == null) {
       var isCache = true
       result = {
@@ -265,12 +270,41 @@ object CachesUtil {
         }
       }
       if (isCache) {
-        map.put(data, result)
+        if (table != null) table.put(e, key.hashCode(), data, result, modificationCount)
+        else map.put(data, result)
       }
     }
     result
   }
   
+  private def mappedCache[Dom <: PsiElement, Data, Result](e: Dom, key: Key[CachedValue[ConcurrentHashMap[Data, Result]]],
+                                                           dependencyItem: Object): ConcurrentHashMap[Data, Result] = {
+    var computed: CachedValue[ConcurrentHashMap[Data, Result]] = e.getUserData(key)
+    if (computed == null) {
+      val manager = CachedValuesManager.getManager(e.getProject)
+      computed = manager.createCachedValue(new CachedValueProvider[ConcurrentHashMap[Data, Result]] {
+        def compute(): CachedValueProvider.Result[ConcurrentHashMap[Data, Result]] = {
+          new CachedValueProvider.Result(new ConcurrentHashMap[Data, Result](), dependencyItem)
+        }
+      }, false)
+      e.putUserData(key, computed)
+    }
+    computed.getValue
+  }
+
+  /**
+   * The table of the containing file, null if there is no file
+   */
+  private def fileMemoTable(e: PsiElement): FileMemoTable = {
+    e.getContainingFile match {
+      case file: UserDataHolderEx =>
+        val table = file.getUserData(FILE_MEMO_TABLE_KEY)
+        if (table != null) table
+        else file.putUserDataIfAbsent(FILE_MEMO_TABLE_KEY, new FileMemoTable)
+      case _ => null
+    }
+  }
+
   private case class ProbablyRecursionException[Dom <: PsiElement, Data, T](elem: Dom,
                                                                             data: Data,
                                                                             key: Key[T],
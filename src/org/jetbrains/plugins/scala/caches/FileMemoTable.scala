@@ -0,0 +1,101 @@
+package org.jetbrains.plugins.scala
+package caches
+
+/**
+ * The results of the mapped caches (see CachesUtil.MappedKey) of all the elements of a file, in a single
+ * open addressing table: an entry is an (element, key id, data) triple and a result, in parallel arrays.
+ *
+ * The elements are compared by identity, the data by equals. All the entries are dropped when the table is accessed
+ * with another modification count, a result that was computed before that is not stored.
+ */
+class FileMemoTable {
+  import FileMemoTable._
+
+  private var elements = new Array[AnyRef](InitialCapacity)
+  private var keyIds = new Array[Int](InitialCapacity)
+  private var data = new Array[Any](InitialCapacity)
+  private var results = new Array[Any](InitialCapacity)
+  private var count = 0
+
+  private var currentModificationCount = -1L
+
+  /**
+   * @return the result or null
+   */
+  def get(element: AnyRef, keyId: Int, key: Any, modificationCount: Long): Any = synchronized {
+    update(modificationCount)
+    val i = indexOf(element, keyId, key)
+    if (elements(i) == null) null else results(i)
+  }
+
+  def put(element: AnyRef, keyId: Int, key: Any, result: Any, modificationCount: Long) {
+    synchronized {
+      if (modificationCount == currentModificationCount) {
+        val i = indexOf(element, keyId, key)
+        if (elements(i) == null) {
+          elements(i) = element
+          keyIds(i) = keyId
+          data(i) = key
+          count += 1
+        }
+        results(i) = result
+        if (count * 2 > elements.length) rehash(elements.length * 2)
+      }
+    }
+  }
+
+  def size: Int = synchronized(count)
+
+  def capacity: Int = synchronized(elements.length)
+
+  private def update(modificationCount: Long) {
+    if (modificationCount != currentModificationCount) {
+      currentModificationCount = modificationCount
+      if (count > 0) {
+        count = 0
+        allocate(InitialCapacity)
+      }
+    }
+  }
+
+  private def indexOf(element: AnyRef, keyId: Int, key: Any): Int = {
+    val mask = elements.length - 1
+    var i = hash(element, keyId, key) & mask
+    while (elements(i) != null && !((elements(i) eq element) && keyIds(i) == keyId && data(i) == key)) {
+      i = (i + 1) & mask
+    }
+    i
+  }
+
+  private def rehash(newCapacity: Int) {
+    val (oldElements, oldKeyIds, oldData, oldResults) = (elements, keyIds, data, results)
+    allocate(newCapacity)
+    var j = 0
+    while (j < oldElements.length) {
+      if (oldElements(j) != null) {
+        val i = indexOf(oldElements(j), oldKeyIds(j), oldData(j))
+        elements(i) = oldElements(j)
+        keyIds(i) = oldKeyIds(j)
+        data(i) = oldData(j)
+        results(i) = oldResults(j)
+      }
+      j += 1
+    }
+  }
+
+  private def allocate(capacity: Int) {
+    elements = new Array[AnyRef](capacity)
+    keyIds = new Array[Int](capacity)
+    data = new Array[Any](capacity)
+    results = new Array[Any](capacity)
+  }
+
+  private def hash(element: AnyRef, keyId: Int, key: Any): Int = {
+    val h = (System.identityHashCode(element) * 31 + keyId) * 31 + key.##
+    h ^ (h >>> 16)
+  }
+}
+
+object FileMemoTable {
+  private val InitialCapacity = 64
+}
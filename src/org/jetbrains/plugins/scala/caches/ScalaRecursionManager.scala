@@ -3,9 +3,6 @@ package org.jetbrains.plugins.scala.caches
 import com.intellij.openapi.util.RecursionManager
 import com.intellij.psi.PsiElement
 
-import scala.collection.mutable
-import scala.collection.mutable.{ArrayBuffer, Map}
-
 /**
  * @author Alexander Podkhalyuzin
  */
@@ -16,35 +13,78 @@ object ScalaRecursionManager {
   val IMPLICIT_PARAM_TYPES_KEY = "implicit.param.types.key"
   val CYCLIC_HELPER_KEY = "cyclic.helper.key"
 
-  val recursionMap: ThreadLocal[Map[(PsiElement, String), ArrayBuffer[Object]]] =
-    new ThreadLocal[Map[(PsiElement, String), ArrayBuffer[Object]]] {
-      override def initialValue(): Map[(PsiElement, String), ArrayBuffer[Object]] =
-        new mutable.HashMap[(PsiElement, String), ArrayBuffer[Object]]
+  private val guardStacks: ThreadLocal[GuardStack] = new ThreadLocal[GuardStack] {
+    override def initialValue(): GuardStack = new GuardStack
+  }
+
+  /**
+   * The stack of the running guarded computations of a thread: a frame is an (element, key, added object) triple.
+   *
+   * The frames are stored in preallocated parallel arrays, the elements and the keys are compared by reference
+   * first (the keys are the constants above), so entering and leaving a computation doesn't allocate anything
+   * unless the stack has to grow.
+   */
+  private final class GuardStack {
+    private var elements = new Array[PsiElement](16)
+    private var keys = new Array[String](16)
+    private var objects = new Array[Object](16)
+    private var size = 0
+
+    def depth: Int = size
+
+    /**
+     * The objects added for the element and the key, from the bottom of the stack
+     */
+    def searches(element: PsiElement, key: String): Seq[Object] = {
+      var count = 0
+      var i = 0
+      while (i < size) {
+        if (matches(i, element, key)) count += 1
+        i += 1
+      }
+      if (count == 0) return Nil
+
+      val result = new Array[Object](count)
+      count = 0
+      i = 0
+      while (i < size) {
+        if (matches(i, element, key)) {
+          result(count) = objects(i)
+          count += 1
+        }
+        i += 1
+      }
+      result
     }
 
-  private def getSearches[Dom <: PsiElement](element: Dom, key: String): ArrayBuffer[Object] = {
-    recursionMap.get().get((element, key)) match {
-      case Some(buffer: ArrayBuffer[Object]) => buffer
-      case _ => ArrayBuffer.empty[Object]
+    def push(element: PsiElement, key: String, obj: Object) {
+      if (size == elements.length) grow()
+      elements(size) = element
+      keys(size) = key
+      objects(size) = obj
+      size += 1
     }
-  }
 
-  private def addLast[Dom <: PsiElement](element: Dom, key: String, obj: Object) {
-    recursionMap.get().get((element, key)) match {
-      case Some(buffer) => buffer += obj
-      case _ =>
-        val buffer = ArrayBuffer.empty[Object]
-        buffer += obj
-        recursionMap.get().put((element, key), buffer)
+    def popTo(depth: Int) {
+      while (size > depth) {
+        size -= 1
+        elements(size) = null
+        keys(size) = null
+        objects(size) = null
+      }
+    }
+
+    private def matches(i: Int, element: PsiElement, key: String): Boolean = {
+      val e = elements(i)
+      val k = keys(i)
+      ((e eq element) || e == element) && ((k eq key) || k == key)
     }
-  }
 
-  private def removeLast[Dom <: PsiElement](element: Dom, key: String) {
-    recursionMap.get().get((element, key)) match {
-      case Some(buffer) =>
-        buffer.remove(buffer.length - 1)
-        if (buffer.isEmpty) recursionMap.get().remove((element, key))
-      case _ => throw new RuntimeException("Match is not exhaustive")
+    private def grow() {
+      val length = elements.length * 2
+      elements = java.util.Arrays.copyOf(elements, length)
+      keys = java.util.Arrays.copyOf(keys, length)
+      objects = java.util.Arrays.copyOf(objects, length)
     }
   }
 
@@ -59,16 +99,17 @@ object ScalaRecursionManager {
   def doComputations[Dom <: PsiElement, Result](element: Dom, checkAdd: (Object, Seq[Object]) => Boolean,
                                                 addElement: Object,
                                                 compute: => Result, key: String): Option[Result] = {
-    val searches: ArrayBuffer[Object] = getSearches(element, key)
-    if (checkAdd(addElement, searches)) {
+    val stack = guardStacks.get()
+    if (checkAdd(addElement, stack.searches(element, key))) {
+      val depth = stack.depth
       try {
-        addLast(element, key, addElement)
+        stack.push(element, key, addElement)
 
         //computations
         Some(compute)
       }
       finally {
-        removeLast(element, key)
+        stack.popTo(depth)
       }
     }
     else None
@@ -78,22 +119,21 @@ object ScalaRecursionManager {
                                                               checkAdd: (Object, Seq[Object]) => Boolean,
                                                               addElement1: Object, addElement2: Object,
                                                               compute: => Result, key: String): Option[Result] = {
-    val searches1: ArrayBuffer[Object] = getSearches(element1, key)
-    val searches2: ArrayBuffer[Object] = getSearches(element2, key)
-    if (checkAdd(addElement1, searches1) && checkAdd(addElement2, searches2)) {
+    val stack = guardStacks.get()
+    if (checkAdd(addElement1, stack.searches(element1, key)) && checkAdd(addElement2, stack.searches(element2, key))) {
+      val depth = stack.depth
       try {
-        addLast(element1, key, addElement1)
-        addLast(element2, key, addElement2)
+        stack.push(element1, key, addElement1)
+        stack.push(element2, key, addElement2)
 
         //computations
         Some(compute)
       }
       finally {
-        removeLast(element2, key)
-        removeLast(element1, key)
+        stack.popTo(depth)
       }
     }
     else None
   }
 
-}
\ No newline at end of file
+}
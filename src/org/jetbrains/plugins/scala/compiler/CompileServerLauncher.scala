@@ -2,18 +2,23 @@ package org.jetbrains.plugins.scala
 package compiler
 
 import java.io.{File, IOException}
+import java.net.URLClassLoader
 import javax.swing.event.HyperlinkEvent
 
+import com.intellij.compiler.server.BuildManager
 import com.intellij.notification.{Notification, NotificationListener, NotificationType, Notifications}
 import com.intellij.openapi.application.ApplicationManager
 import com.intellij.openapi.components.ApplicationComponent
+import com.intellij.openapi.diagnostic.Logger
 import com.intellij.openapi.options.ShowSettingsUtil
 import com.intellij.openapi.project.Project
 import com.intellij.openapi.projectRoots.{JavaSdk, ProjectJdkTable}
 import com.intellij.openapi.roots.ProjectRootManager
 import com.intellij.util.PathUtil
 import com.intellij.util.net.NetUtils
+import org.jetbrains.jps.incremental.scala.data.SbtData
 import org.jetbrains.plugins.scala.extensions._
+import org.jetbrains.plugins.scala.project._
 
 import scala.collection.JavaConverters._
 import scala.util.control.Exception._
@@ -30,7 +35,11 @@ class CompileServerLauncher extends ApplicationComponent {
      if (running) stop()
    }
 
-  def tryToStart(project: Project): Boolean = {
+  /**
+   * @param warmUp whether to warm up the project compilers, which should be done only when no build is going
+   *               to start right away (as it would compete with the warm-up)
+   */
+  def tryToStart(project: Project, warmUp: Boolean = false): Boolean = {
     if (!running) {
       val started = start(project)
       if (started) {
@@ -38,6 +47,7 @@ class CompileServerLauncher extends ApplicationComponent {
         catch {
           case e: Exception =>
         }
+        if (warmUp && ScalaCompileServerSettings.getInstance.COMPILE_SERVER_WARMUP) this.warmUp(project)
       }
       started
     }
@@ -118,6 +128,24 @@ class CompileServerLauncher extends ApplicationComponent {
     }
   }
 
+  // The warm-up time is reported in the compile server statistics, along with the time of the first compilation
+  private def warmUp(project: Project) {
+    ApplicationManager.getApplication.executeOnPooledThread(new Runnable {
+      def run() {
+        val compilerClasspaths = inReadAction {
+          if (project.isDisposed) Seq.empty
+          else project.modulesWithScala.flatMap(_.scalaSdk).map(_.compilerClasspath).distinct
+        }
+
+        for (port <- CompileServerLauncher.this.port if compilerClasspaths.nonEmpty;
+             sbtData <- CompileServerLauncher.sbtData.right;
+             lines <- new RemoteServerWarmUp(port).warmUp(sbtData, compilerClasspaths).right) {
+          lines.foreach(CompileServerLauncher.Log.info(_))
+        }
+      }
+    })
+  }
+
   // TODO stop server more gracefully
   def stop() {
     instance.foreach { it =>
@@ -145,6 +173,8 @@ class CompileServerLauncher extends ApplicationComponent {
 }
 
 object CompileServerLauncher {
+  private val Log = Logger.getInstance(classOf[CompileServerLauncher])
+
   def instance = ApplicationManager.getApplication.getComponent(classOf[CompileServerLauncher])
   
   def compilerJars = {
@@ -166,6 +196,15 @@ object CompileServerLauncher {
       new File(jpsRoot, "scala-jps-plugin.jar"))
   }
 
+  // Must be the same as the SBT data of the JPS builds, so that the warmed up compilers are reused
+  def sbtData: Either[String, SbtData] = {
+    val pluginRoot = new File(PathUtil.getJarPathForClass(getClass)).getParent
+    val jpsRoot = new File(pluginRoot, "jps")
+    val classLoader = new URLClassLoader(Array(new File(jpsRoot, "sbt-interface.jar").toURI.toURL), getClass.getClassLoader)
+
+    SbtData.from(classLoader, jpsRoot, BuildManager.getInstance.getBuildSystemDirectory, System.getProperty("java.class.version"))
+  }
+
   def jvmParameters: Seq[String] = {
     val settings = ScalaCompileServerSettings.getInstance
     val xmx = settings.COMPILE_SERVER_MAXIMUM_HEAP_SIZE |> { size =>
@@ -178,7 +217,15 @@ object CompileServerLauncher {
     val needMaxPermSize = settings.COMPILE_SERVER_SDK < "1.8"
     val maxPermSize = if (needMaxPermSize) userMaxPermSize.headOption.orElse(defaultMaxPermSize) else None
 
-    xmx ++ otherParams ++ maxPermSize
+    val parallelism = settings.COMPILE_SERVER_PARALLELISM |> { count =>
+      if (count > 0) List("-Dscala.compile.server.parallelism=" + count) else Nil
+    }
+
+    val analysisCacheSize = settings.COMPILE_SERVER_ANALYSIS_CACHE_SIZE |> { size =>
+      if (size > 0) List("-Dscala.compile.server.analysis.cache.size=" + size) else Nil
+    }
+
+    xmx ++ otherParams ++ maxPermSize ++ parallelism ++ analysisCacheSize
   }
 
   def ensureServerRunning(project: Project) {
@@ -10,6 +10,7 @@ import com.intellij.icons.AllIcons
 import com.intellij.ide.DataManager
 import com.intellij.notification.{Notification, NotificationType, Notifications}
 import com.intellij.openapi.actionSystem.{AnAction, AnActionEvent, DefaultActionGroup, Separator}
+import com.intellij.openapi.application.ApplicationManager
 import com.intellij.openapi.components.ProjectComponent
 import com.intellij.openapi.options.ShowSettingsUtil
 import com.intellij.openapi.project.{DumbAware, Project}
@@ -121,7 +122,7 @@ class CompileServerManager(project: Project) extends ProjectComponent {
 
    private def toggleList(e: MouseEvent) {
      val mnemonics = JBPopupFactory.ActionSelectionAid.MNEMONICS
-     val group = new DefaultActionGroup(Start, Stop, Separator.getInstance, Configure)
+     val group = new DefaultActionGroup(Start, Stop, Separator.getInstance, Statistics, Configure)
      val context = DataManager.getInstance.getDataContext(e.getComponent)
      val popup = JBPopupFactory.getInstance.createActionGroupPopup(title, group, context, mnemonics, true)
      val dimension = popup.getContent.getPreferredSize
@@ -135,7 +136,7 @@ class CompileServerManager(project: Project) extends ProjectComponent {
      }
 
      def actionPerformed(e: AnActionEvent) {
-       launcher.tryToStart(project)
+       launcher.tryToStart(project, warmUp = true)
      }
    }
 
@@ -149,6 +150,26 @@ class CompileServerManager(project: Project) extends ProjectComponent {
      }
    }
 
+  private object Statistics extends AnAction("S&tatistics", "Show compile server memory and cache statistics", AllIcons.General.Information) with DumbAware {
+    override def update(e: AnActionEvent) {
+      e.getPresentation.setEnabled(launcher.running)
+    }
+
+    def actionPerformed(e: AnActionEvent) {
+      launcher.port.foreach { port =>
+        ApplicationManager.getApplication.executeOnPooledThread(new Runnable {
+          def run() {
+            val notification = new RemoteServerStatus(port).fetch() match {
+              case Right(lines) => new Notification("scala", title, lines.mkString("<br>"), NotificationType.INFORMATION)
+              case Left(error) => new Notification("scala", title, "Cannot read statistics: " + error, NotificationType.WARNING)
+            }
+            Notifications.Bus.notify(notification, project)
+          }
+        })
+      }
+    }
+  }
+
   private object Configure extends AnAction("&Configure...", "Configure compile server", AllIcons.General.Settings) with DumbAware {
     def actionPerformed(e: AnActionEvent) {
       showCompileServerSettingsDialog()
@@ -1,10 +1,13 @@
 package org.jetbrains.plugins.scala
 package compiler
 
+import java.io.{File, IOException}
 import java.net.{ConnectException, InetAddress, UnknownHostException}
 
 import com.intellij.openapi.project.Project
+import org.jetbrains.jps.incremental.messages.BuildMessage.Kind
 import org.jetbrains.jps.incremental.scala.Client
+import org.jetbrains.jps.incremental.scala.data.SbtData
 import org.jetbrains.jps.incremental.scala.remote.RemoteResourceOwner
 
 /**
@@ -67,3 +70,80 @@ class RemoteServerStopper(val port: Int) extends RemoteResourceOwner {
       case e: Exception =>
     }
 }
+
+class RemoteServerStatus(val port: Int) extends RemoteResourceOwner {
+  override protected val address: InetAddress = InetAddress.getByName(null)
+
+  /**
+   * @return the compile server memory usage and cache statistics, one item per line
+   */
+  def fetch(): Either[String, Seq[String]] = {
+    val client = new LinesClient()
+
+    try {
+      send("compile-server-status", Seq.empty, client)
+      Right(client.lines)
+    } catch {
+      case e: IOException => Left(e.getMessage)
+    }
+  }
+}
+
+class RemoteServerWarmUp(val port: Int) extends RemoteResourceOwner {
+  override protected val address: InetAddress = InetAddress.getByName(null)
+
+  /**
+   * Loads and JIT-compiles the Scala compilers of the project in the compile server,
+   * so that the first build doesn't pay for that.
+   *
+   * @return the warm-up time per compiler, one item per line
+   */
+  def warmUp(sbtData: SbtData, compilerClasspaths: Seq[Seq[File]]): Either[String, Seq[String]] = {
+    val client = new LinesClient()
+
+    val arguments = Seq(
+      sbtData.interfaceJar.getCanonicalPath,
+      sbtData.sourceJar.getCanonicalPath,
+      sbtData.interfacesHome.getCanonicalPath,
+      sbtData.javaClassVersion) ++
+            compilerClasspaths.map(_.map(_.getCanonicalPath).mkString("\n"))
+
+    try {
+      send("compile-server-warmup", arguments, client)
+      Right(client.lines)
+    } catch {
+      case e: IOException => Left(e.getMessage)
+    }
+  }
+}
+
+class RemoteWorksheetRelease(val port: Int) extends RemoteResourceOwner {
+  override protected val address: InetAddress = InetAddress.getByName(null)
+
+  /**
+   * Drops the segments of the incrementally run worksheets that are compiled to the directories
+   */
+  def release(outputDirs: Seq[File]) {
+    try send("worksheet-release", outputDirs.map(_.getCanonicalPath), new LinesClient())
+    catch {
+      case e: IOException =>
+    }
+  }
+}
+
+private class LinesClient extends Client {
+  var lines = Vector.empty[String]
+
+  def message(kind: Kind, text: String, source: Option[File], line: Option[Long], column: Option[Long]) {
+    lines :+= text
+  }
+  def trace(exception: Throwable) {
+    lines :+= exception.getMessage
+  }
+  def progress(text: String, done: Option[Float]) {}
+  def debug(text: String) {}
+  def generated(source: File, module: File, name: String) {}
+  def processed(source: File) {}
+  def deleted(module: File) {}
+  def isCanceled = false
+}
@@ -29,6 +29,7 @@ public class ScalaCompileServerForm implements Configurable {
     private RawCommandLineEditor myCompilationServerJvmParameters;
     private JTextField myCompilationServerMaximumHeapSize;
     private JCheckBox myEnableCompileServer;
+    private JCheckBox myWarmUpCompileServer;
     private JPanel myContentPanel;
     private JdkComboBox myCompilationServerSdk;
     private MultiLineLabel myNote;
@@ -94,7 +95,8 @@ public class ScalaCompileServerForm implements Configurable {
         return !(myEnableCompileServer.isSelected() == mySettings.COMPILE_SERVER_ENABLED &&
             ComparatorUtil.equalsNullable(sdkName, mySettings.COMPILE_SERVER_SDK) &&
             myCompilationServerMaximumHeapSize.getText().equals(mySettings.COMPILE_SERVER_MAXIMUM_HEAP_SIZE) &&
-            myCompilationServerJvmParameters.getText().equals(mySettings.COMPILE_SERVER_JVM_PARAMETERS));
+            myCompilationServerJvmParameters.getText().equals(mySettings.COMPILE_SERVER_JVM_PARAMETERS) &&
+            myWarmUpCompileServer.isSelected() == mySettings.COMPILE_SERVER_WARMUP);
     }
 
     public void apply() throws ConfigurationException {
@@ -105,6 +107,7 @@ public class ScalaCompileServerForm implements Configurable {
 
         mySettings.COMPILE_SERVER_MAXIMUM_HEAP_SIZE = myCompilationServerMaximumHeapSize.getText();
         mySettings.COMPILE_SERVER_JVM_PARAMETERS = myCompilationServerJvmParameters.getText();
+        mySettings.COMPILE_SERVER_WARMUP = myWarmUpCompileServer.isSelected();
 
         // TODO
 //    boolean externalCompiler = CompilerWorkspaceConfiguration.getInstance(myProject).USE_COMPILE_SERVER;
@@ -125,6 +128,7 @@ public class ScalaCompileServerForm implements Configurable {
 
         myCompilationServerMaximumHeapSize.setText(mySettings.COMPILE_SERVER_MAXIMUM_HEAP_SIZE);
         myCompilationServerJvmParameters.setText(mySettings.COMPILE_SERVER_JVM_PARAMETERS);
+        myWarmUpCompileServer.setSelected(mySettings.COMPILE_SERVER_WARMUP);
     }
 
     public void disposeUIResources() {
@@ -150,7 +154,7 @@ public class ScalaCompileServerForm implements Configurable {
         final Spacer spacer1 = new Spacer();
         myContentPanel.add(spacer1, new GridConstraints(2, 1, 1, 1, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_VERTICAL, 1, GridConstraints.SIZEPOLICY_WANT_GROW, null, null, null, 0, false));
         myCompilationServerPanel = new JPanel();
-        myCompilationServerPanel.setLayout(new GridLayoutManager(4, 2, new Insets(0, 0, 0, 0), -1, -1));
+        myCompilationServerPanel.setLayout(new GridLayoutManager(5, 2, new Insets(0, 0, 0, 0), -1, -1));
         myContentPanel.add(myCompilationServerPanel, new GridConstraints(1, 0, 1, 2, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_BOTH, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, null, null, null, 1, false));
         final JLabel label1 = new JLabel();
         label1.setEnabled(true);
@@ -179,11 +183,16 @@ public class ScalaCompileServerForm implements Configurable {
         myCompilationServerPanel.add(label3, new GridConstraints(0, 0, 1, 1, GridConstraints.ANCHOR_WEST, GridConstraints.FILL_NONE, GridConstraints.SIZEPOLICY_FIXED, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
         myNote = new MultiLineLabel();
         myNote.setText(" \nCompile server is application-wide (there is a single instance for all projects).\nJVM SDK is used to instantiate compile server and to invoke in-process Java compiler\n(when JVM SDK and module SDK match).");
-        myCompilationServerPanel.add(myNote, new GridConstraints(3, 0, 1, 2, GridConstraints.ANCHOR_WEST, GridConstraints.FILL_NONE, GridConstraints.SIZEPOLICY_FIXED, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
+        myCompilationServerPanel.add(myNote, new GridConstraints(4, 0, 1, 2, GridConstraints.ANCHOR_WEST, GridConstraints.FILL_NONE, GridConstraints.SIZEPOLICY_FIXED, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
         mySdkPanel = new JPanel();
         mySdkPanel.setLayout(new BorderLayout(0, 0));
         mySdkPanel.setEnabled(false);
         myCompilationServerPanel.add(mySdkPanel, new GridConstraints(0, 1, 1, 1, GridConstraints.ANCHOR_WEST, GridConstraints.FILL_VERTICAL, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_WANT_GROW, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, null, null, null, 0, false));
+        myWarmUpCompileServer = new JCheckBox();
+        myWarmUpCompileServer.setText("Start on project open and warm up the compilers");
+        myWarmUpCompileServer.setMnemonic('W');
+        myWarmUpCompileServer.setDisplayedMnemonicIndex(26);
+        myCompilationServerPanel.add(myWarmUpCompileServer, new GridConstraints(3, 0, 1, 2, GridConstraints.ANCHOR_WEST, GridConstraints.FILL_NONE, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
         myEnableCompileServer = new JCheckBox();
         myEnableCompileServer.setText("Use external compile server for scala");
         myEnableCompileServer.setMnemonic('S');
@@ -18,10 +18,17 @@ public class ScalaCompileServerSettings implements PersistentStateComponent<Scal
   //is not accessible from UI, but is serialized and used in jps-plugin
   public int COMPILE_SERVER_PORT = 3200;
   public String COMPILE_SERVER_ID = UUID.randomUUID().toString();
+  public boolean COMPILE_SERVER_SHARED_CONNECTION = false;
+  //maximum number of simultaneous compilations, 0 means the number of available processors
+  public int COMPILE_SERVER_PARALLELISM = 0;
+  //memory budget of the analysis cache in megabytes, 0 means a quarter of the maximum heap size
+  public int COMPILE_SERVER_ANALYSIS_CACHE_SIZE = 0;
 
   public String COMPILE_SERVER_SDK;
   public String COMPILE_SERVER_MAXIMUM_HEAP_SIZE = "1024";
   public String COMPILE_SERVER_JVM_PARAMETERS = "-server -Xss1m";
+  //start the server on project open and load and JIT-compile the project Scala compilers
+  public boolean COMPILE_SERVER_WARMUP = false;
 
   public ScalaCompileServerSettings getState() {
     return this;
@@ -9,6 +9,7 @@ import com.intellij.openapi.compiler.{CompileContext, CompileTask, CompilerManag
 import com.intellij.openapi.components.ProjectComponent
 import com.intellij.openapi.module.{Module, ModuleManager}
 import com.intellij.openapi.project.Project
+import com.intellij.openapi.startup.StartupManager
 import com.intellij.openapi.roots.{CompilerModuleExtension, ModuleRootManager}
 import com.intellij.openapi.ui.Messages
 import org.jetbrains.plugins.scala.extensions._
@@ -112,7 +113,18 @@ class ServerMediator(project: Project) extends ProjectComponent {
 
   def disposeComponent() {}
 
-  def projectOpened() {}
+  // When opted in, the server is started (and warmed up) in advance, so that the first build doesn't wait for it
+  def projectOpened() {
+    if (settings.COMPILE_SERVER_ENABLED && settings.COMPILE_SERVER_WARMUP && !ApplicationManager.getApplication.isUnitTestMode) {
+      StartupManager.getInstance(project).runWhenProjectIsInitialized(new Runnable {
+        def run() {
+          if (isScalaProject && !CompileServerLauncher.instance.running) {
+            CompileServerLauncher.instance.tryToStart(project, warmUp = true)
+          }
+        }
+      })
+    }
+  }
 
   def projectClosed() {}
 }
@@ -4,6 +4,7 @@ package debugger
 import java.util
 
 import com.intellij.debugger.engine.{CompoundPositionManager, DebugProcess, DebugProcessImpl}
+import com.intellij.debugger.jdi.VirtualMachineProxyImpl
 import com.intellij.debugger.requests.ClassPrepareRequestor
 import com.intellij.debugger.{NoDataException, PositionManager, SourcePosition}
 import com.intellij.openapi.application.ApplicationManager
@@ -16,8 +17,9 @@ import com.intellij.openapi.vfs.VirtualFile
 import com.intellij.psi._
 import com.intellij.psi.search.{FilenameIndex, GlobalSearchScope}
 import com.intellij.psi.util.PsiTreeUtil
+import com.intellij.util.containers.ContainerUtil
 import com.intellij.util.{Processor, Query}
-import com.sun.jdi.request.ClassPrepareRequest
+import com.sun.jdi.request.{ClassPrepareRequest, EventRequest}
 import com.sun.jdi.{AbsentInformationException, ClassNotPreparedException, Location, ReferenceType}
 import org.jetbrains.annotations.{NotNull, Nullable}
 import org.jetbrains.plugins.scala.caches.ScalaShortNamesCacheManager
@@ -37,6 +39,7 @@ import org.jetbrains.plugins.scala.lang.resolve.ResolvableReferenceElement
 import org.jetbrains.plugins.scala.util.macroDebug.ScalaMacroDebuggingUtil
 
 import scala.annotation.tailrec
+import scala.collection.JavaConverters._
 import scala.collection.mutable.ListBuffer
 
 /**
@@ -45,6 +48,8 @@ import scala.collection.mutable.ListBuffer
 class ScalaPositionManager(debugProcess: DebugProcess) extends PositionManager {
   def getDebugProcess = debugProcess
 
+  private val loadedClasses = new LoadedClassesIndex(debugProcess)
+
   @NotNull def locationsOfLine(refType: ReferenceType, position: SourcePosition): util.List[Location] = {
     try {
       val line: Int = position.getLine + 1
@@ -185,7 +190,7 @@ class ScalaPositionManager(debugProcess: DebugProcess) extends PositionManager {
             qName.set(SCRIPT_HOLDER_CLASS_NAME + "*")
           }
         }
-        waitRequestor.set(new ScalaPositionManager.MyClassPrepareRequestor(position, requestor))
+        waitRequestor.set(new ScalaPositionManager.MyClassPrepareRequestor(position, requestor, loadedClasses))
       }
     })
 
@@ -348,9 +353,9 @@ class ScalaPositionManager(debugProcess: DebugProcess) extends PositionManager {
                   possibleEndings.exists(full.endsWith)
                 }
 
-                filterAllClasses { clazz =>
+                filterClassesWithPrefix(enclName) { clazz =>
                   val cName = clazz.name()
-                  cName.startsWith(enclName) && (endsWithKindOf(cName, td.name) || cName.contains(s"$$${td.name}$$"))
+                  endsWithKindOf(cName, td.name) || cName.contains(s"$$${td.name}$$")
                 }
               case _ => util.Collections.emptyList[ReferenceType]
             }
@@ -361,7 +366,7 @@ class ScalaPositionManager(debugProcess: DebugProcess) extends PositionManager {
           case _ =>
             val qName = findEnclosingTypeDefinition(position).map(typeDef => typeDef.getQualifiedNameForDebugger)
             qName match {
-              case Some(name) => filterAllClasses(c => c.name().startsWith(name) && hasLocations(c, position))
+              case Some(name) => filterClassesWithPrefix(name)(hasLocations(_, position))
               case _ => util.Collections.emptyList[ReferenceType]
             }
         }
@@ -380,8 +385,15 @@ class ScalaPositionManager(debugProcess: DebugProcess) extends PositionManager {
     }
     hasLocations
   }
+
+  private def filterClassesWithPrefix(prefix: String)(condition: ReferenceType => Boolean): util.List[ReferenceType] = {
+    loadedClasses.withPrefix(prefix) match {
+      case Some(classes) => classes.filter(condition).asJava
+      case None => filterAllClasses(c => c.name().startsWith(prefix) && condition(c))
+    }
+  }
+
   private def filterAllClasses(condition: ReferenceType => Boolean): util.List[ReferenceType] = {
-    import scala.collection.JavaConverters._
     val allClasses = getDebugProcess.getVirtualMachineProxy.allClasses.asScala
     allClasses.filter(condition).asJava
   }
@@ -401,8 +413,10 @@ object ScalaPositionManager {
     else name
   }
 
-  private class MyClassPrepareRequestor(position: SourcePosition, requestor: ClassPrepareRequestor) extends ClassPrepareRequestor {
+  private class MyClassPrepareRequestor(position: SourcePosition, requestor: ClassPrepareRequestor,
+                                        loadedClasses: LoadedClassesIndex) extends ClassPrepareRequestor {
    def processClassPrepare(debuggerProcess: DebugProcess, referenceType: ReferenceType) {
+      loadedClasses.add(referenceType)
       val positionManager: CompoundPositionManager = debuggerProcess.asInstanceOf[DebugProcessImpl].getPositionManager
       if (positionManager.locationsOfLine(referenceType, position).size > 0) {
         requestor.processClassPrepare(debuggerProcess, referenceType)
@@ -415,4 +429,66 @@ object ScalaPositionManager {
       }
     }
   }
+
+  /**
+   * Loaded reference types by their top-level class names, so that the local classes and the anonymous functions
+   * of a class can be found without scanning all the loaded classes.
+   *
+   * Only the top-level classes that were looked up are tracked: the first lookup scans the loaded classes once
+   * and creates a class prepare request for the "Outer*" pattern, which doesn't suspend the VM. Unloaded classes
+   * are dropped by the lookups (the debugger doesn't report the unload events).
+   */
+  private class LoadedClassesIndex(debugProcess: DebugProcess) {
+    private val classes = ContainerUtil.newConcurrentMap[String, util.Set[ReferenceType]]()
+
+    private val requestor = new ClassPrepareRequestor {
+      def processClassPrepare(debuggerProcess: DebugProcess, referenceType: ReferenceType) {
+        add(referenceType)
+      }
+    }
+
+    def add(refType: ReferenceType) {
+      val set = classes.get(topLevelName(refType.name()))
+      if (set != null) set.add(refType)
+    }
+
+    /**
+     * @return None if the classes can't be tracked (e.g. the class prepare request can't be created)
+     */
+    def withPrefix(prefix: String): Option[Seq[ReferenceType]] = {
+      val topLevel = topLevelName(prefix)
+      Option(classes.get(topLevel)).orElse(track(topLevel)).map { set =>
+        val vm = debugProcess.getVirtualMachineProxy.asInstanceOf[VirtualMachineProxyImpl]
+        set.asScala.toSeq.filter(_.name().startsWith(prefix)).filter { refType =>
+          val loaded = vm.classesByName(refType.name()).contains(refType)
+          if (!loaded) set.remove(refType)
+          loaded
+        }
+      }
+    }
+
+    private def track(topLevel: String): Option[util.Set[ReferenceType]] = synchronized {
+      Option(classes.get(topLevel)).orElse {
+        val requestsManager = debugProcess.getRequestsManager
+        val request = requestsManager.createClassPrepareRequest(requestor, topLevel + "*")
+
+        if (request == null) None else {
+          val set = ContainerUtil.newConcurrentSet[ReferenceType]()
+          classes.put(topLevel, set)
+          request.setSuspendPolicy(EventRequest.SUSPEND_NONE)
+          requestsManager.enableRequest(request)
+          // The classes that are loaded in the meantime are added twice, which doesn't matter
+          debugProcess.getVirtualMachineProxy.allClasses.asScala.foreach { refType =>
+            if (topLevelName(refType.name()) == topLevel) set.add(refType)
+          }
+          Some(set)
+        }
+      }
+    }
+
+    private def topLevelName(name: String): String = {
+      val index = name.indexOf('$')
+      if (index == -1) name else name.substring(0, index)
+    }
+  }
 }
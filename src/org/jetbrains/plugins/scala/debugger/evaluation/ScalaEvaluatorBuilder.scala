@@ -34,6 +34,7 @@ object ScalaEvaluatorBuilder extends EvaluatorBuilder {
     val project = position.getFile.getProject
 
     val cache = ScalaEvaluatorCache.getInstance(project)
+    val start = System.nanoTime()
     val cached: Option[ExpressionEvaluator] = {
       try cache.get(position, codeFragment)
       catch {
@@ -47,13 +48,13 @@ object ScalaEvaluatorBuilder extends EvaluatorBuilder {
       cached.getOrElse {
         val newEvaluator = ScalaEvaluator(scalaFragment)(position)
         val unwrapped = new UnwrapRefEvaluator(newEvaluator)
-        cache.add(position, scalaFragment, new ExpressionEvaluatorImpl(unwrapped))
+        cache.add(position, scalaFragment, new ExpressionEvaluatorImpl(unwrapped), System.nanoTime() - start)
       }
     }
 
     def buildCompilingEvaluator: ExpressionEvaluator = {
       val compilingEvaluator = new ScalaCompilingEvaluator(position.getElementAt, scalaFragment)
-      cache.add(position, scalaFragment, compilingEvaluator)
+      cache.add(position, scalaFragment, compilingEvaluator, System.nanoTime() - start)
     }
 
     try buildSimpleEvaluator
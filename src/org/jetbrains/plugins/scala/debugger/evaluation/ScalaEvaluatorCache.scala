@@ -1,15 +1,16 @@
 package org.jetbrains.plugins.scala
 package debugger.evaluation
 
-import com.intellij.codeInsight.PsiEquivalenceUtil
+import java.util
+import java.util.concurrent.atomic.AtomicLong
+
 import com.intellij.debugger.engine.evaluation.expression.ExpressionEvaluator
 import com.intellij.debugger.impl.{DebuggerManagerAdapter, DebuggerSession}
 import com.intellij.debugger.{DebuggerManagerEx, SourcePosition}
 import com.intellij.openapi.components.{AbstractProjectComponent, ServiceManager}
-import com.intellij.openapi.project.Project
+import com.intellij.openapi.project.{Project, ProjectManager}
 import com.intellij.psi.{PsiElement, PsiFile}
-
-import scala.collection.mutable
+import org.jetbrains.plugins.scala.debugger.evaluation.ScalaEvaluatorCache._
 
 /**
  * Nikolay.Tropin
@@ -17,8 +18,20 @@ import scala.collection.mutable
  */
 class ScalaEvaluatorCache(project: Project) extends AbstractProjectComponent(project) {
 
-  private val cachedEvaluators = mutable.HashMap[(PsiFile, Int), mutable.HashMap[PsiElement, ExpressionEvaluator]]()
-  private val cachedStamp = mutable.HashMap[PsiFile, Long]()
+  /**
+   * Evaluators by the text of the code fragment and its position. The least recently used evaluators are evicted first.
+   * An evaluator that was built for an older version of its file is dropped when it's looked up, so a file change
+   * doesn't require a sweep over the whole cache.
+   */
+  private val cachedEvaluators = new util.LinkedHashMap[Key, Value](16, 0.75f, true) {
+    override def removeEldestEntry(eldest: util.Map.Entry[Key, Value]) = size > MaxSize
+  }
+
+  private val hits = new AtomicLong()
+
+  private val misses = new AtomicLong()
+
+  private val buildTime = new AtomicLong()
 
   override def projectOpened() = {
     DebuggerManagerEx.getInstanceEx(project).addDebuggerManagerListener(
@@ -29,43 +42,63 @@ class ScalaEvaluatorCache(project: Project) extends AbstractProjectComponent(pro
   }
 
   def clear() {
-    cachedEvaluators.values.foreach(_.clear())
-    cachedEvaluators.clear()
+    cachedEvaluators.synchronized(cachedEvaluators.clear())
   }
 
   def get(position: SourcePosition, element: PsiElement): Option[ExpressionEvaluator] = {
     val file = position.getFile
-    val offset = position.getOffset
-    if (cachedStamp.get(file) != Some(file.getModificationStamp)) {
-      cachedStamp(file) = file.getModificationStamp
-      cachedEvaluators.filterKeys(_._1 == file).foreach {
-        case (pos, map) =>
-          map.clear()
-          cachedEvaluators.remove(pos)
-      }
-      None
-    } else {
-      cachedEvaluators.get((file, offset)) match {
-        case Some(map) => map.collectFirst {
-          case (elem, eval) if PsiEquivalenceUtil.areElementsEquivalent(element, elem) => eval
-        }
-        case None => None
+    val key = Key(file, position.getOffset, element.getText)
+    val stamp = file.getModificationStamp
+
+    val result = cachedEvaluators.synchronized {
+      cachedEvaluators.get(key) match {
+        case null => None
+        case Value(`stamp`, evaluator) => Some(evaluator)
+        case _ =>
+          cachedEvaluators.remove(key)
+          None
       }
     }
+
+    (if (result.isDefined) hits else misses).incrementAndGet()
+    result
   }
 
-  def add(position: SourcePosition, element: PsiElement, evaluator: ExpressionEvaluator): ExpressionEvaluator = {
+  /**
+   * @param buildTimeNanos the time that was spent on building the evaluator, for the statistics
+   */
+  def add(position: SourcePosition, element: PsiElement, evaluator: ExpressionEvaluator, buildTimeNanos: Long): ExpressionEvaluator = {
     val file = position.getFile
-    val offset = position.getOffset
-    cachedEvaluators.get((file, offset)) match {
-      case Some(map) => map += (element -> evaluator)
-      case None =>
-        cachedEvaluators += ((file, offset) -> mutable.HashMap(element -> evaluator))
-    }
+    val key = Key(file, position.getOffset, element.getText)
+    cachedEvaluators.synchronized(cachedEvaluators.put(key, Value(file.getModificationStamp, evaluator)))
+    buildTime.addAndGet(buildTimeNanos)
     evaluator
   }
+
+  def statistics: EvaluatorCacheStatistics = EvaluatorCacheStatistics(hits.get, misses.get, buildTime.get / 1000000L)
 }
 
 object ScalaEvaluatorCache {
+  private val MaxSize = 1000
+
+  private case class Key(file: PsiFile, offset: Int, text: String)
+
+  private case class Value(modificationStamp: Long, evaluator: ExpressionEvaluator)
+
   def getInstance(project: Project) = ServiceManager.getService(project, classOf[ScalaEvaluatorCache])
+
+  /**
+   * The statistics of the evaluator caches of all the open projects
+   */
+  def totalStatistics: EvaluatorCacheStatistics = {
+    ProjectManager.getInstance.getOpenProjects.filterNot(_.isDisposed).map(getInstance(_).statistics)
+            .foldLeft(EvaluatorCacheStatistics(0L, 0L, 0L))(_ + _)
+  }
+}
+
+case class EvaluatorCacheStatistics(hits: Long, misses: Long, buildTimeMillis: Long) {
+  def +(other: EvaluatorCacheStatistics) =
+    EvaluatorCacheStatistics(hits + other.hits, misses + other.misses, buildTimeMillis + other.buildTimeMillis)
+
+  override def toString = "%d hits, %d misses, %d ms spent on building evaluators".format(hits, misses, buildTimeMillis)
 }
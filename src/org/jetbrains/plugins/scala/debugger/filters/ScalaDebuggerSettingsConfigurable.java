@@ -7,6 +7,7 @@ import com.intellij.uiDesigner.core.GridLayoutManager;
 import com.intellij.uiDesigner.core.Spacer;
 import org.jetbrains.annotations.Nls;
 import org.jetbrains.plugins.scala.ScalaBundle;
+import org.jetbrains.plugins.scala.debugger.evaluation.ScalaEvaluatorCache;
 import org.jetbrains.plugins.scala.icons.Icons;
 
 import javax.swing.*;
@@ -29,6 +30,7 @@ public class ScalaDebuggerSettingsConfigurable implements Configurable {
   private JCheckBox dontShowRuntimeRefs;
   private JCheckBox doNotExpandStreamsCheckBox;
   private JCheckBox showOuterVariables;
+  private JLabel evaluatorCacheStatistics;
   private boolean isModified = false;
   private final ScalaDebuggerSettings mySettings;
 
@@ -70,6 +72,8 @@ public class ScalaDebuggerSettingsConfigurable implements Configurable {
     myStartIndexSpinner.setValue(mySettings.COLLECTION_START_INDEX);
     myEndIndexSpinner.setValue(mySettings.COLLECTION_END_INDEX);
 
+    evaluatorCacheStatistics.setText(ScalaBundle.message("evaluator.cache.statistics", ScalaEvaluatorCache.totalStatistics()));
+
     return myPanel;
   }
 
@@ -117,13 +121,13 @@ public class ScalaDebuggerSettingsConfigurable implements Configurable {
    */
   private void $$$setupUI$$$() {
     myPanel = new JPanel();
-    myPanel.setLayout(new GridLayoutManager(7, 3, new Insets(0, 0, 0, 0), -1, -1));
+    myPanel.setLayout(new GridLayoutManager(8, 3, new Insets(0, 0, 0, 0), -1, -1));
     myIgnoreScalaMethods = new JCheckBox();
     myIgnoreScalaMethods.setSelected(false);
     this.$$$loadButtonText$$$(myIgnoreScalaMethods, ResourceBundle.getBundle("org/jetbrains/plugins/scala/ScalaBundle").getString("scala.debug.disable.specific.methods"));
     myPanel.add(myIgnoreScalaMethods, new GridConstraints(0, 0, 1, 2, GridConstraints.ANCHOR_WEST, GridConstraints.FILL_NONE, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
     final Spacer spacer1 = new Spacer();
-    myPanel.add(spacer1, new GridConstraints(6, 0, 1, 2, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_VERTICAL, 1, GridConstraints.SIZEPOLICY_WANT_GROW, null, null, null, 0, false));
+    myPanel.add(spacer1, new GridConstraints(7, 0, 1, 2, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_VERTICAL, 1, GridConstraints.SIZEPOLICY_WANT_GROW, null, null, null, 0, false));
     friendlyDisplayOfScalaCheckBox = new JCheckBox();
     this.$$$loadButtonText$$$(friendlyDisplayOfScalaCheckBox, ResourceBundle.getBundle("org/jetbrains/plugins/scala/ScalaBundle").getString("friendly.collection.display.enabled"));
     myPanel.add(friendlyDisplayOfScalaCheckBox, new GridConstraints(2, 0, 1, 2, GridConstraints.ANCHOR_WEST, GridConstraints.FILL_NONE, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
@@ -159,6 +163,9 @@ public class ScalaDebuggerSettingsConfigurable implements Configurable {
     showOuterVariables = new JCheckBox();
     this.$$$loadButtonText$$$(showOuterVariables, ResourceBundle.getBundle("org/jetbrains/plugins/scala/ScalaBundle").getString("show.variables.from.outer.scopes.in.variables.view"));
     myPanel.add(showOuterVariables, new GridConstraints(5, 0, 1, 2, GridConstraints.ANCHOR_WEST, GridConstraints.FILL_NONE, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
+    evaluatorCacheStatistics = new JLabel();
+    evaluatorCacheStatistics.setText("");
+    myPanel.add(evaluatorCacheStatistics, new GridConstraints(6, 0, 1, 2, GridConstraints.ANCHOR_WEST, GridConstraints.FILL_NONE, GridConstraints.SIZEPOLICY_FIXED, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
   }
 
   /**
@@ -104,13 +104,25 @@ public class ConstantPoolParser {
    */
   private final int maxStringLength;
 
+  /**
+   * The index in {@link #b b} that follows the constant pool.
+   */
+  public final int end;
+
   public ConstantPoolParser(int length, byte[] bytes) {
+    this(length, bytes, 0);
+  }
+
+  /**
+   * @param offset the index of the first constant pool item in the bytes (e.g. 10 for a whole class file)
+   */
+  public ConstantPoolParser(int length, byte[] bytes, int offset) {
     b = bytes;
     items = new int[length];
     strings = new String[length];
 
     int max = 0;
-    int index = 0;
+    int index = offset;
     for (int i = 1; i < length; ++i) {
       items[i] = index + 1;
       int size;
@@ -148,6 +160,7 @@ public class ConstantPoolParser {
       index += size;
     }
     maxStringLength = max;
+    end = index;
   }
 
   int readUnsignedShort(final int index) {
@@ -155,6 +168,20 @@ public class ConstantPoolParser {
     return ((b[index] & 0xFF) << 8) | (b[index + 1] & 0xFF);
   }
 
+  /**
+   * Compares a CONSTANT_Utf8 item with an ASCII string, without decoding the item.
+   */
+  boolean isUTF8Constant(int index, String ascii) {
+    int start = this.items[index];
+    if (start == 0 || b[start - 1] != UTF8) return false;
+    int length = readUnsignedShort(start);
+    if (length != ascii.length()) return false;
+    for (int i = 0; i < length; i++) {
+      if (b[start + 2 + i] != ascii.charAt(i)) return false;
+    }
+    return true;
+  }
+
   String readUTF8Constant(int index) {
     String s = this.strings[index];
     if(s != null) {
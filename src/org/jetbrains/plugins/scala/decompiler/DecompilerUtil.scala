@@ -70,7 +70,7 @@ object DecompilerUtil {
       val readAttribute = SCALA_DECOMPILER_FILE_ATTRIBUTE.readAttribute(file)
       def updateAttributeAndData() {
         val writeAttribute = SCALA_DECOMPILER_FILE_ATTRIBUTE.writeAttribute(file)
-        val decompilationResult = decompileInner(file, bytes)
+        val decompilationResult = scan(file, bytes)
         try {
           writeAttribute.writeBoolean(decompilationResult.isScala)
           writeAttribute.writeUTF(decompilationResult.sourceName)
@@ -104,11 +104,30 @@ object DecompilerUtil {
   }
 
   private val SOURCE_FILE = "SourceFile"
+  private val NO_SOURCE = "-no-source-"
   private val SCALA_SIG = "ScalaSig"
   private val SCALA_SIG_ANNOTATION = "Lscala/reflect/ScalaSignature;"
   private val SCALA_LONG_SIG_ANNOTATION = "Lscala/reflect/ScalaLongSignature;"
   private val BYTES_VALUE = "bytes"
-  private def decompileInner(file: VirtualFile, bytes: Array[Byte]): DecompilationResult = {
+  /**
+   * Checks the Scala signature and reads the source file name without parsing the class file,
+   * the class file is decompiled only when the source text is requested.
+   */
+  private def scan(file: VirtualFile, bytes: Array[Byte]): DecompilationResult = {
+    try {
+      val result = ScalaSignatureScanner.scan(bytes)
+      if (!result.isScala) new DecompilationResult(isScala = false, "", file.getTimeStamp)
+      else new DecompilationResult(isScala = true, Option(result.sourceFileName).getOrElse(NO_SOURCE), file.getTimeStamp) {
+        override lazy val sourceText: String = decompileInner(file, bytes).sourceText
+      }
+    } catch {
+      case e: IllegalArgumentException =>
+        LOG.info(s"Error during scanning ${file.getName}: ${e.getMessage}")
+        decompileInner(file, bytes)
+    }
+  }
+
+  private[decompiler] def decompileInner(file: VirtualFile, bytes: Array[Byte]): DecompilationResult = {
     try {
       val byteCode = ByteCode(bytes)
       val isPackageObject = file.getName == "package.class"
@@ -187,7 +206,7 @@ object DecompilerUtil {
               case _ => Array.empty
             }
             new String(sBytes, UTF8)
-          case None => "-no-source-"
+          case None => NO_SOURCE
         }
       }
 
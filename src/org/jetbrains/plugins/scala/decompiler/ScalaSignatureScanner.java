@@ -0,0 +1,175 @@
+package org.jetbrains.plugins.scala.decompiler;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Checks whether a class file has a Scala signature and reads its source file name, by skipping over the class file
+ * structure in place (only the constant pool is indexed, and only the source file name is decoded).
+ * <p/>
+ * A class file is a Scala one when it has a "ScalaSig" attribute with entries, or an empty "ScalaSig" attribute
+ * along with a ScalaSignature / ScalaLongSignature annotation (the same rule that {@link DecompilerUtil} follows).
+ */
+public class ScalaSignatureScanner {
+  private static final int MAGIC = 0xCAFEBABE;
+  private static final int CONSTANT_POOL_OFFSET = 10;
+
+  private static final String SCALA_SIG = "ScalaSig";
+  private static final String SOURCE_FILE = "SourceFile";
+  private static final String RUNTIME_VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations";
+  private static final String SCALA_SIG_ANNOTATION = "Lscala/reflect/ScalaSignature;";
+  private static final String SCALA_LONG_SIG_ANNOTATION = "Lscala/reflect/ScalaLongSignature;";
+
+  public static class Result {
+    public final boolean isScala;
+    @Nullable
+    public final String sourceFileName;
+
+    public Result(boolean isScala, @Nullable String sourceFileName) {
+      this.isScala = isScala;
+      this.sourceFileName = sourceFileName;
+    }
+  }
+
+  private final byte[] b;
+  private int index;
+
+  private ScalaSignatureScanner(byte[] bytes) {
+    b = bytes;
+  }
+
+  /**
+   * @throws IllegalArgumentException if the bytes are not a valid class file
+   */
+  public static Result scan(byte[] bytes) throws IllegalArgumentException {
+    try {
+      return new ScalaSignatureScanner(bytes).scan();
+    } catch (ArrayIndexOutOfBoundsException e) {
+      throw new IllegalArgumentException("Truncated class file", e);
+    }
+  }
+
+  private Result scan() {
+    if (readInt() != MAGIC) throw new IllegalArgumentException("Not a class file");
+
+    index = CONSTANT_POOL_OFFSET - 2;
+    ConstantPoolParser pool = new ConstantPoolParser(readUnsignedShort(), b, CONSTANT_POOL_OFFSET);
+    index = pool.end;
+
+    // access flags, this class, super class
+    index += 6;
+    int interfaces = readUnsignedShort();
+    index += 2 * interfaces;
+
+    skipMembers(); // fields
+    skipMembers(); // methods
+
+    boolean hasScalaSig = false;
+    boolean hasSignatureEntries = false;
+    boolean hasSignatureAnnotation = false;
+    String sourceFileName = null;
+
+    int attributes = readUnsignedShort();
+    for (int i = 0; i < attributes; i++) {
+      int name = readUnsignedShort();
+      int length = readInt();
+      int start = index;
+
+      if (pool.isUTF8Constant(name, SCALA_SIG)) {
+        hasScalaSig = true;
+        readNat(); // major version
+        readNat(); // minor version
+        hasSignatureEntries = readNat() > 0;
+      } else if (pool.isUTF8Constant(name, SOURCE_FILE)) {
+        sourceFileName = pool.readUTF8Constant(readUnsignedShort());
+      } else if (pool.isUTF8Constant(name, RUNTIME_VISIBLE_ANNOTATIONS)) {
+        hasSignatureAnnotation = hasSignatureAnnotation(pool);
+      }
+
+      index = start + length;
+    }
+
+    boolean isScala = hasScalaSig && (hasSignatureEntries || hasSignatureAnnotation);
+    return new Result(isScala, sourceFileName);
+  }
+
+  private void skipMembers() {
+    int members = readUnsignedShort();
+    for (int i = 0; i < members; i++) {
+      // access flags, name, descriptor
+      index += 6;
+      int attributes = readUnsignedShort();
+      for (int j = 0; j < attributes; j++) {
+        index += 2;
+        int length = readInt();
+        index += length;
+      }
+    }
+  }
+
+  private boolean hasSignatureAnnotation(ConstantPoolParser pool) {
+    int annotations = readUnsignedShort();
+    for (int i = 0; i < annotations; i++) {
+      int type = readUnsignedShort();
+      if (pool.isUTF8Constant(type, SCALA_SIG_ANNOTATION) || pool.isUTF8Constant(type, SCALA_LONG_SIG_ANNOTATION)) {
+        return true;
+      }
+      skipElementValuePairs();
+    }
+    return false;
+  }
+
+  private void skipElementValuePairs() {
+    int pairs = readUnsignedShort();
+    for (int i = 0; i < pairs; i++) {
+      index += 2; // name
+      skipElementValue();
+    }
+  }
+
+  private void skipElementValue() {
+    int tag = b[index++];
+    switch (tag) {
+      case 'e':
+        index += 4;
+        break;
+      case '@':
+        index += 2;
+        skipElementValuePairs();
+        break;
+      case '[':
+        int values = readUnsignedShort();
+        for (int i = 0; i < values; i++) {
+          skipElementValue();
+        }
+        break;
+      default: // constants and classes
+        index += 2;
+        break;
+    }
+  }
+
+  /**
+   * A natural number in the ScalaSig format: 7 bits per byte, the high bit means that more bytes follow.
+   */
+  private int readNat() {
+    int result = 0;
+    int x;
+    do {
+      x = b[index++];
+      result = (result << 7) + (x & 0x7F);
+    } while ((x & 0x80) != 0);
+    return result;
+  }
+
+  private int readUnsignedShort() {
+    int result = ((b[index] & 0xFF) << 8) | (b[index + 1] & 0xFF);
+    index += 2;
+    return result;
+  }
+
+  private int readInt() {
+    int result = ((b[index] & 0xFF) << 24) | ((b[index + 1] & 0xFF) << 16) | ((b[index + 2] & 0xFF) << 8) | (b[index + 3] & 0xFF);
+    index += 4;
+    return result;
+  }
+}
@@ -8,6 +8,8 @@ package impl
 package toplevel
 package typedef
 
+import java.util.concurrent.{Callable, ConcurrentHashMap, ExecutionException, FutureTask, TimeUnit, TimeoutException}
+
 import com.intellij.openapi.progress.ProgressManager
 import com.intellij.openapi.project.Project
 import com.intellij.psi.search.GlobalSearchScope
@@ -60,31 +62,80 @@ abstract class MixinNodes {
       supersList = list
     }
 
-    private val calculatedNames: mutable.HashSet[String] = new mutable.HashSet
-    private val calculated: mutable.HashMap[String, AllNodes] = new mutable.HashMap
-    private val calculatedSupers: mutable.HashMap[String, AllNodes] = new mutable.HashMap
+    // Each name is calculated once, a calculated value is read without locking
+    private val calculated = new ConcurrentHashMap[String, FutureTask[(AllNodes, AllNodes)]]()
 
     def forName(name: String): (AllNodes, AllNodes) = {
       val convertedName = ScalaPsiUtil.convertMemberName(name)
-      synchronized {
-        if (calculatedNames.contains(convertedName)) {
-          return (calculated(convertedName), calculatedSupers(convertedName))
-        }
+
+      val existing = calculated.get(convertedName)
+      if (existing != null && existing.isDone) return valueOf(convertedName, existing)
+
+      // A nested calculation never waits for another thread, so that calculations can't wait for each other
+      if (MixinNodes.calculationDepth.get > 0) return calculate(convertedName)
+
+      val task = new FutureTask[(AllNodes, AllNodes)](new Callable[(AllNodes, AllNodes)] {
+        def call() = calculate(convertedName)
+      })
+
+      calculated.putIfAbsent(convertedName, task) match {
+        case null =>
+          task.run()
+          valueOf(convertedName, task)
+        case other =>
+          while (!other.isDone) {
+            ProgressManager.checkCanceled()
+            try {
+              other.get(MixinNodes.WaitInterval, TimeUnit.MILLISECONDS)
+            } catch {
+              case _: TimeoutException | _: ExecutionException =>
+            }
+          }
+          // a failed (e.g. cancelled) calculation of another thread is re-done in this one
+          if (other.isCancelled || failed(other)) {
+            calculated.remove(convertedName, other)
+            forName(name)
+          } else {
+            valueOf(convertedName, other)
+          }
+      }
+    }
+
+    private def failed(task: FutureTask[_]): Boolean = {
+      try {
+        task.get()
+        false
+      } catch {
+        case _: ExecutionException => true
       }
-      val thisMap: NodesMap = toNodesMap(getOrElse(convertedName, new ArrayBuffer))
-      val maps: List[NodesMap] = supersList.map(sup => toNodesMap(sup.getOrElse(convertedName, new ArrayBuffer)))
-      val supers = mergeWithSupers(thisMap, mergeSupers(maps))
-      val list = supersList.map(_.privatesMap.getOrElse(convertedName, new ArrayBuffer[(T, Node)])).flatten
-      val supersPrivates = toNodesSeq(list)
-      val thisPrivates = toNodesSeq(privatesMap.getOrElse(convertedName, new ArrayBuffer[(T, Node)]).toList ::: list)
-      val thisAllNodes = new AllNodes(thisMap, thisPrivates)
-      val supersAllNodes = new AllNodes(supers, supersPrivates)
-      synchronized {
-        calculatedNames.add(convertedName)
-        calculated.+=((convertedName, thisAllNodes))
-        calculatedSupers.+=((convertedName, supersAllNodes))
+    }
+
+    private def valueOf(name: String, task: FutureTask[(AllNodes, AllNodes)]): (AllNodes, AllNodes) = {
+      try {
+        task.get()
+      } catch {
+        case e: ExecutionException =>
+          calculated.remove(name, task)
+          throw e.getCause
+      }
+    }
+
+    private def calculate(convertedName: String): (AllNodes, AllNodes) = {
+      val depth = MixinNodes.calculationDepth
+      depth.set(depth.get + 1)
+      try {
+        val thisMap: NodesMap = toNodesMap(getOrElse(convertedName, new ArrayBuffer))
+        val maps: List[NodesMap] = supersList.map(sup => toNodesMap(sup.getOrElse(convertedName, new ArrayBuffer)))
+        val supers = mergeWithSupers(thisMap, mergeSupers(maps))
+        val list = supersList.map(_.privatesMap.getOrElse(convertedName, new ArrayBuffer[(T, Node)])).flatten
+        val supersPrivates = toNodesSeq(list)
+        val thisPrivates = toNodesSeq(privatesMap.getOrElse(convertedName, new ArrayBuffer[(T, Node)]).toList ::: list)
+        val thisAllNodes = new AllNodes(thisMap, thisPrivates)
+        val supersAllNodes = new AllNodes(supers, supersPrivates)
+        (thisAllNodes, supersAllNodes)
+      } finally {
+        depth.set(depth.get - 1)
       }
-      (thisAllNodes, supersAllNodes)
     }
 
     @volatile
@@ -113,29 +164,20 @@ abstract class MixinNodes {
       names
     }
     
-    private def forAll(): (mutable.HashMap[String, AllNodes], mutable.HashMap[String, AllNodes]) = {
-      for (name <- allNames()) forName(name)
-      synchronized {
-        (calculated, calculatedSupers)
-      }
-    }
+    private def forAll(): Seq[(AllNodes, AllNodes)] = allNames().toSeq.map(forName)
 
     def allFirstSeq(): Seq[AllNodes] = {
-      forAll()._1.toSeq.map(_._2)
+      forAll().map(_._1)
     }
 
     def allSecondSeq(): Seq[AllNodes] = {
-      forAll()._1.toSeq.map(_._2)
+      forAll().map(_._1)
     }
     
     private def toNodesSeq(seq: List[(T, Node)]): NodesSeq = {
-      val map = new mutable.HashMap[Int, List[(T, Node)]]
-      for (elem <- seq) {
-        val key = computeHashCode(elem._1)
-        val prev = map.getOrElse(key, List.empty)
-        map.update(key, elem :: prev)
-      }
-      new NodesSeq(map)
+      val res = new NodesSeq
+      for ((key, node) <- seq) res.add(key, node)
+      res
     }
     
     private def toNodesMap(buf: ArrayBuffer[(T, Node)]): NodesMap = {
@@ -198,34 +240,26 @@ abstract class MixinNodes {
     
     def foreach(p: ((T, Node)) => Unit) {
       publics.foreach(p)
-      privates.map.values.flatten.foreach(p)
+      privates.foreach(p)
     }
     
     def map[R](p: ((T, Node)) => R): Seq[R] = {
-      publics.map(p).toSeq ++ privates.map.values.flatten.map(p)
+      iterator.map(p).toVector
     }
 
     def filter(p: ((T, Node)) => Boolean): Seq[(T, Node)] = {
-      publics.filter(p).toSeq ++ privates.map.values.flatten.filter(p)
+      iterator.filter(p).toVector
     }
 
     def withFilter(p: ((T, Node)) => Boolean) = {
-      (publics.toSeq ++ privates.map.values.flatten).withFilter(p)
+      iterator.toVector.withFilter(p)
     }
 
     def flatMap[R](p: ((T, Node)) => Traversable[R]): Seq[R] = {
-      publics.flatMap(p).toSeq ++ privates.map.values.flatten.flatMap(p)
+      iterator.flatMap(p).toVector
     }
     
-    def iterator: Iterator[(T, Node)] = {
-      new Iterator[(T, Node)] {
-        private val iter1 = publics.iterator
-        private val iter2 = privates.map.values.flatten.iterator
-        def hasNext: Boolean = iter1.hasNext || iter2.hasNext
-
-        def next(): (T, Node) = if (iter1.hasNext) iter1.next() else iter2.next()
-      }
-    }
+    def iterator: Iterator[(T, Node)] = publics.iterator ++ privates.iterator
 
     def fastPhysicalSignatureGet(key: T): Option[Node] = {
       publics.fastPhysicalSignatureGet(key) match {
@@ -234,78 +268,204 @@ abstract class MixinNodes {
       }
     }
     
-    def isEmpty: Boolean = publics.isEmpty && privates.map.values.forall(_.isEmpty)
+    def isEmpty: Boolean = publics.isEmpty && privates.isEmpty
   }
-  
-  class NodesSeq(private[MixinNodes] val map: mutable.HashMap[Int, List[(T, Node)]]) {
+
+  /**
+   * An open addressing hash table of nodes, keyed by computeHashCode of their keys.
+   *
+   * There are no entry objects, the hash codes are stored in an int array, and the keys and nodes are interleaved
+   * in an object array, so a table takes three objects regardless of its size (most tables hold a single entry).
+   * Tuples are created only when the table is iterated.
+   */
+  abstract class NodesTable {
+    private var hashes: Array[Int] = MixinNodes.EmptyHashes
+
+    // key of the entry i is at 2 * i, node is at 2 * i + 1, null key marks an empty slot
+    private var entries: Array[AnyRef] = MixinNodes.EmptyEntries
+
+    private var count = 0
+
+    def size: Int = count
+
+    def isEmpty: Boolean = count == 0
+
+    def iterator: Iterator[(T, Node)] = new Iterator[(T, Node)] {
+      private var slot = nextSlot(0)
+
+      def hasNext: Boolean = slot < hashes.length
+
+      def next(): (T, Node) = {
+        if (!hasNext) throw new NoSuchElementException
+        val result = (keyAt(slot), nodeAt(slot))
+        slot = nextSlot(slot + 1)
+        result
+      }
+
+      private def nextSlot(from: Int): Int = {
+        var i = from
+        while (i < hashes.length && entries(2 * i) == null) i += 1
+        i
+      }
+    }
+
+    def foreach[U](f: ((T, Node)) => U) {
+      var i = 0
+      while (i < hashes.length) {
+        if (entries(2 * i) != null) f((keyAt(i), nodeAt(i)))
+        i += 1
+      }
+    }
+
+    protected def keyAt(slot: Int): T = entries(2 * slot).asInstanceOf[T]
+
+    protected def nodeAt(slot: Int): Node = entries(2 * slot + 1).asInstanceOf[Node]
+
+    protected def setNodeAt(slot: Int, node: Node) {
+      entries(2 * slot + 1) = node
+    }
+
+    /**
+     * Visits the occupied slots of the entries with the given hash code, in the order of insertion,
+     * until the function returns false.
+     */
+    protected def forEachSlotOf(hash: Int)(f: Int => Boolean) {
+      if (hashes.length == 0) return
+      val mask = hashes.length - 1
+      var i = MixinNodes.improve(hash) & mask
+      while (entries(2 * i) != null) {
+        if (hashes(i) == hash && !f(i)) return
+        i = (i + 1) & mask
+      }
+    }
+
+    protected def insert(hash: Int, key: T, node: Node) {
+      if ((count + 1) * 4 > hashes.length * 3) grow()
+      val mask = hashes.length - 1
+      var i = MixinNodes.improve(hash) & mask
+      while (entries(2 * i) != null) i = (i + 1) & mask
+      hashes(i) = hash
+      entries(2 * i) = key.asInstanceOf[AnyRef]
+      entries(2 * i + 1) = node
+      count += 1
+    }
+
+    private def grow() {
+      val oldHashes = hashes
+      val oldEntries = entries
+      val capacity = if (oldHashes.length == 0) 2 else oldHashes.length * 2
+      hashes = new Array[Int](capacity)
+      entries = new Array[AnyRef](capacity * 2)
+      count = 0
+      if (oldHashes.length == 0) return
+      // Starting from an empty slot, no probe sequence wraps around, so the order of insertion is preserved
+      val mask = oldHashes.length - 1
+      var start = 0
+      while (oldEntries(2 * start) != null) start += 1
+      var n = 0
+      while (n < oldHashes.length) {
+        val i = (start + n) & mask
+        if (oldEntries(2 * i) != null) insert(oldHashes(i), oldEntries(2 * i).asInstanceOf[T], oldEntries(2 * i + 1).asInstanceOf[Node])
+        n += 1
+      }
+    }
+  }
+
+  /**
+   * Nodes that are told apart by "same" rather than by "equiv", a key may have several nodes.
+   */
+  class NodesSeq extends NodesTable {
+    def add(key: T, node: Node) {
+      insert(computeHashCode(key), key, node)
+    }
+
+    // The last added node wins
     def get(s: T): Option[Node] = {
-      val list = map.getOrElse(computeHashCode(s), Nil)
-      val iterator = list.iterator
-      while (iterator.hasNext) {
-        val next = iterator.next()
-        if (same(s, next._1)) return Some(next._2)
+      var result: Option[Node] = None
+      forEachSlotOf(computeHashCode(s)) { slot =>
+        if (same(s, keyAt(slot))) result = Some(nodeAt(slot))
+        true
       }
-      None
+      result
     }
 
     def fastPhysicalSignatureGet(key: T): Option[Node] = {
-      val list = map.getOrElse(computeHashCode(key), List.empty)
-      list match {
-        case Nil => None
-        case x :: Nil => Some(x._2)
-        case e =>
-          val iterator = e.iterator
-          while (iterator.hasNext) {
-            val next = iterator.next()
-            if (same(key, next._1)) return Some(next._2)
-          }
-          None
+      var single: Option[Node] = None
+      var several = false
+      forEachSlotOf(computeHashCode(key)) { slot =>
+        if (single.isDefined) several = true
+        single = Some(nodeAt(slot))
+        !several
       }
+      if (several) get(key) else single
     }
   }
 
-  class NodesMap extends mutable.HashMap[T, Node] {
-    override def elemHashCode(t: T) = computeHashCode(t)
-    override def elemEquals(t1 : T, t2 : T) = equiv(t1, t2)
+  class NodesMap extends NodesTable {
+    def get(key: T): Option[Node] = {
+      var result: Option[Node] = None
+      forEachSlotOf(computeHashCode(key)) { slot =>
+        if (equiv(keyAt(slot), key)) result = Some(nodeAt(slot))
+        result.isEmpty
+      }
+      result
+    }
+
+    def +=(entry: (T, Node)): this.type = {
+      val (key, node) = entry
+      val hash = computeHashCode(key)
+      var updated = false
+      forEachSlotOf(hash) { slot =>
+        if (equiv(keyAt(slot), key)) {
+          setNodeAt(slot, node)
+          updated = true
+        }
+        !updated
+      }
+      if (!updated) insert(hash, key, node)
+      this
+    }
+
+    def ++=(entries: TraversableOnce[(T, Node)]): this.type = {
+      entries.foreach(this += _)
+      this
+    }
 
     /**
      * Use this method if you are sure, that map contains key
      */
     def fastGet(key: T): Option[Node] = {
-    //todo: possible optimization to filter without types first then if only one variant left, get it.
-      val h = index(elemHashCode(key))
-      var e = table(h).asInstanceOf[Entry]
-      if (e != null && e.next == null) return Some(e.value)
-      while (e != null) {
-        if (elemEquals(e.key, key)) return Some(e.value)
-        e = e.next
-        if (e.next == null) return Some(e.value)
+      //todo: possible optimization to filter without types first then if only one variant left, get it.
+      var candidates = 0
+      var last: Option[Node] = None
+      var result: Option[Node] = None
+      forEachSlotOf(computeHashCode(key)) { slot =>
+        candidates += 1
+        last = Some(nodeAt(slot))
+        true
+      }
+      if (candidates <= 1) return last
+      forEachSlotOf(computeHashCode(key)) { slot =>
+        if (equiv(keyAt(slot), key)) result = Some(nodeAt(slot))
+        result.isEmpty
       }
-      None
+      result.orElse(last)
     }
 
     def fastPhysicalSignatureGet(key: T): Option[Node] = {
       key match {
         case p: PhysicalSignature =>
-          val h = index(elemHashCode(key))
-          var e = table(h).asInstanceOf[Entry]
-          if (e != null && e.next == null) {
-            e.value.info match {
-              case p2: PhysicalSignature =>
-                if (p.method == p2.method) return Some(e.value)
-                else return None
-              case _ => return None
-            }
-          }
-          while (e != null) {
-            e.value.info match {
-              case p2: PhysicalSignature =>
-                if (p.method == p2.method) return Some(e.value)
+          var candidates = 0
+          var result: Option[Node] = None
+          forEachSlotOf(computeHashCode(key)) { slot =>
+            candidates += 1
+            nodeAt(slot).info match {
+              case p2: PhysicalSignature if p.method == p2.method && result.isEmpty => result = Some(nodeAt(slot))
               case _ =>
             }
-            e = e.next
+            true
           }
-          fastGet(key)
+          if (candidates <= 1 || result.isDefined) result else fastGet(key)
         case _ => fastGet(key)
       }
     }
@@ -453,6 +613,23 @@ abstract class MixinNodes {
 }
 
 object MixinNodes {
+  private val WaitInterval = 50L
+
+  private val EmptyHashes = new Array[Int](0)
+
+  private val EmptyEntries = new Array[AnyRef](0)
+
+  // Spreads the hash codes, so that the low bits, which are used for slot indices, depend on all the bits
+  private def improve(hash: Int): Int = {
+    val h = hash * 0x9E3779B9
+    h ^ (h >>> 16)
+  }
+
+  // The number of node calculations that the current thread is inside of
+  private val calculationDepth = new ThreadLocal[Int] {
+    override def initialValue(): Int = 0
+  }
+
   def linearization(clazz: PsiClass): Seq[ScType] = {
     clazz match {
       case obj: ScObject if obj.isPackageObject && obj.qualifiedName == "scala" =>
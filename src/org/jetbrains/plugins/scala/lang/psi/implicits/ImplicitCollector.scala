@@ -1,10 +1,13 @@
 package org.jetbrains.plugins.scala
 package lang.psi.implicits
 
+import java.util.concurrent.atomic.AtomicLong
+
 import com.intellij.openapi.progress.ProgressManager
 import com.intellij.psi._
-import com.intellij.psi.util.PsiTreeUtil
+import com.intellij.psi.util.{PsiModificationTracker, PsiTreeUtil}
 import com.intellij.util.containers.ConcurrentHashMap
+import org.jetbrains.plugins.scala.caches.CachesUtil
 import org.jetbrains.plugins.scala.extensions._
 import org.jetbrains.plugins.scala.lang.psi.ScalaPsiUtil.SafeCheckException
 import org.jetbrains.plugins.scala.lang.psi.api.base.ScFieldId
@@ -33,6 +36,72 @@ import scala.collection.mutable.ArrayBuffer
 object ImplicitCollector {
   val cache = new ConcurrentHashMap[(PsiElement, ScType), Seq[ScalaResolveResult]]()
 
+  private val AnyClasses = Set("java.lang.Object", "scala.Any", "scala.AnyRef", "scala.AnyVal", "scala.ScalaObject")
+
+  private val searches = new AtomicLong()
+
+  private val candidates = new AtomicLong()
+
+  private val examined = new AtomicLong()
+
+  def statistics: ImplicitCandidatesStatistics = ImplicitCandidatesStatistics(searches.get, candidates.get, examined.get)
+
+  def resetStatistics() {
+    searches.set(0L)
+    candidates.set(0L)
+    examined.set(0L)
+  }
+
+  /**
+   * The classes of the top-level type constructors of the declared result type of an implicit definition
+   * (a type can't conform to a class type unless one of these classes inherits the class).
+   *
+   * None if the result type is unknown (it's inferred, it's abstract, it's an alias, etc.) or if the definition
+   * is a conversion rather than an implicit value.
+   */
+  def resultClasses(element: PsiElement): Option[Set[PsiClass]] = {
+    CachesUtil.get(element, CachesUtil.IMPLICIT_RESULT_CLASSES,
+      new CachesUtil.MyProvider(element, (e: PsiElement) => computeResultClasses(e))
+      (PsiModificationTracker.MODIFICATION_COUNT))
+  }
+
+  private def computeResultClasses(element: PsiElement): Option[Set[PsiClass]] = {
+    val declaredType = element match {
+      case o: ScObject => return Some(Set[PsiClass](o))
+      case param: ScParameter => param.typeElement.flatMap(_.getType(TypingContext.empty).toOption)
+      case fun: ScFunction if fun.paramClauses.clauses.forall(_.isImplicit) => fun.declaredType.toOption
+      case _: ScFunction => None
+      case named: ScNamedElement => ScalaPsiUtil.nameContext(named) match {
+        case value: ScValue => value.declaredType
+        case variable: ScVariable => variable.declaredType
+        case _ => None
+      }
+      case _ => None
+    }
+
+    declaredType.flatMap { tp =>
+      val classes = topLevelTypeConstructors(tp).toSeq.map {
+        case ScDesignatorType(c: PsiClass) => Some(c)
+        case ScProjectionType(_, c: PsiClass, _) => Some(c)
+        case _ => None
+      }
+      if (classes.nonEmpty && classes.forall(_.isDefined)) Some(classes.flatten.toSet) else None
+    }
+  }
+
+  private def topLevelTypeConstructors(tp: ScType): Set[ScType] = {
+    tp match {
+      case ScProjectionType(_, element, _) => Set(ScDesignatorType(element))
+      case ScParameterizedType(designator, _) => Set(designator)
+      case tp@ScDesignatorType(o: ScObject) => Set(tp)
+      case ScDesignatorType(v: ScTypedDefinition) =>
+        val valueType: ScType = v.getType(TypingContext.empty).getOrAny
+        topLevelTypeConstructors(valueType)
+      case ScCompoundType(comps, _, _) => comps.flatMap(topLevelTypeConstructors).toSet
+      case _ => Set(tp)
+    }
+  }
+
   def exprType(expr: ScExpression, fromUnder: Boolean): Option[ScType] = {
     expr.getTypeWithoutImplicits(TypingContext.empty, fromUnderscore = fromUnder).toOption.map {
       case tp =>
@@ -167,6 +236,31 @@ class ImplicitCollector(private var place: PsiElement, tp: ScType, expandedTp: S
       true
     }
 
+    /**
+     * Drops the implicit values that can't conform to the searched type, as the classes of their declared types
+     * don't inherit the searched class, before the (much more expensive) conformance checks and type inference.
+     */
+    private def preFilter(candidates: collection.Set[ScalaResolveResult],
+                          clazz: Option[PsiClass]): collection.Set[ScalaResolveResult] = {
+      ImplicitCollector.searches.incrementAndGet()
+      ImplicitCollector.candidates.addAndGet(candidates.size)
+
+      val result = clazz match {
+        case Some(cl) if !isImplicitConversion && !isExtensionConversion &&
+                !ImplicitCollector.AnyClasses.contains(cl.qualifiedName) =>
+          candidates.filter { c =>
+            ImplicitCollector.resultClasses(c.element) match {
+              case Some(classes) => classes.exists(rc => rc == cl || ScalaPsiUtil.cachedDeepIsInheritor(rc, cl))
+              case None => true
+            }
+          }
+        case _ => candidates
+      }
+
+      ImplicitCollector.examined.addAndGet(result.size)
+      result
+    }
+
     override def candidatesS: scala.collection.Set[ScalaResolveResult] = {
       val clazz = ScType.extractClass(tp)
       def forMap(c: ScalaResolveResult, withLocalTypeInference: Boolean, checkFast: Boolean): Option[(ScalaResolveResult, ScSubstitutor)] = {
@@ -386,7 +480,7 @@ class ImplicitCollector(private var place: PsiElement, tp: ScType, expandedTp: S
         }
       }
 
-      val candidates = super.candidatesS
+      val candidates = preFilter(super.candidatesS, clazz)
 
       val mostSpecific: MostSpecificUtil = new MostSpecificUtil(place, 1)
 
@@ -495,18 +589,7 @@ class ImplicitCollector(private var place: PsiElement, tp: ScType, expandedTp: S
     complexity(t) > complexity(u) && topLevelTypeConstructors(t).intersect(topLevelTypeConstructors(u)).nonEmpty
   }
 
-  private def topLevelTypeConstructors(tp: ScType): Set[ScType] = {
-    tp match {
-      case ScProjectionType(_, element, _) => Set(ScDesignatorType(element))
-      case ScParameterizedType(designator, _) => Set(designator)
-      case tp@ScDesignatorType(o: ScObject) => Set(tp)
-      case ScDesignatorType(v: ScTypedDefinition) =>
-        val valueType: ScType = v.getType(TypingContext.empty).getOrAny
-        topLevelTypeConstructors(valueType)
-      case ScCompoundType(comps, _, _) => comps.flatMap(topLevelTypeConstructors).toSet
-      case _ => Set(tp)
-    }
-  }
+  private def topLevelTypeConstructors(tp: ScType): Set[ScType] = ImplicitCollector.topLevelTypeConstructors(tp)
 
   private def complexity(tp: ScType): Int = {
     tp match {
@@ -520,4 +603,11 @@ class ImplicitCollector(private var place: PsiElement, tp: ScType, expandedTp: S
       case _ => 1
     }
   }
-}
\ No newline at end of file
+}
+
+case class ImplicitCandidatesStatistics(searches: Long, candidates: Long, examined: Long) {
+  def filtered: Long = candidates - examined
+
+  override def toString = "%d searches, %d candidates, %d examined (%.1f per search)".format(searches, candidates,
+    examined, if (searches == 0L) 0.0D else examined.toDouble / searches)
+}
@@ -6,7 +6,6 @@ package types
 import com.intellij.openapi.progress.ProgressManager
 import com.intellij.openapi.util.{Computable, RecursionManager}
 import com.intellij.psi._
-import com.intellij.util.containers.ConcurrentWeakHashMap
 import org.jetbrains.plugins.scala.decompiler.DecompilerUtil
 import org.jetbrains.plugins.scala.extensions._
 import org.jetbrains.plugins.scala.lang.psi.api.base.ScFieldId
@@ -1710,8 +1709,9 @@ object Conformance {
 
   val guard = RecursionManager.createGuard("conformance.guard")
 
-  val cache: ConcurrentWeakHashMap[(ScType, ScType, Boolean), (Boolean, ScUndefinedSubstitutor)] =
-    new ConcurrentWeakHashMap[(ScType, ScType, Boolean), (Boolean, ScUndefinedSubstitutor)]()
+  private val MaxCacheSize = 10000
+
+  val cache = new ConformanceCache(MaxCacheSize)
 
   def conformsInner(l: ScType, r: ScType, visited: Set[PsiClass], unSubst: ScUndefinedSubstitutor,
                             checkWeak: Boolean = false): (Boolean, ScUndefinedSubstitutor) = {
@@ -1719,15 +1719,27 @@ object Conformance {
 
     val key = (l, r, checkWeak)
 
-    val tuple = cache.get(key)
-    if (tuple != null) {
-      if (unSubst.isEmpty) return tuple
-      return tuple.copy(_2 = unSubst + tuple._2)
+    // A result depends on the visited classes, so only the results of the checks without them are shared
+    val cacheable = visited.isEmpty
+
+    if (cacheable) {
+      cache.get(key) match {
+        case Some(tuple) =>
+          if (unSubst.isEmpty) return tuple
+          return tuple.copy(_2 = unSubst + tuple._2)
+        case None =>
+      }
     }
+
+    // An explicit check, so that a recursive conformance check doesn't go through the guard: a prevented recursion
+    // would prohibit the result caching of the whole RecursionManager stack, not only of this cache
     if (guard.currentStack().contains(key)) {
       return (false, new ScUndefinedSubstitutor())
     }
 
+    val modificationCount = cache.modificationCount
+    val stamp = guard.markStack()
+
     val uSubst = new ScUndefinedSubstitutor()
 
     def comp(): (Boolean, ScUndefinedSubstitutor) = {
@@ -1777,7 +1789,8 @@ object Conformance {
       def compute(): (Boolean, ScUndefinedSubstitutor) = comp()
     })
     if (res == null) return (false, new ScUndefinedSubstitutor())
-    cache.put(key, res)
+    // The result is incomplete if a recursive check was prevented along the way
+    if (cacheable && stamp.mayCacheNow()) cache.put(key, res, modificationCount)
     if (unSubst.isEmpty) return res
     res.copy(_2 = unSubst + res._2)
   }
@@ -0,0 +1,66 @@
+package org.jetbrains.plugins.scala
+package lang
+package psi
+package types
+
+import java.util
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Results of conformance checks, keyed by the (structurally equal) types that were checked.
+ *
+ * The number of entries is bounded, the least recently used ones are evicted first. The cache is cleared
+ * on any PSI change (see ScalaPsiManager), a result that was computed before the latest clear is not stored,
+ * as it may be based on the outdated PSI.
+ */
+class ConformanceCache(maxSize: Int) {
+  private val map = new util.LinkedHashMap[(ScType, ScType, Boolean), (Boolean, ScUndefinedSubstitutor)](16, 0.75f, true) {
+    override def removeEldestEntry(eldest: util.Map.Entry[(ScType, ScType, Boolean), (Boolean, ScUndefinedSubstitutor)]) =
+      size > maxSize
+  }
+
+  @volatile private var currentModificationCount = 0L
+
+  private val hits = new AtomicLong()
+
+  private val misses = new AtomicLong()
+
+  /**
+   * The number of clears, a computation should read it before it starts and pass it to put
+   */
+  def modificationCount: Long = currentModificationCount
+
+  def get(key: (ScType, ScType, Boolean)): Option[(Boolean, ScUndefinedSubstitutor)] = {
+    val result = Option(map.synchronized(map.get(key)))
+    (if (result.isDefined) hits else misses).incrementAndGet()
+    result
+  }
+
+  def put(key: (ScType, ScType, Boolean), result: (Boolean, ScUndefinedSubstitutor), modificationCount: Long) {
+    map.synchronized {
+      if (modificationCount == currentModificationCount) map.put(key, result)
+    }
+  }
+
+  def clear() {
+    map.synchronized {
+      currentModificationCount += 1
+      map.clear()
+    }
+  }
+
+  def size: Int = map.synchronized(map.size)
+
+  def statistics: ConformanceCacheStatistics = ConformanceCacheStatistics(hits.get, misses.get)
+
+  def resetStatistics() {
+    hits.set(0L)
+    misses.set(0L)
+  }
+}
+
+case class ConformanceCacheStatistics(hits: Long, misses: Long) {
+  def hitRate: Double = if (hits + misses == 0L) 0.0D else hits.toDouble / (hits + misses)
+
+  override def toString = "%d hits, %d misses (%.0f%% hit rate)".format(hits, misses, hitRate * 100)
+}
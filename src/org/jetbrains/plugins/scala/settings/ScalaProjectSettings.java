@@ -53,6 +53,7 @@ public class ScalaProjectSettings  implements PersistentStateComponent<ScalaProj
   private boolean IN_PROCESS_MODE = true;
   private boolean INTERACTIVE_MODE = true;
   private boolean USE_ECLIPSE_COMPATIBILITY = false;
+  private boolean INCREMENTAL_WORKSHEET = false;
 
   private Map<String, String> INTERPOLATED_INJECTION_MAPPING = new HashMap<String, String>();
 
@@ -265,6 +266,14 @@ public class ScalaProjectSettings  implements PersistentStateComponent<ScalaProj
     this.USE_ECLIPSE_COMPATIBILITY = USE_ECLIPSE_COMPATIBILITY;
   }
 
+  public boolean isIncrementalWorksheet() {
+    return INCREMENTAL_WORKSHEET;
+  }
+
+  public void setIncrementalWorksheet(boolean incrementalWorksheet) {
+    INCREMENTAL_WORKSHEET = incrementalWorksheet;
+  }
+
   public boolean isGenerateToStringWithFieldNames() { return GENERATE_TOSTRING_WITH_FIELD_NAMES; }
 
   public void setGenerateToStringWithFieldNames(boolean generateToStringWithFieldNames) {
@@ -49,6 +49,7 @@ public class ScalaProjectSettingsPanel {
   private JComboBox updateChannel;
   private JCheckBox myAotCompletion;
   private JCheckBox useEclipseCompatibilityModeCheckBox;
+  private JCheckBox incrementalWorksheetCheckBox;
   private JTextField scalaTestDefaultSuperClass;
   private JCheckBox useOldImplicitConversionCheckBox;
   private ScalaUiWithDependency.ComponentWithSettings injectionPrefixTable;
@@ -95,6 +96,7 @@ public class ScalaProjectSettingsPanel {
     scalaProjectSettings.setInProcessMode(runWorksheetInTheCheckBox.isSelected());
     scalaProjectSettings.setInteractiveMode(worksheetInteractiveModeCheckBox.isSelected());
     scalaProjectSettings.setUseEclipseCompatibility(useEclipseCompatibilityModeCheckBox.isSelected());
+    scalaProjectSettings.setIncrementalWorksheet(incrementalWorksheetCheckBox.isSelected());
 
     scalaProjectSettings.setSearchAllSymbols(searchAllSymbolsIncludeCheckBox.isSelected());
     scalaProjectSettings.setEnableJavaToScalaConversion(enableConversionOnCopyCheckBox.isSelected());
@@ -149,6 +151,7 @@ public class ScalaProjectSettingsPanel {
     if (scalaProjectSettings.isInteractiveMode() != worksheetInteractiveModeCheckBox.isSelected()) return true;
     if (scalaProjectSettings.isUseEclipseCompatibility() != useEclipseCompatibilityModeCheckBox.isSelected())
       return true;
+    if (scalaProjectSettings.isIncrementalWorksheet() != incrementalWorksheetCheckBox.isSelected()) return true;
 
     if (scalaProjectSettings.isSearchAllSymbols() !=
         searchAllSymbolsIncludeCheckBox.isSelected()) return true;
@@ -208,6 +211,7 @@ public class ScalaProjectSettingsPanel {
     setValue(runWorksheetInTheCheckBox, scalaProjectSettings.isInProcessMode());
     setValue(worksheetInteractiveModeCheckBox, scalaProjectSettings.isInteractiveMode());
     setValue(useEclipseCompatibilityModeCheckBox, scalaProjectSettings.isUseEclipseCompatibility());
+    setValue(incrementalWorksheetCheckBox, scalaProjectSettings.isIncrementalWorksheet());
 
     setValue(searchAllSymbolsIncludeCheckBox, scalaProjectSettings.isSearchAllSymbols());
     setValue(enableConversionOnCopyCheckBox, scalaProjectSettings.isEnableJavaToScalaConversion());
@@ -369,10 +373,10 @@ public class ScalaProjectSettingsPanel {
     useOldImplicitConversionCheckBox.setText("Use old implicit conversion search algorithm");
     panel1.add(useOldImplicitConversionCheckBox, new GridConstraints(17, 0, 1, 1, GridConstraints.ANCHOR_WEST, GridConstraints.FILL_NONE, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
     final JPanel panel3 = new JPanel();
-    panel3.setLayout(new GridLayoutManager(5, 2, new Insets(9, 9, 0, 0), -1, -1));
+    panel3.setLayout(new GridLayoutManager(6, 2, new Insets(9, 9, 0, 0), -1, -1));
     tabbedPane1.addTab("Worksheet", panel3);
     final Spacer spacer2 = new Spacer();
-    panel3.add(spacer2, new GridConstraints(4, 0, 1, 1, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_VERTICAL, 1, GridConstraints.SIZEPOLICY_WANT_GROW, null, null, null, 0, false));
+    panel3.add(spacer2, new GridConstraints(5, 0, 1, 1, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_VERTICAL, 1, GridConstraints.SIZEPOLICY_WANT_GROW, null, null, null, 0, false));
     runWorksheetInTheCheckBox = new JCheckBox();
     runWorksheetInTheCheckBox.setSelected(true);
     runWorksheetInTheCheckBox.setText("Run worksheet in the compiler process");
@@ -388,6 +392,9 @@ public class ScalaProjectSettingsPanel {
     useEclipseCompatibilityModeCheckBox = new JCheckBox();
     useEclipseCompatibilityModeCheckBox.setText("Use \"eclipse compatibility\" mode");
     panel3.add(useEclipseCompatibilityModeCheckBox, new GridConstraints(3, 0, 1, 1, GridConstraints.ANCHOR_WEST, GridConstraints.FILL_NONE, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
+    incrementalWorksheetCheckBox = new JCheckBox();
+    incrementalWorksheetCheckBox.setText("Rerun only the changed statements (in the compiler process only)");
+    panel3.add(incrementalWorksheetCheckBox, new GridConstraints(4, 0, 1, 2, GridConstraints.ANCHOR_WEST, GridConstraints.FILL_NONE, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
     final JPanel panel4 = new JPanel();
     panel4.setLayout(new GridLayoutManager(2, 2, new Insets(9, 9, 0, 0), -1, -1));
     tabbedPane1.addTab("Misc", panel4);
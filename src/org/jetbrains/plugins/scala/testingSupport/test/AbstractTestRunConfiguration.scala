@@ -6,7 +6,9 @@ import java.io.{File, FileOutputStream, IOException, PrintStream}
 import com.intellij.diagnostic.logging.LogConfigurationPanel
 import com.intellij.execution._
 import com.intellij.execution.configurations._
-import com.intellij.execution.runners.{ExecutionEnvironment, ProgramRunner}
+import com.intellij.execution.executors.DefaultRunExecutor
+import com.intellij.execution.process.ProcessHandler
+import com.intellij.execution.runners.{ExecutionEnvironment, JavaProgramPatcher, ProgramRunner}
 import com.intellij.execution.testframework.TestFrameworkRunningModel
 import com.intellij.execution.testframework.sm.{CompositeTestLocationProvider, SMTestRunnerConnectionUtil}
 import com.intellij.execution.testframework.sm.runner.SMTRunnerConsoleProperties
@@ -130,6 +132,25 @@ abstract class AbstractTestRunConfiguration(val project: Project,
   var testKind = TestKind.CLASS
   @BeanProperty
   var showProgressMessages = true
+  @BeanProperty
+  var forkCount = 1
+
+  /**
+   * The durations of the suites in the previous forked runs (in milliseconds), by the suite names
+   */
+  private val suiteDurations = new java.util.HashMap[String, String]()
+
+  def getSuiteDurations: Map[String, Long] = suiteDurations.synchronized {
+    suiteDurations.toMap.flatMap {
+      case (suite, duration) => try Some(suite -> duration.toLong) catch { case _: NumberFormatException => None }
+    }
+  }
+
+  def updateSuiteDurations(durations: Map[String, Long]) {
+    suiteDurations.synchronized {
+      for ((suite, duration) <- durations) suiteDurations.put(suite, duration.toString)
+    }
+  }
 
   def splitTests = testName.split("\n").filter(!_.isEmpty)
 
@@ -157,6 +178,7 @@ abstract class AbstractTestRunConfiguration(val project: Project,
     setTestName(configuration.getTestName)
     setEnvVariables(configuration.getEnvironmentVariables)
     setShowProgressMessages(configuration.getShowProgressMessages)
+    setForkCount(configuration.getForkCount)
   }
 
   def getClazz(path: String, withDependencies: Boolean): PsiClass = {
@@ -361,7 +383,9 @@ abstract class AbstractTestRunConfiguration(val project: Project,
     val state = new JavaCommandLineState(env) with AbstractTestRunConfiguration.TestCommandLinePatcher {
       val getClasses: Seq[String] = classes.map(_.qualifiedName).toSeq
 
-      protected override def createJavaParameters: JavaParameters = {
+      protected override def createJavaParameters: JavaParameters = createJavaParameters(getClasses)
+
+      private def createJavaParameters(suites: Seq[String]): JavaParameters = {
         val params = new JavaParameters()
 
         params.setCharset(null)
@@ -413,12 +437,12 @@ abstract class AbstractTestRunConfiguration(val project: Project,
             val printer: PrintStream = new PrintStream(outputStream)
             if (getFailedTests == null) {
               printer.println("-s")
-              for (cl <- getClasses) {
+              for (cl <- suites) {
                 printer.println(cl)
               }
               if (testKind == TestKind.TEST_NAME && testName != "") {
                 //this is a "by-name" test for single suite, better fail in a known manner then do something undefined
-                assert(getClasses.size == 1)
+                assert(suites.size == 1)
                 for (test <- splitTests) {
                   printer.println("-testName")
                   printer.println(test)
@@ -455,10 +479,10 @@ abstract class AbstractTestRunConfiguration(val project: Project,
         } else {
           if (getFailedTests == null) {
             params.getProgramParametersList.add("-s")
-            for (cl <- getClasses) params.getProgramParametersList.add(cl)
+            for (cl <- suites) params.getProgramParametersList.add(cl)
             if (testKind == TestKind.TEST_NAME && testName != "") {
               //this is a "by-name" test for single suite, better fail in a known manner then do something undefined
-              assert(getClasses.size == 1)
+              assert(suites.size == 1)
               for (test <- splitTests) {
                 params.getProgramParametersList.add("-testName")
                 params.getProgramParametersList.add(test)
@@ -492,8 +516,35 @@ abstract class AbstractTestRunConfiguration(val project: Project,
         params
       }
 
+      /**
+       * The suites are split between several JVMs only for a plain run of all the tests of the suites
+       */
+      private def startTestProcess(executor: Executor): ProcessHandler = {
+        val shards =
+          if (forkCount > 1 && getFailedTests == null && testKind != TestKind.TEST_NAME &&
+                  executor.getId == DefaultRunExecutor.EXECUTOR_ID) {
+            SuiteSharding.shard(getClasses, forkCount, getSuiteDurations)
+          } else Seq(getClasses)
+
+        if (shards.size <= 1) startProcess
+        else {
+          val forks = shards.map(startForkProcess(executor, _))
+          new ForkedTestsProcessHandler(forks, updateSuiteDurations)
+        }
+      }
+
+      /**
+       * A fork is started the same way as the whole run: the program patchers are applied to its parameters,
+       * and the process handler is the one of the JavaCommandLineState (with the charset and the termination listener)
+       */
+      private def startForkProcess(executor: Executor, suites: Seq[String]): ProcessHandler = {
+        val params = createJavaParameters(suites)
+        JavaProgramPatcher.patchJavaParameters(executor, currentConfiguration, params)
+        JavaCommandLineStateUtil.startProcess(CommandLineBuilder.createFromJavaParameters(params, project, true))
+      }
+
       override def execute(executor: Executor, runner: ProgramRunner[_ <: RunnerSettings]): ExecutionResult = {
-        val processHandler = startProcess
+        val processHandler = startTestProcess(executor)
         val runnerSettings = getRunnerSettings
         if (getConfiguration == null) setConfiguration(currentConfiguration)
         val config = getConfiguration
@@ -542,7 +593,9 @@ abstract class AbstractTestRunConfiguration(val project: Project,
     JDOMExternalizer.write(element, "testName", testName)
     JDOMExternalizer.write(element, "testKind", if (testKind != null) testKind.toString else TestKind.CLASS.toString)
     JDOMExternalizer.write(element, "showProgressMessages", showProgressMessages.toString)
+    JDOMExternalizer.write(element, "forkCount", forkCount)
     JDOMExternalizer.writeMap(element, envs, "envs", "envVar")
+    suiteDurations.synchronized(JDOMExternalizer.writeMap(element, suiteDurations, "suiteDurations", "suite"))
     PathMacroManager.getInstance(getProject).collapsePathsRecursively(element)
   }
 
@@ -564,6 +617,11 @@ abstract class AbstractTestRunConfiguration(val project: Project,
     testName = Option(JDOMExternalizer.readString(element, "testName")).getOrElse("")
     testKind = TestKind.fromString(Option(JDOMExternalizer.readString(element, "testKind")).getOrElse("Class"))
     showProgressMessages = JDOMExternalizer.readBoolean(element, "showProgressMessages")
+    forkCount = Math.max(JDOMExternalizer.readInteger(element, "forkCount", 1), 1)
+    suiteDurations.synchronized {
+      suiteDurations.clear()
+      JDOMExternalizer.readMap(element, suiteDurations, "suiteDurations", "suite")
+    }
   }
 }
 
@@ -0,0 +1,179 @@
+package org.jetbrains.plugins.scala
+package testingSupport.test
+
+import java.io.OutputStream
+import java.util.regex.Matcher
+
+import com.intellij.execution.process.{ProcessAdapter, ProcessEvent, ProcessHandler, ProcessOutputTypes}
+import com.intellij.openapi.util.Key
+import jetbrains.buildServer.messages.serviceMessages.ServiceMessage
+import org.jetbrains.plugins.scala.testingSupport.test.ForkedTestsProcessHandler._
+
+import scala.collection.mutable
+
+/**
+ * Merges the output of the forked test JVMs into a single stream: the lines of the forks are not mixed, and
+ * the ids of the test tree nodes are made unique across the forks (the root node "0" is shared), and the test counts
+ * of the forks are summed.
+ *
+ * The durations of the top-level suites are measured, they are passed to onFinished when all the forks are terminated.
+ */
+class ForkedTestsProcessHandler(forks: Seq[ProcessHandler], onFinished: Map[String, Long] => Unit) extends ProcessHandler {
+  private var running = forks.size
+  private var exitCode = 0
+  private var testCount = 0L
+
+  private val durations = mutable.HashMap[String, Long]()
+
+  for ((fork, index) <- forks.zipWithIndex) {
+    fork.addProcessListener(new ForkListener(index))
+  }
+
+  override def startNotify() {
+    super.startNotify()
+    forks.foreach(_.startNotify())
+  }
+
+  override protected def destroyProcessImpl() {
+    forks.foreach(_.destroyProcess())
+  }
+
+  override protected def detachProcessImpl() {
+    forks.foreach(_.detachProcess())
+    notifyProcessDetached()
+  }
+
+  override def detachIsDefault() = false
+
+  override def getProcessInput: OutputStream = null
+
+  private class ForkListener(index: Int) extends ProcessAdapter {
+    private val buffers = mutable.HashMap[Key[_], StringBuilder]()
+
+    // the top-level suites that are running in this fork: node id -> (suite, start time)
+    private val suites = mutable.HashMap[String, (String, Long)]()
+
+    override def onTextAvailable(event: ProcessEvent, outputType: Key[_]) {
+      val buffer = buffers.synchronized(buffers.getOrElseUpdate(outputType, new StringBuilder))
+      val lines = buffer.synchronized {
+        buffer append event.getText
+        val end = buffer.lastIndexOf("\n") + 1
+        val text = buffer.substring(0, end)
+        buffer.delete(0, end)
+        text
+      }
+      if (lines.nonEmpty) print(lines, outputType)
+    }
+
+    override def processTerminated(event: ProcessEvent) {
+      for ((outputType, buffer) <- buffers.synchronized(buffers.toList)) {
+        val rest = buffer.synchronized(buffer.toString())
+        if (rest.nonEmpty) print(rest, outputType)
+      }
+      forkTerminated(event.getExitCode)
+    }
+
+    private def print(text: String, outputType: Key[_]) {
+      val result = if (outputType == ProcessOutputTypes.STDOUT) {
+        text.split("(?<=\n)").map { line =>
+          if (line.contains(ServiceMessage.SERVICE_MESSAGE_START)) {
+            parse(line) match {
+              case Some(message) if message.getMessageName == "testCount" => countTests(line, message)
+              case message =>
+                message.foreach(measure)
+                renumber(line)
+            }
+          } else line
+        }.mkString
+      } else text
+
+      ForkedTestsProcessHandler.this.synchronized {
+        notifyTextAvailable(result, outputType)
+      }
+    }
+
+    private def renumber(line: String): String = {
+      val matcher = NodeIdPattern.matcher(line)
+      val result = new StringBuffer
+      while (matcher.find()) {
+        val id = matcher.group(2)
+        val newId = if (id == RootNodeId) id else (id.toLong * forks.size + index).toString
+        matcher.appendReplacement(result, Matcher.quoteReplacement(matcher.group(1) + "='" + newId + "'"))
+      }
+      matcher.appendTail(result)
+      result.toString
+    }
+
+    private def parse(line: String): Option[ServiceMessage] = {
+      try {
+        Option(ServiceMessage.parse(line.trim))
+      } catch {
+        case _: Exception => None
+      }
+    }
+
+    /**
+     * Each fork reports the count of its own tests, the console gets the total of the forks that reported so far
+     */
+    private def countTests(line: String, message: ServiceMessage): String = {
+      val count = try {
+        message.getAttributes.get("count").toLong
+      } catch {
+        case _: NumberFormatException => return line
+      }
+      val total = ForkedTestsProcessHandler.this.synchronized {
+        testCount += count
+        testCount
+      }
+      ServiceMessage.SERVICE_MESSAGE_START + "testCount count='" + total + "']" + (if (line.endsWith("\n")) "\n" else "")
+    }
+
+    private def measure(message: ServiceMessage) {
+      val attributes = message.getAttributes
+      val nodeId = attributes.get("nodeId")
+      message.getMessageName match {
+        case "testSuiteStarted" if nodeId != null && attributes.get("parentNodeId") == RootNodeId =>
+          suites.put(nodeId, (suiteName(attributes.get("name"), attributes.get("locationHint")), System.currentTimeMillis()))
+        case "testSuiteFinished" if nodeId != null =>
+          suites.remove(nodeId).foreach {
+            case (suite, start) =>
+              val duration = System.currentTimeMillis() - start
+              ForkedTestsProcessHandler.this.synchronized {
+                durations.put(suite, durations.getOrElse(suite, 0L) + duration)
+              }
+          }
+        case _ =>
+      }
+    }
+  }
+
+  private def forkTerminated(forkExitCode: Int) {
+    val finished = synchronized {
+      running -= 1
+      if (forkExitCode != 0) exitCode = forkExitCode
+      if (running == 0) Some(durations.toMap) else None
+    }
+
+    finished.foreach { result =>
+      onFinished(result)
+      notifyProcessTerminated(exitCode)
+    }
+  }
+}
+
+object ForkedTestsProcessHandler {
+  private val RootNodeId = "0"
+
+  private val NodeIdPattern = "\\b(nodeId|parentNodeId)='(\\d+)'".r.pattern
+
+  private val LocationPrefix = "scala://"
+
+  /**
+   * The qualified class name from the location hint, if any
+   */
+  private def suiteName(name: String, locationHint: String): String = locationHint match {
+    case null => name
+    case hint if hint.startsWith(LocationPrefix) => hint.substring(LocationPrefix.length).takeWhile(_ != '?')
+    case _ => name
+  }
+}
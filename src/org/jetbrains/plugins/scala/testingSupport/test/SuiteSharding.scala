@@ -0,0 +1,42 @@
+package org.jetbrains.plugins.scala
+package testingSupport.test
+
+import scala.collection.mutable.ArrayBuffer
+
+/**
+ * Splits the suites of a test run between forked JVMs, so that the forks take about the same time.
+ */
+object SuiteSharding {
+  /**
+   * The longest suites are assigned first, each one to the fork with the least total duration. A suite without
+   * a recorded duration is assumed to take the mean of the known ones.
+   *
+   * @param durations the durations of the previous runs (in milliseconds), by the qualified or the simple suite names
+   * @return the non-empty shards, at most forkCount of them
+   */
+  def shard(suites: Seq[String], forkCount: Int, durations: Map[String, Long]): Seq[Seq[String]] = {
+    if (forkCount <= 1 || suites.size <= 1) return Seq(suites)
+
+    def durationOf(suite: String) = durations.get(suite) orElse durations.get(simpleName(suite))
+
+    val known = suites.flatMap(durationOf)
+    val default = if (known.isEmpty) 1L else Math.max(known.sum / known.size, 1L)
+
+    val sorted = suites.map(suite => (suite, durationOf(suite).getOrElse(default))).sortBy {
+      case (suite, duration) => (-duration, suite)
+    }
+
+    val shards = Array.fill(Math.min(forkCount, suites.size))(new ArrayBuffer[String])
+    val loads = new Array[Long](shards.length)
+
+    for ((suite, duration) <- sorted) {
+      val i = loads.indexOf(loads.min)
+      shards(i) += suite
+      loads(i) += duration
+    }
+
+    shards.toSeq.filter(_.nonEmpty).map(_.toSeq)
+  }
+
+  def simpleName(suite: String): String = suite.substring(suite.lastIndexOf('.') + 1)
+}
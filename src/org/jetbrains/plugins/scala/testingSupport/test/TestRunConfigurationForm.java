@@ -33,6 +33,8 @@ import java.util.Map;
  * @since 5/15/12
  */
 public class TestRunConfigurationForm {
+    private static final int MAX_FORK_COUNT = 64;
+
     private JPanel myPanel;
     private TextFieldWithBrowseButton testClassTextField;
     private RawCommandLineEditor VMParamsTextField;
@@ -64,9 +66,9 @@ public class TestRunConfigurationForm {
      */
     private void $$$setupUI$$$() {
         myPanel = new JPanel();
-        myPanel.setLayout(new GridLayoutManager(12, 1, new Insets(0, 0, 0, 0), -1, -1));
+        myPanel.setLayout(new GridLayoutManager(13, 1, new Insets(0, 0, 0, 0), -1, -1));
         final Spacer spacer1 = new Spacer();
-        myPanel.add(spacer1, new GridConstraints(11, 0, 1, 1, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_VERTICAL, 1, GridConstraints.SIZEPOLICY_WANT_GROW, null, null, null, 0, false));
+        myPanel.add(spacer1, new GridConstraints(12, 0, 1, 1, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_VERTICAL, 1, GridConstraints.SIZEPOLICY_WANT_GROW, null, null, null, 0, false));
         final JLabel label1 = new JLabel();
         label1.setText("VM parameters:");
         myPanel.add(label1, new GridConstraints(1, 0, 1, 1, GridConstraints.ANCHOR_WEST, GridConstraints.FILL_NONE, GridConstraints.SIZEPOLICY_FIXED, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
@@ -130,6 +132,16 @@ public class TestRunConfigurationForm {
         myShowProgressMessagesCheckBox.setMnemonic('P');
         myShowProgressMessagesCheckBox.setDisplayedMnemonicIndex(0);
         myPanel.add(myShowProgressMessagesCheckBox, new GridConstraints(10, 0, 1, 1, GridConstraints.ANCHOR_WEST, GridConstraints.FILL_NONE, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
+        final JPanel panel3 = new JPanel();
+        panel3.setLayout(new GridLayoutManager(1, 3, new Insets(0, 0, 0, 0), -1, -1));
+        myPanel.add(panel3, new GridConstraints(11, 0, 1, 1, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_BOTH, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, null, null, null, 0, false));
+        final JLabel label7 = new JLabel();
+        label7.setText("Number of forked JVMs:");
+        panel3.add(label7, new GridConstraints(0, 0, 1, 1, GridConstraints.ANCHOR_WEST, GridConstraints.FILL_NONE, GridConstraints.SIZEPOLICY_FIXED, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
+        forkCountSpinner = new JSpinner();
+        panel3.add(forkCountSpinner, new GridConstraints(0, 1, 1, 1, GridConstraints.ANCHOR_WEST, GridConstraints.FILL_HORIZONTAL, GridConstraints.SIZEPOLICY_CAN_GROW, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
+        final Spacer spacer4 = new Spacer();
+        panel3.add(spacer4, new GridConstraints(0, 2, 1, 1, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_HORIZONTAL, GridConstraints.SIZEPOLICY_WANT_GROW, 1, null, null, null, 0, false));
         environmentVariables = new EnvironmentVariablesComponent();
         myPanel.add(environmentVariables, new GridConstraints(3, 0, 1, 1, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_HORIZONTAL, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, null, null, null, 0, false));
     }
@@ -164,6 +176,7 @@ public class TestRunConfigurationForm {
     private JLabel testNameLabel;
     private JCheckBox myShowProgressMessagesCheckBox;
     private EnvironmentVariablesComponent environmentVariables;
+    private JSpinner forkCountSpinner;
 
     public static enum TestKind {
         ALL_IN_PACKAGE, CLASS, TEST_NAME;
@@ -218,6 +231,8 @@ public class TestRunConfigurationForm {
 
         myShowProgressMessagesCheckBox.setSelected(configuration.getShowProgressMessages());
 
+        forkCountSpinner.setModel(new SpinnerNumberModel(configuration.getForkCount(), 1, MAX_FORK_COUNT, 1));
+
         for (TestKind testKind : TestKind.values()) {
             kindComboBox.addItem(testKind);
         }
@@ -334,6 +349,7 @@ public class TestRunConfigurationForm {
         setTestName(configuration.getTestName());
         environmentVariables.setEnvs(configuration.getEnvVariables());
         setShowProgressMessages(configuration.getShowProgressMessages());
+        setForkCount(configuration.getForkCount());
     }
 
     public TestKind getSelectedKind() {
@@ -404,6 +420,14 @@ public class TestRunConfigurationForm {
         myShowProgressMessagesCheckBox.setSelected(b);
     }
 
+    public int getForkCount() {
+        return (Integer) forkCountSpinner.getValue();
+    }
+
+    public void setForkCount(int forkCount) {
+        forkCountSpinner.setValue(forkCount);
+    }
+
     public JPanel getPanel() {
         return myPanel;
     }
@@ -168,6 +168,7 @@ class WorksheetFileHook(private val project: Project) extends ProjectComponent {
       if (ScalaFileType.WORKSHEET_EXTENSION == file.getExtension) {
         val d = doc(source, file)
         if (d != null) WorksheetAutoRunner.getInstance(source.getProject) removeListener d
+        WorksheetCompiler.releaseIncrementalState(file.getCanonicalPath)
       }
     }
 
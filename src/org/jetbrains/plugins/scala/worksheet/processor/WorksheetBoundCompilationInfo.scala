@@ -29,4 +29,8 @@ object WorksheetBoundCompilationInfo {
       }
     }
   }
+
+  def outputDirectory(filePath: String): Option[File] = synchronized {
+    Option(cache get filePath).map(_._3)
+  }
 }
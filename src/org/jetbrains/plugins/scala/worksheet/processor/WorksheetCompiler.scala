@@ -15,7 +15,7 @@ import com.intellij.openapi.wm.{ToolWindowId, ToolWindowManager}
 import com.intellij.psi.{PsiErrorElement, PsiFile}
 import com.intellij.ui.content.{Content, ContentFactory, MessageView}
 import com.intellij.util.ui.MessageCategory
-import org.jetbrains.plugins.scala.compiler.{CompileServerLauncher, ScalaCompileServerSettings}
+import org.jetbrains.plugins.scala.compiler.{CompileServerLauncher, RemoteWorksheetRelease, ScalaCompileServerSettings}
 import org.jetbrains.plugins.scala.lang.psi.api.ScalaFile
 import org.jetbrains.plugins.scala.settings.ScalaProjectSettings
 import org.jetbrains.plugins.scala.worksheet.actions.RunWorksheetAction
@@ -48,7 +48,18 @@ class WorksheetCompiler {
     val oldContent = contentManager findContent ERROR_CONTENT_NAME
     if (oldContent != null) contentManager.removeContent(oldContent, true)
 
-    WorksheetSourceProcessor.process(worksheetFile, ifEditor, iteration) match {
+    val worksheetPath = worksheetVirtual.getCanonicalPath
+
+    // the instances of the previous segments are kept in the compile server, so only the in-process mode can reuse them
+    val statements =
+      if (runType == InProcessServer && ScalaProjectSettings.getInstance(project).isIncrementalWorksheet)
+        WorksheetSourceProcessor.incrementalStatements(worksheetFile)
+      else None
+    if (statements.isEmpty) WorksheetIncrementalState.reset(worksheetPath)
+
+    val segment = statements.map(WorksheetIncrementalState.nextSegment(worksheetPath, _))
+
+    WorksheetSourceProcessor.process(worksheetFile, ifEditor, iteration, segment) match {
       case Left((code, name)) =>
         FileUtil.writeToFile(tempFile, code)
 
@@ -58,7 +69,11 @@ class WorksheetCompiler {
           WorksheetEditorPrinter.newWorksheetUiFor(editor, worksheetVirtual)
         worksheetPrinter.scheduleWorksheetUpdate()
 
-        val consumer = new RemoteServerConnector.CompilerInterfaceImpl(task, worksheetPrinter, None, auto)
+        val consumer = new RemoteServerConnector.CompilerInterfaceImpl(task, worksheetPrinter, None, auto) {
+          override def incrementalStateLost() {
+            WorksheetIncrementalState.reset(worksheetPath)
+          }
+        }
 
         task.start(new Runnable {
           override def run() {
@@ -68,6 +83,8 @@ class WorksheetCompiler {
             ).compileAndRun(new Runnable {
               override def run() {
                 if (runType == OutOfProcessServer) callback(name, outputDir.getAbsolutePath)
+
+                for (s <- segment; st <- statements) WorksheetIncrementalState.segmentCompiled(worksheetPath, s, name, st)
               }
             }, worksheetVirtual, consumer)
           }
@@ -127,6 +144,22 @@ object WorksheetCompiler extends WorksheetPerFileConfig {
     setEnabled(file, MAKE_BEFORE_RUN, isMake)
   }
 
+  /**
+   * Called when a worksheet is closed, the compile server doesn't need to keep its evaluated segments anymore
+   */
+  def releaseIncrementalState(worksheetPath: String) {
+    WorksheetIncrementalState.reset(worksheetPath)
+
+    for (outputDir <- WorksheetBoundCompilationInfo.outputDirectory(worksheetPath);
+         port <- CompileServerLauncher.instance.port if CompileServerLauncher.instance.running) {
+      ApplicationManager.getApplication.executeOnPooledThread(new Runnable {
+        override def run() {
+          new RemoteWorksheetRelease(port).release(Seq(outputDir))
+        }
+      })
+    }
+  }
+
   def getRunType(project: Project): WorksheetMakeType = {
     if (ScalaCompileServerSettings.getInstance().COMPILE_SERVER_ENABLED) {
       if (ScalaProjectSettings.getInstance(project).isInProcessMode)
@@ -0,0 +1,57 @@
+package org.jetbrains.plugins.scala
+package worksheet.processor
+
+import java.util
+
+import org.jetbrains.plugins.scala.worksheet.processor.WorksheetSourceProcessor.IncrementalSegment
+
+/**
+ * The segments of the incrementally run worksheets, as they were sent to the compile server.
+ */
+object WorksheetIncrementalState {
+  /**
+   * @param className  the main class name of the segment
+   * @param statements the top-level statements of the segment
+   */
+  case class Segment(className: String, statements: Seq[String])
+
+  private val cache = new util.HashMap[String, Seq[Segment]]()
+
+  /**
+   * Finds the previous segments that can be reused: only the statements at or after the first changed one are run
+   * again. If nothing is changed, the last segment is run again.
+   */
+  def nextSegment(filePath: String, statements: Seq[String]): IncrementalSegment = {
+    val previous = synchronized(Option(cache get filePath) getOrElse Seq.empty)
+    val previousStatements = previous.flatMap(_.statements)
+
+    val firstChanged = previousStatements.zip(statements).takeWhile {
+      case (oldStatement, newStatement) => oldStatement == newStatement
+    }.length
+
+    val ends = previous.scanLeft(0)(_ + _.statements.length).tail
+    val unchanged = previous.zip(ends).takeWhile(_._2 <= firstChanged).map(_._1)
+
+    val reused =
+      if (unchanged.length == previous.length && previousStatements.length == statements.length) unchanged.dropRight(1)
+      else unchanged
+
+    IncrementalSegment(reused.map(_.className), reused.map(_.statements.length).sum)
+  }
+
+  /**
+   * Called when a segment is compiled, the segments after its previous one are not available anymore.
+   */
+  def segmentCompiled(filePath: String, segment: IncrementalSegment, className: String, statements: Seq[String]) {
+    synchronized {
+      val previous = Option(cache get filePath) getOrElse Seq.empty
+      val reused = previous.take(segment.previousClasses.length)
+
+      cache.put(filePath, reused :+ Segment(className, statements drop segment.from))
+    }
+  }
+
+  def reset(filePath: String) {
+    synchronized(cache remove filePath)
+  }
+}
@@ -5,6 +5,7 @@ import com.intellij.openapi.editor.Editor
 import com.intellij.openapi.util.Key
 import com.intellij.openapi.util.text.StringUtil
 import com.intellij.psi._
+import org.jetbrains.jps.incremental.scala.remote.WorksheetMarkers
 import org.jetbrains.plugins.scala.lang.lexer.ScalaTokenTypes
 import org.jetbrains.plugins.scala.lang.psi.ScalaPsiElement
 import org.jetbrains.plugins.scala.lang.psi.api.ScalaFile
@@ -28,13 +29,15 @@ import scala.collection.mutable
  */
 object WorksheetSourceProcessor {
   val END_TOKEN_MARKER = "###worksheet###$$end$$"
-  val END_OUTPUT_MARKER = "###worksheet###$$end$$!@#$%^&*(("
+  val END_OUTPUT_MARKER = WorksheetMarkers.END_OUTPUT_MARKER
   val END_GENERATED_MARKER = "/* ###worksheet### generated $$end$$ */"
 
   val WORKSHEET_PRE_CLASS_KEY = new Key[String]("WorksheetPreClassKey")
 
   private val PRINT_ARRAY_NAME = "print$$$Worksheet$$$Array$$$"
 
+  private val PREVIOUS_INSTANCE_NAME = "prev$$worksheet"
+
   private val PRINT_ARRAY_TEXT =
     s"""
       |def $PRINT_ARRAY_NAME(an: Any): String = {
@@ -60,10 +63,27 @@ object WorksheetSourceProcessor {
     } else None
   }
   
+  /**
+   * A worksheet that is run incrementally is split into segments, each segment is compiled into its own class
+   * and its instance is kept in the compile server along with the instances of the previous segments.
+   *
+   * @param previousClasses the main class names of the previous segments that are reused, the oldest first
+   * @param from            the index of the first top-level statement of the segment (see [[incrementalStatements]])
+   */
+  case class IncrementalSegment(previousClasses: Seq[String], from: Int)
+
+  /**
+   * @return the texts of the top-level statements (including whitespaces and comments), or None
+   *         if the worksheet can't be run incrementally
+   */
+  def incrementalStatements(srcFile: ScalaFile): Option[Seq[String]] =
+    if (!srcFile.isWorksheetFile || isForObject(srcFile)) None else Some(srcFile.getChildren.map(_.getText).toSeq)
+
   /**
    * @return (Code, Main class name)
    */
-  def process(srcFile: ScalaFile, ifEditor: Option[Editor], iterNumber: Int): Either[(String, String), PsiErrorElement] = {
+  def process(srcFile: ScalaFile, ifEditor: Option[Editor], iterNumber: Int,
+              incremental: Option[IncrementalSegment] = None): Either[(String, String), PsiErrorElement] = {
     if (!srcFile.isWorksheetFile) return Right(null)
     
     val name = s"A$$A$iterNumber"
@@ -93,18 +113,53 @@ object WorksheetSourceProcessor {
     val printMethodName = "println"
 
     val ifDocument = ifEditor map (_.getDocument)
-    val classPrologue = name // s"$name ${if (iterNumber > 0) s"extends A${iterNumber - 1}" }" //todo disabled until I implement incremental code generation
-    val objectPrologue = s"${packStmt}import _root_.org.jetbrains.plugins.scala.worksheet.$macroPrinterName\n\n object $name { \n"
+    val from = incremental.map(_.from) getOrElse 0
+    val previousClasses = incremental.map(_.previousClasses) getOrElse Seq.empty
+    val previousClassName = previousClasses.lastOption.map { qualifiedName =>
+      val simpleName = qualifiedName.substring(qualifiedName.lastIndexOf('.') + 1)
+      s"$simpleName.$simpleName"
+    }
+
+    def previousInstancePaths(instance: String) =
+      previousClasses.indices.map(i => instance + s".$PREVIOUS_INSTANCE_NAME" * (i + 1))
+
+    val classPrologue = previousClassName map {
+      case previous => s"$name(val $PREVIOUS_INSTANCE_NAME: $previous)"
+    } getOrElse name
+    // the members of the previous segments are imported on the first line, so that the lines of the class still match
+    // the lines of the worksheet
+    val classImports = previousInstancePaths("this").map(path => s"import $path._; ").mkString
+
+    val objectIncrementalMembers = incremental map {
+      case _ =>
+        s"var ${WorksheetMarkers.INSTANCE_METHOD}: AnyRef = null; " + previousClasses.lastOption.map {
+          case previous => s"""def ${WorksheetMarkers.PREVIOUS_SEGMENT_METHOD} = "$previous"; """
+        }.getOrElse("")
+    } getOrElse ""
+    val objectPrologue = s"${packStmt}import _root_.org.jetbrains.plugins.scala.worksheet.$macroPrinterName\n\n object $name { $objectIncrementalMembers\n"
     
     val startText = ""
     
-    val classRes = new StringBuilder(s"final class $classPrologue { \n")
-    val objectRes = new StringBuilder(s"def main($runPrinterName: Any) ${withCompilerVersion("", " : Unit = ", "")} { \n val $instanceName = new $name \n")
+    val classRes = new StringBuilder(s"final class $classPrologue { $classImports\n")
+    val objectRes = new StringBuilder(previousClassName map {
+      case previous =>
+        s"def main($runPrinterName: Any, $PREVIOUS_INSTANCE_NAME: Any) ${withCompilerVersion("", " : Unit = ", "")} { \n " +
+          s"val $instanceName = new $name($PREVIOUS_INSTANCE_NAME.asInstanceOf[$previous]) \n"
+      case _ =>
+        s"def main($runPrinterName: Any) ${withCompilerVersion("", " : Unit = ", "")} { \n val $instanceName = new $name \n"
+    })
+    if (incremental.isDefined) objectRes append s"${WorksheetMarkers.INSTANCE_METHOD} = $instanceName \n"
+
+    // the members of the previous segments are not members of the instance, so they are accessed through the imports
+    val instanceImports = (instanceName +: previousInstancePaths(instanceName)).map(path => s"import $path._").mkString("; ")
+    def fromInstance(member: String) =
+      if (previousClasses.isEmpty) s"$instanceName.$member" else s"{ $instanceImports; $member }"
     
     var resCount = 0
     var assignCount = 0
     
-    val eraseClassName = ".replace(\"" + instanceName + ".\", \"\")"
+    val eraseClassName = ".replace(\"" + instanceName + ".\", \"\")" +
+      (if (previousClasses.isEmpty) "" else ".replace(\"" + PREVIOUS_INSTANCE_NAME + ".\", \"\")")
     val erasePrefixName = ".stripPrefix(\"" + name + "$" + name + "$\")"
     
     @inline def insertNlsFromWs(psi: PsiElement) = psi.getNextSibling match {
@@ -213,8 +268,8 @@ object WorksheetSourceProcessor {
       appendPsiLineInfo(imp, lineNums)
     }
 
-    def processLocalImport(imp: ScImportStmt): Boolean = {
-      if (imp.importExprs.length < 1) return false
+    def findLocalQualifier(imp: ScImportStmt): Option[(ScStableCodeReferenceElement, PsiElement)] = {
+      if (imp.importExprs.length < 1) return None
 
       var currentQual = imp.importExprs(0).qualifier
       var lastFound: Option[(ScStableCodeReferenceElement, PsiElement)] = None
@@ -228,7 +283,11 @@ object WorksheetSourceProcessor {
         currentQual = currentQual.qualifier.orNull
       }
 
-      lastFound exists {
+      lastFound
+    }
+
+    def processLocalImport(imp: ScImportStmt): Boolean = {
+      findLocalQualifier(imp) exists {
         case (lastQualifier, el) =>
           val text = imp.getText
           val qualifierName = lastQualifier.qualName
@@ -237,7 +296,7 @@ object WorksheetSourceProcessor {
             s"get$$$$instance$$$$$qualifierName" else qualifierName
 
           objectRes append
-            s";{val $qualifierName = $instanceName.$memberName; $printMethodName($macroPrinterName.printImportInfo({$text;}))}\n"
+            s";{val $qualifierName = ${fromInstance(memberName)}; $printMethodName($macroPrinterName.printImportInfo({$text;}))}\n"
           classRes append s"$text${insertNlsFromWs(imp)}"
 
           appendPsiLineInfo(imp, lineNums)
@@ -246,7 +305,7 @@ object WorksheetSourceProcessor {
     }
 
     def withTempVar(callee: String, withInstance: Boolean = true) =
-      "{val $$temp$$ = " + (if (withInstance) instanceName + "." else "") + callee + s"; $macroPrinterName.printDefInfo(" + "$$temp$$" + ")" +
+      "{val $$temp$$ = " + (if (withInstance) fromInstance(callee) else callee) + s"; $macroPrinterName.printDefInfo(" + "$$temp$$" + ")" +
         eraseClassName + " + \" = \" + ( " + PRINT_ARRAY_NAME + "($$temp$$) )" + erasePrefixName + "}"
 
     def insertUntouched(exprs: mutable.Iterable[PsiElement]) {
@@ -285,7 +344,35 @@ object WorksheetSourceProcessor {
       case other => other.getNode.getChildren(null) map (_.getPsi)
     }
 
-    rootChildren foreach {
+    /**
+     * A statement of a previous segment is not compiled again, only the lines it takes are kept in the class,
+     * and the imports and the result numbers are the same as if it was
+     */
+    def skipStatement(psi: PsiElement) {
+      psi match {
+        case assign: ScAssignStmt if !assign.getLExpression.isInstanceOf[ScMethodCall] => assignCount += 1
+        case _: ScExpression => resCount += 1
+        case _ =>
+      }
+
+      psi match {
+        case imp: ScImportStmt if findLocalQualifier(imp).isEmpty => importStmts += (imp.getText + insertNlsFromWs(imp))
+        case comm: PsiComment => appendCommentToClass(comm)
+        case _: PsiWhiteSpace | _: PsiErrorElement =>
+        case varDef: ScVariableDefinition => classRes append StringUtil.repeat("\n", varDef.getText count (_ == '\n'))
+        case imp: ScImportStmt => classRes append imp.getText append insertNlsFromWs(imp)
+        case other =>
+          classRes append StringUtil.repeat("\n", other.getText count (_ == '\n'))
+          insertNlsFromWs(other) match {
+            case ";" =>
+            case nls => classRes append nls
+          }
+      }
+    }
+
+    rootChildren.take(from) foreach skipStatement
+
+    rootChildren.drop(from) foreach {
       case tpe: ScTypeAlias =>
         withPrecomputeLines(tpe, {
           objectRes append withPrint(s"defined type alias ${tpe.name}")
@@ -295,7 +382,7 @@ object WorksheetSourceProcessor {
 
         withPrecomputeLines(fun, {
           objectRes append (printMethodName + "(\"" + fun.getName + ": \" + " + macroPrinterName +
-            s".printGeneric({import $instanceName._ ;" + fun.getText.stripPrefix(hadMods) + " })" + eraseClassName + ")\n")
+            s".printGeneric({$instanceImports ;" + fun.getText.stripPrefix(hadMods) + " })" + eraseClassName + ")\n")
         })
       case tpeDef: ScTypeDefinition =>
         withPrecomputeLines(tpeDef, {
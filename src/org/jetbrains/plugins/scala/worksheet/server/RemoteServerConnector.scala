@@ -186,10 +186,42 @@ object RemoteServerConnector {
       task addMessage message
     }
 
+    private val lastLine = new StringBuilder
+
+    /**
+     * The output comes in chunks of several lines, a line can be split between the chunks
+     */
     override def worksheetOutput(text: String) {
-      worksheetPrinter.processLine(text)
+      var start = 0
+      var end = text.indexOf('\n')
+
+      while (end != -1) {
+        val line = if (lastLine.isEmpty) text.substring(start, end + 1) else {
+          val joined = lastLine.toString() + text.substring(start, end + 1)
+          lastLine.clear()
+          joined
+        }
+        processLine(line)
+
+        start = end + 1
+        end = text.indexOf('\n', start)
+      }
+
+      if (start < text.length) lastLine append text.substring(start)
     }
 
+    private def processLine(line: String) {
+      if (line startsWith WorksheetMarkers.STATE_LOST_MARKER) {
+        incrementalStateLost()
+        worksheetPrinter internalError "the results of the previous run are not available anymore, please run the worksheet again"
+      } else worksheetPrinter.processLine(line)
+    }
+
+    /**
+     * Called when the compile server doesn't have the previous segments of an incrementally run worksheet
+     */
+    def incrementalStateLost() {}
+
     override def trace(thr: Throwable) {
       worksheetPrinter internalError s"${thr.getMessage}\n${thr.getStackTrace mkString "\n"}"
     }
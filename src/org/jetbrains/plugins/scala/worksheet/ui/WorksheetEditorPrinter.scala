@@ -26,6 +26,7 @@ import com.intellij.openapi.util.Key
 import com.intellij.openapi.util.text.StringUtil
 import com.intellij.openapi.vfs.VirtualFile
 import com.intellij.openapi.vfs.newvfs.FileAttribute
+import com.intellij.openapi.wm.StatusBar
 import com.intellij.psi._
 import com.intellij.ui.JBSplitter
 import org.jetbrains.plugins.scala
@@ -33,6 +34,7 @@ import org.jetbrains.plugins.scala.lang.psi.api.ScalaFile
 import org.jetbrains.plugins.scala.settings.ScalaProjectSettings
 import org.jetbrains.plugins.scala.worksheet.processor.{FileAttributeUtilCache, WorksheetSourceProcessor}
 import org.jetbrains.plugins.scala.worksheet.runconfiguration.WorksheetViewerInfo
+import org.jetbrains.plugins.scala.worksheet.server.WorksheetProcessManager
 
 import _root_.scala.collection.mutable.ArrayBuffer
 import _root_.scala.util.Random
@@ -64,6 +66,22 @@ class WorksheetEditorPrinter(originalEditor: Editor, worksheetViewer: Editor, fi
 
   @volatile private var buffed = 0
 
+  private val startTime = System.currentTimeMillis()
+  private var receivedLines = 0
+
+  /**
+   * The length of the text that was passed to the viewer, after the first update the new text is appended
+   */
+  private var flushedLength = 0
+  private var viewerReplaced = false
+
+  // the updates that are not applied yet are merged, so that there is a single update in the event queue
+  private val pendingText = new StringBuilder
+  private val pendingFoldings = ArrayBuffer[(Int, Int, Int, Int)]()
+  private var pendingReplace = false
+  private var pendingLast = false
+  private var updateScheduled = false
+
   originalEditor.asInstanceOf[EditorImpl].setScrollToCaret(false)
   worksheetViewer.asInstanceOf[EditorImpl].setScrollToCaret(false)
   
@@ -75,7 +93,9 @@ class WorksheetEditorPrinter(originalEditor: Editor, worksheetViewer: Editor, fi
     timer.start()
   }
   
-  def processLine(line: String): Boolean = {
+  def processLine(line: String): Boolean = synchronized {
+    if (terminated) return true
+
     if (line.stripSuffix("\n") == WorksheetSourceProcessor.END_OUTPUT_MARKER) {
       flushBuffer()
       
@@ -83,6 +103,16 @@ class WorksheetEditorPrinter(originalEditor: Editor, worksheetViewer: Editor, fi
       return true
     }
 
+    receivedLines += 1
+    if (totalCount >= WorksheetEditorPrinter.RUN_OUTPUT_LIMIT) {
+      outputBuffer append WorksheetEditorPrinter.RUN_LIMIT_MESSAGE
+      flushBuffer()
+
+      terminated = true
+      if (file != null) WorksheetProcessManager.stop(file.getVirtualFile)
+      return true
+    }
+
     if (!isInsideOutput && line.trim.length == 0) {
       outputBuffer append line
       totalCount += 1
@@ -175,17 +205,21 @@ class WorksheetEditorPrinter(originalEditor: Editor, worksheetViewer: Editor, fi
     cutoffPrinted = false
   }
   
-  def flushBuffer() {
+  def flushBuffer(): Unit = synchronized {
     if (!inited) init()
     if (terminated) return
     val str = getCurrentText
     
     if (timer.isRunning) timer.stop()
     
-    updateWithPersistentScroll(viewerDocument, str)
+    scheduleUpdate(last = true)
     
     outputBuffer.clear()
     prefix = ""
+    flushedLength = 0
+
+    val time = Math.max(System.currentTimeMillis() - startTime, 1L)
+    StatusBar.Info.set(s"Worksheet output: $receivedLines lines, ${receivedLines * 1000L / time} lines/s", project)
 
     extensions.invokeLater {
       getViewerEditor.getMarkupModel.removeAllHighlighters()
@@ -201,13 +235,12 @@ class WorksheetEditorPrinter(originalEditor: Editor, worksheetViewer: Editor, fi
 //    flushFolding()
   }
   
-  def midFlush() {
-    if (terminated || buffed == 0) return
-        
-    val str = getCurrentText
+  def midFlush(): Unit = synchronized {
+    if (terminated || buffed == 0 || !inited) return
+
     buffed = 0
 
-    updateWithPersistentScroll(viewerDocument, str)
+    scheduleUpdate(last = false)
 //    flushFolding()
 //    incUpdate(str)
   }
@@ -223,46 +256,88 @@ class WorksheetEditorPrinter(originalEditor: Editor, worksheetViewer: Editor, fi
     terminated = true
   }
   
-  private def updateWithPersistentScroll(document: Document, text: String) {//todo - to do
-    val foldingOffsetsCopy = foldingOffsets.clone()
-    foldingOffsets.clear()
-    val ed = getViewerEditor
+  /**
+   * Passes the text that was not passed yet to the viewer. The first update of a run replaces the previous results,
+   * the next ones are appended.
+   */
+  private def scheduleUpdate(last: Boolean) {
+    val currentText = getCurrentText
+    val text = currentText.substring(Math.min(flushedLength, currentText.length))
+    flushedLength = currentText.length
+
+    pendingText.synchronized {
+      pendingText append text
+      pendingFoldings ++= foldingOffsets
+      foldingOffsets.clear()
+
+      if (!viewerReplaced) {
+        viewerReplaced = true
+        pendingReplace = true
+      }
+      pendingLast |= last
+
+      if (!updateScheduled) {
+        updateScheduled = true
+        extensions.invokeLater {
+          applyPendingUpdate()
+        }
+      }
+    }
+  }
 
+  private def applyPendingUpdate() {
+    val (text, foldings, replace, last) = pendingText.synchronized {
+      val result = (pendingText.toString(), pendingFoldings.toList, pendingReplace, pendingLast)
+      pendingText.clear()
+      pendingFoldings.clear()
+      pendingReplace = false
+      pendingLast = false
+      updateScheduled = false
+      result
+    }
 
-    extensions.invokeLater {
-      extensions.inWriteAction {
-        val scroll = originalEditor.getScrollingModel.getVerticalScrollOffset
-        val worksheetScroll = worksheetViewer.getScrollingModel.getVerticalScrollOffset
+    updateWithPersistentScroll(viewerDocument, text, foldings, replace, last)
+  }
+
+  private def updateWithPersistentScroll(document: Document, text: String, foldingOffsetsCopy: Seq[(Int, Int, Int, Int)],
+                                         replace: Boolean, last: Boolean) {//todo - to do
+    val ed = getViewerEditor
 
-        simpleUpdate(text, document)
+    extensions.inWriteAction {
+      val scroll = originalEditor.getScrollingModel.getVerticalScrollOffset
+      val worksheetScroll = worksheetViewer.getScrollingModel.getVerticalScrollOffset
 
-        originalEditor.getScrollingModel.scrollVertically(scroll)
-        worksheetViewer.getScrollingModel.scrollHorizontally(worksheetScroll)
+      // the viewer document is committed once, after the last update
+      if (replace) document setText text
+      else if (text.nonEmpty) document.insertString(document.getTextLength, text)
+      if (last) commitDocument(document)
 
-        CommandProcessor.getInstance().executeCommand(project, new Runnable {
-          override def run() {
-            viewerFolding runBatchFoldingOperation(new Runnable {
-              override def run() {
-                foldingOffsetsCopy map {
-                  case (start, end, limit, originalEnd) =>
-                    val offset = originalDocument getLineEndOffset Math.min(originalEnd, originalDocument.getLineCount)
-                    val linesCount = viewerDocument.getLineNumber(end) - start - limit + 1
-
-                    new WorksheetFoldRegionDelegate(
-                      ed, viewerDocument.getLineStartOffset(start + limit - 1), end,
-                      offset, linesCount, group, limit
-                    )
-                } foreach {
-                  case region =>
-                    viewerFolding addFoldRegion region
-                }
-
-                WorksheetFoldGroup.save(file, group)
+      originalEditor.getScrollingModel.scrollVertically(scroll)
+      worksheetViewer.getScrollingModel.scrollHorizontally(worksheetScroll)
+
+      CommandProcessor.getInstance().executeCommand(project, new Runnable {
+        override def run() {
+          viewerFolding runBatchFoldingOperation(new Runnable {
+            override def run() {
+              foldingOffsetsCopy map {
+                case (start, end, limit, originalEnd) =>
+                  val offset = originalDocument getLineEndOffset Math.min(originalEnd, originalDocument.getLineCount)
+                  val linesCount = viewerDocument.getLineNumber(end) - start - limit + 1
+
+                  new WorksheetFoldRegionDelegate(
+                    ed, viewerDocument.getLineStartOffset(start + limit - 1), end,
+                    offset, linesCount, group, limit
+                  )
+              } foreach {
+                case region =>
+                  viewerFolding addFoldRegion region
               }
-            }, false)
-          }
-        }, null, null)
-      }
+
+              WorksheetFoldGroup.save(file, group)
+            }
+          }, false)
+        }
+      }, null, null)
     }
   }
 
@@ -308,6 +383,8 @@ class WorksheetEditorPrinter(originalEditor: Editor, worksheetViewer: Editor, fi
 
 object WorksheetEditorPrinter {
   val END_MESSAGE = "Output exceeds cutoff limit.\n"
+  val RUN_LIMIT_MESSAGE = "Output exceeds the limit of the whole worksheet, the worksheet is stopped.\n"
+  val RUN_OUTPUT_LIMIT = 50000
   val BULK_COUNT = 15
   val IDLE_TIME_MLS = 1000
 
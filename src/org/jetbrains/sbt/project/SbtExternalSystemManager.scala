@@ -132,7 +132,8 @@ object SbtExternalSystemManager {
     }
 
     new SbtExecutionSettings(vmExecutable, vmOptions, environment.toMap, customLauncher, customSbtStructureDir, projectJdkName,
-      projectSettings.resolveClassifiers, projectSettings.resolveSbtClassifiers)
+      projectSettings.resolveClassifiers, projectSettings.resolveSbtClassifiers,
+      settings.keepSbtProcessAlive.option(settings.sbtProcessIdleTimeout * 1000L))
   }
 
   private def proxyOptionsFor(http: HttpConfigurable): Seq[String] = {
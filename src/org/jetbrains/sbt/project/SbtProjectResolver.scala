@@ -30,11 +30,11 @@ class SbtProjectResolver extends ExternalSystemProjectResolver[SbtExecutionSetti
     }
 
     runner = new SbtRunner(settings.vmExecutable, settings.vmOptions, settings.environment,
-                           settings.customLauncher, settings.customSbtStructureDir)
+                           settings.customLauncher, settings.customSbtStructureDir, settings.sbtProcessIdleTimeout)
 
     var warnings = new StringBuilder()
 
-    val xml = runner.read(new File(root), !isPreview, settings.resolveClassifiers, settings.resolveSbtClassifiers) { message =>
+    val data = runner.read(new File(root), !isPreview, settings.resolveClassifiers, settings.resolveSbtClassifiers) { message =>
       if (message.startsWith("[error] ") || message.startsWith("[warn] ")) {
         warnings ++= message
       }
@@ -45,15 +45,13 @@ class SbtProjectResolver extends ExternalSystemProjectResolver[SbtExecutionSetti
         case _ : SbtRunner.ImportCancelledException => return null
         case _ => throw new ExternalSystemException(errors)
       }
-      case Right(node) => node
+      case Right(structure) => structure
     }
 
     if (warnings.nonEmpty) {
       listener.onTaskOutput(id, WarningMessage(warnings.toString), false)
     }
 
-    val data = StructureParser.parse(xml, new File(System.getProperty("user.home")))
-
     convert(root, data, settings.jdk).toDataNode
   }
 
@@ -15,4 +15,5 @@ class SbtExecutionSettings(val vmExecutable: File,
                            val customSbtStructureDir: Option[String],
                            val jdk: Option[String],
                            val resolveClassifiers: Boolean,
-                           val resolveSbtClassifiers: Boolean) extends ExternalSystemExecutionSettings
\ No newline at end of file
+                           val resolveSbtClassifiers: Boolean,
+                           val sbtProcessIdleTimeout: Option[Long]) extends ExternalSystemExecutionSettings
\ No newline at end of file
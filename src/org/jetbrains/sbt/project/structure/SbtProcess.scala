@@ -0,0 +1,177 @@
+package org.jetbrains.sbt
+package project.structure
+
+import java.io._
+import java.nio.charset.Charset
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.{Semaphore, TimeUnit}
+import java.util.{Timer, TimerTask}
+
+import com.intellij.execution.process.OSProcessHandler
+import org.jetbrains.sbt.project.structure.SbtProcess._
+
+import scala.collection.JavaConverters._
+
+/**
+ * A long-lived SBT shell of a particular project, which executes commands on demand,
+ * so that subsequent imports don't pay for the JVM startup, SBT boot and the initial project loading.
+ *
+ * The end of a command is recognized by a custom shell prompt. The process is shut down when it stays idle
+ * longer than the timeout, or killed when a command is cancelled.
+ */
+private class SbtProcess(directory: File, val processCommands: Seq[String], environment: Map[String, String], idleTimeout: Long) {
+  private val process = {
+    val processBuilder = new ProcessBuilder(processCommands.asJava)
+    processBuilder.directory(directory)
+    environment.foreach { case (name, value) =>
+      processBuilder.environment().put(name, value)
+    }
+    processBuilder.start()
+  }
+
+  private val writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(process.getOutputStream, "UTF-8")), true)
+
+  private val handler = new OSProcessHandler(process, null, Charset.forName("UTF-8"))
+
+  private val prompts = new Semaphore(0)
+
+  @volatile private var listener: String => Unit = _ => ()
+
+  @volatile private var output = new StringBuffer()
+
+  // A freshly started shell has just loaded the project, so there's no need to reload it
+  private var loaded = false
+
+  @volatile private var lastUse = System.currentTimeMillis
+
+  @volatile private var busy = false
+
+  handler.addProcessListener(new ListenerAdapter({
+    case (OutputType.StdOut, text) =>
+      if (text.contains("(q)uit")) {
+        writer.println("q")
+      } else if (text.contains(Prompt)) {
+        val rest = text.replace(Prompt, "")
+        if (rest.trim.nonEmpty) append(rest)
+        prompts.release()
+      } else {
+        append(text)
+      }
+    case (OutputType.StdErr, text) =>
+      append(text)
+  }))
+
+  handler.startNotify()
+
+  def isAlive: Boolean = !handler.isProcessTerminated
+
+  /**
+   * @return the output of the commands, None if they were cancelled
+   */
+  def execute(commands: Seq[String], listener: String => Unit, cancellationFlag: AtomicBoolean): Option[String] = synchronized {
+    busy = true
+    this.listener = listener
+    prompts.drainPermits()
+
+    // The startup output belongs to the first request (e.g. project loading errors)
+    if (loaded) output = new StringBuffer()
+
+    val reload = if (loaded) Seq("reload") else Seq.empty
+    loaded = true
+
+    // Session settings (including the prompt) are discarded on reload, so the prompt is always set after it
+    val line = (reload ++ Seq(s"""set shellPrompt := { _ => "$Prompt\\n" }""") ++ commands).map(";" + _).mkString(" ")
+    writer.println(line)
+
+    var completed = false
+    while (!completed && !cancellationFlag.get && isAlive) {
+      completed = prompts.tryAcquire(CheckTimeout, TimeUnit.MILLISECONDS)
+    }
+
+    this.listener = _ => ()
+    lastUse = System.currentTimeMillis
+    busy = false
+
+    if (cancellationFlag.get && !completed) {
+      // There's no way to interrupt a running SBT command
+      destroy()
+      None
+    } else {
+      Some(output.toString)
+    }
+  }
+
+  def isIdle: Boolean = !busy && System.currentTimeMillis - lastUse > idleTimeout
+
+  def stop() {
+    if (isAlive) {
+      writer.println("exit")
+      if (!handler.waitFor(ExitTimeout)) destroy()
+    }
+  }
+
+  private def destroy() {
+    handler.setShouldDestroyProcessRecursively(false)
+    handler.destroyProcess()
+  }
+
+  private def append(text: String) {
+    output.append(text)
+    listener(text)
+  }
+}
+
+private object SbtProcess {
+  private val Prompt = "##idea-sbt-prompt##"
+
+  private val CheckTimeout = 100L
+
+  private val ExitTimeout = 5000L
+
+  private val processes = new java.util.HashMap[File, SbtProcess]()
+
+  private lazy val timer = new Timer("SBT process idle shutdown", true)
+
+  /**
+   * Returns the running process of the project, a new process is started if there's none,
+   * the previous one is dead, or the process options have changed.
+   */
+  def get(directory: File, processCommands: Seq[String], environment: Map[String, String], idleTimeout: Long): SbtProcess = {
+    val key = directory.getCanonicalFile
+
+    val (process, previous) = processes.synchronized {
+      val existing = Option(processes.get(key))
+      existing.filter(it => it.isAlive && it.processCommands == processCommands) match {
+        case Some(it) => (it, None)
+        case None =>
+          val process = new SbtProcess(directory, processCommands, environment, idleTimeout)
+          processes.put(key, process)
+          scheduleIdleCheck(key, process, idleTimeout)
+          (process, existing)
+      }
+    }
+
+    previous.foreach(_.stop())
+
+    process
+  }
+
+  private def scheduleIdleCheck(key: File, process: SbtProcess, idleTimeout: Long) {
+    val period = math.max(idleTimeout / 4, 1000L)
+
+    timer.schedule(new TimerTask {
+      def run() {
+        val stale = processes.synchronized {
+          val current = processes.get(key) eq process
+          val stale = !process.isAlive || current && process.isIdle
+          if (stale && current) processes.remove(key)
+          stale || !current
+        }
+        if (stale) {
+          cancel()
+          process.stop()
+        }
+      }
+    }, period, period)
+  }
+}
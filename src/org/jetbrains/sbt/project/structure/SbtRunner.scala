@@ -11,13 +11,12 @@ import com.intellij.execution.process.OSProcessHandler
 import org.jetbrains.sbt.project.structure.SbtRunner._
 
 import scala.collection.JavaConverters._
-import scala.xml.{Elem, XML}
 
 /**
  * @author Pavel Fatin
  */
 class SbtRunner(vmExecutable: File, vmOptions: Seq[String], environment: Map[String, String],
-                customLauncher: Option[File], customStructureDir: Option[String]) {
+                customLauncher: Option[File], customStructureDir: Option[String], processIdleTimeout: Option[Long] = None) {
   private val LauncherDir = getSbtLauncherDir
   private val SbtLauncher = customLauncher.getOrElse(LauncherDir / "sbt-launch.jar")
   private val DefaultSbtVersion = "0.13"
@@ -29,7 +28,7 @@ class SbtRunner(vmExecutable: File, vmOptions: Seq[String], environment: Map[Str
     cancellationFlag.set(true)
 
   def read(directory: File, download: Boolean, resolveClassifiers: Boolean, resolveSbtClassifiers: Boolean)
-          (listener: (String) => Unit): Either[Exception, Elem] = {
+          (listener: (String) => Unit): Either[Exception, Structure] = {
 
     val options = download.seq("download") ++
             resolveClassifiers.seq("resolveClassifiers") ++
@@ -38,7 +37,7 @@ class SbtRunner(vmExecutable: File, vmOptions: Seq[String], environment: Map[Str
     checkFilePresence.fold(read0(directory, options.mkString(", "))(listener))(it => Left(new FileNotFoundException(it)))
   }
 
-  private def read0(directory: File, options: String)(listener: (String) => Unit): Either[Exception, Elem] = {
+  private def read0(directory: File, options: String)(listener: (String) => Unit): Either[Exception, Structure] = {
     val sbtVersion = sbtVersionIn(directory)
             .orElse(implementationVersionOf(SbtLauncher))
             .getOrElse(DefaultSbtVersion)
@@ -49,7 +48,43 @@ class SbtRunner(vmExecutable: File, vmOptions: Seq[String], environment: Map[Str
       val message = s"SBT $SinceSbtVersion+ required. Please update the project definition"
       Left(new UnsupportedOperationException(message))
     } else {
-      read1(directory, majorSbtVersion, options, listener)
+      readCached(directory, sbtVersion, pluginFileFor(majorSbtVersion), options, listener) {
+        read1(directory, majorSbtVersion, options, listener)
+      }
+    }
+  }
+
+  // An unchanged build definition (with the same launch parameters) produces the same structure
+  private def readCached(directory: File, sbtVersion: String, pluginFile: File, options: String, listener: (String) => Unit)
+                        (read: => Either[Exception, Structure]): Either[Exception, Structure] = {
+    val cache = StructureCache.in(directory)
+
+    val launchOptions = vmOptions ++ SbtOpts.loadFrom(directory)
+
+    val key = try {
+      val parameters = Seq(sbtVersion, options,
+        path(SbtLauncher), SbtLauncher.lastModified.toString, path(pluginFile), pluginFile.lastModified.toString) ++
+              launchOptions ++ environment.toSeq.sorted.map(_.toString)
+
+      Some(globalBaseIn(launchOptions).fold(StructureCache.keyFor(directory, parameters)) { globalBase =>
+        StructureCache.keyFor(directory, parameters, globalBase)
+      })
+    } catch {
+      case _: IOException => None
+    }
+
+    key.flatMap(cache.get) match {
+      case Some(structure) =>
+        listener(s"Project structure is loaded from cache (${cache.statistics})\n")
+        Right(structure)
+      case None =>
+        val start = System.currentTimeMillis
+        val result = read
+        for (k <- key; structure <- result.right.toOption if StructureCache.isCacheable(directory, structure)) {
+          cache.put(k, structure, System.currentTimeMillis - start)
+          listener(s"Project structure is cached (${cache.statistics})\n")
+        }
+        result
     }
   }
 
@@ -61,15 +96,13 @@ class SbtRunner(vmExecutable: File, vmOptions: Seq[String], environment: Map[Str
   private def check(entity: String, file: File) = (!file.exists()).option(s"$entity does not exist: $file")
 
   private def read1(directory: File, sbtVersion: String, options: String, listener: (String) => Unit) = {
-    val pluginFile = customStructureDir.map(new File(_)).getOrElse(LauncherDir) / s"sbt-structure-$sbtVersion.jar"
+    val pluginFile = pluginFileFor(sbtVersion)
 
     usingTempFile("sbt-structure", Some(".xml")) { structureFile =>
-      val sbtCommands = Seq(
-        s"""set shellPrompt := { _ => "" }""",
+      val readCommands = Seq(
         s"""set artifactPath := file("${path(structureFile)}")""",
         s"""set artifactClassifier := Some("$options")""",
-        s"""apply -cp "${path(pluginFile)}" org.jetbrains.sbt.ReadProject""",
-        s"""exit""")
+        s"""apply -cp "${path(pluginFile)}" org.jetbrains.sbt.ReadProject""")
 
       val processCommandsRaw =
         path(vmExecutable) +:
@@ -82,19 +115,25 @@ class SbtRunner(vmExecutable: File, vmOptions: Seq[String], environment: Map[Str
       val processCommands = processCommandsRaw.filterNot(_.isEmpty)
 
       try {
-        val processBuilder = new ProcessBuilder(processCommands.asJava)
-        processBuilder.directory(directory)
-        environment.foreach { case (name, value) =>
-          processBuilder.environment().put(name, value)
+        val result = processIdleTimeout match {
+          case Some(timeout) =>
+            SbtProcess.get(directory, processCommands, environment, timeout).execute(readCommands, listener, cancellationFlag)
+          case None =>
+            val sbtCommands = s"""set shellPrompt := { _ => "" }""" +: readCommands :+ "exit"
+            val processBuilder = new ProcessBuilder(processCommands.asJava)
+            processBuilder.directory(directory)
+            environment.foreach { case (name, value) =>
+              processBuilder.environment().put(name, value)
+            }
+            val process = processBuilder.start()
+            using(new PrintWriter(new BufferedWriter(new OutputStreamWriter(process.getOutputStream, "UTF-8")))) { writer =>
+              sbtCommands.foreach(writer.println)
+            }
+            handle(process, listener)
         }
-        val process = processBuilder.start()
-        using(new PrintWriter(new BufferedWriter(new OutputStreamWriter(process.getOutputStream, "UTF-8")))) { writer =>
-          sbtCommands.foreach(writer.println)
-        }
-        val result = handle(process, listener)
         result.map { output =>
           (structureFile.length > 0).either(
-            XML.load(structureFile.toURI.toURL))(SbtException.fromSbtLog(output))
+            StructureParser.parse(structureFile, new File(System.getProperty("user.home"))))(SbtException.fromSbtLog(output))
         }.getOrElse(Left(new ImportCancelledException))
       } catch {
         case e: Exception => Left(e)
@@ -137,6 +176,9 @@ class SbtRunner(vmExecutable: File, vmOptions: Seq[String], environment: Map[Str
     }
   }
 
+  private def pluginFileFor(majorSbtVersion: String): File =
+    customStructureDir.map(new File(_)).getOrElse(LauncherDir) / s"sbt-structure-$majorSbtVersion.jar"
+
   private def path(file: File): String = file.getAbsolutePath.replace('\\', '/')
 }
 
@@ -160,6 +202,14 @@ object SbtRunner {
     case (acc, _) => acc
   }
 
+  private val GlobalBaseOption = "-Dsbt.global.base="
+
+  // The global settings and plugins are read from ~/.sbt unless the launch options override the location
+  private def globalBaseIn(options: Seq[String]): Option[File] =
+    options.reverse.collectFirst {
+      case option if option.startsWith(GlobalBaseOption) => new File(option.substring(GlobalBaseOption.length))
+    }
+
   private def implementationVersionOf(jar: File): Option[String] = {
     readManifestAttributeFrom(jar, "Implementation-Version")
   }
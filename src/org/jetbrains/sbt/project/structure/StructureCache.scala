@@ -0,0 +1,185 @@
+package org.jetbrains.sbt
+package project.structure
+
+import java.io._
+import java.security.MessageDigest
+import java.util.zip.{GZIPInputStream, GZIPOutputStream}
+
+import com.intellij.openapi.application.PathManager
+import com.intellij.openapi.util.io.FileUtil
+
+/**
+ * Project structures, keyed by a hash of the build definition, so that a re-import of an unchanged
+ * build doesn't need to launch SBT.
+ *
+ * A snapshot is stored as a compressed serialized Structure, along with the time of the SBT run that produced it
+ * (which is the time that a hit saves).
+ */
+class StructureCache(directory: File) {
+  private val statisticsFile = new File(directory, "statistics.dat")
+
+  def get(key: String): Option[Structure] = {
+    val file = snapshotFile(key)
+
+    if (!file.exists) None else {
+      try {
+        using(new ObjectInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(file))))) { in =>
+          val duration = in.readLong()
+          val structure = in.readObject().asInstanceOf[Structure]
+          Some(structure).filter(isValid).map { it =>
+            updateStatistics(_.hit(duration))
+            it
+          }
+        }
+      } catch {
+        case _: IOException | _: ClassNotFoundException | _: ClassCastException => None
+      }
+    }
+  }
+
+  /**
+   * @param duration the time of the SBT run that produced the structure, in milliseconds
+   */
+  def put(key: String, structure: Structure, duration: Long) {
+    updateStatistics(_.miss)
+
+    val file = snapshotFile(key)
+    val temp = new File(directory, file.getName + ".tmp")
+
+    try {
+      directory.mkdirs()
+      using(new ObjectOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(temp))))) { out =>
+        out.writeLong(duration)
+        out.writeObject(structure)
+      }
+      file.delete()
+      if (!temp.renameTo(file)) temp.delete()
+    } catch {
+      case _: IOException => temp.delete()
+    }
+  }
+
+  def statistics: StructureCacheStatistics = readStatistics.getOrElse(StructureCacheStatistics(0, 0, 0L))
+
+  private def snapshotFile(key: String) = new File(directory, key + ".dat")
+
+  // Libraries may be removed from the local caches in the meantime, SBT will download them again
+  private def isValid(structure: Structure): Boolean =
+    structure.projects.flatMap(_.scala).forall(it => it.libraryJar.exists && it.compilerJar.exists)
+
+  private def readStatistics: Option[StructureCacheStatistics] = {
+    if (!statisticsFile.exists) None else {
+      try {
+        using(new DataInputStream(new BufferedInputStream(new FileInputStream(statisticsFile)))) { in =>
+          Some(StructureCacheStatistics(in.readInt(), in.readInt(), in.readLong()))
+        }
+      } catch {
+        case _: IOException => None
+      }
+    }
+  }
+
+  private def updateStatistics(update: StructureCacheStatistics => StructureCacheStatistics): Unit = synchronized {
+    val updated = update(statistics)
+
+    try {
+      directory.mkdirs()
+      using(new DataOutputStream(new BufferedOutputStream(new FileOutputStream(statisticsFile)))) { out =>
+        out.writeInt(updated.hits)
+        out.writeInt(updated.misses)
+        out.writeLong(updated.savedTime)
+      }
+    } catch {
+      case _: IOException =>
+    }
+  }
+}
+
+object StructureCache {
+  private val BuildFileExtensions = Set("sbt", "scala", "java", "properties")
+
+  /**
+   * The cache of a particular project, in the IDE system directory.
+   */
+  def in(projectDirectory: File): StructureCache = {
+    val name = projectDirectory.getName + "." + hash(Seq(projectDirectory.getCanonicalPath))
+    new StructureCache(new File(new File(PathManager.getSystemPath, "sbt-structure"), name))
+  }
+
+  /**
+   * A hash of the build definition: *.sbt files of the project and its subprojects, the "project" directory
+   * (recursively), the global settings and plugins (in ~/.sbt), and the given parameters of the SBT launch.
+   */
+  def keyFor(projectDirectory: File, parameters: Seq[String], globalDirectory: File = GlobalDirectory): String = {
+    val projectFiles = (sbtFilesIn(projectDirectory) ++ buildFilesIn(projectDirectory / "project")).distinct
+
+    val globalDirectories = globalDirectory +: Option(globalDirectory.listFiles).map(_.toSeq).getOrElse(Seq.empty)
+            .filter(it => it.isDirectory && it.getName.matches("\\d+\\.\\d+"))
+
+    val globalFiles = globalDirectories.flatMap { directory =>
+      Option(directory.listFiles).map(_.toSeq).getOrElse(Seq.empty)
+              .filter(it => it.isFile && it.getName.endsWith(".sbt")) ++ buildFilesIn(directory / "plugins")
+    }
+
+    val contents = projectFiles.sortBy(_.getPath).flatMap { file =>
+      Seq(FileUtil.getRelativePath(projectDirectory, file), FileUtil.loadFile(file, "UTF-8"))
+    } ++ globalFiles.sortBy(_.getPath).flatMap { file =>
+      Seq(file.getPath, FileUtil.loadFile(file, "UTF-8"))
+    }
+
+    hash(parameters ++ contents)
+  }
+
+  /**
+   * Whether the key covers the whole build of the structure, i.e. all the projects are based in the project directory
+   * (builds that are referenced from elsewhere may change without affecting the key).
+   */
+  def isCacheable(projectDirectory: File, structure: Structure): Boolean = {
+    val root = projectDirectory.getCanonicalFile
+    structure.projects.forall(it => FileUtil.isAncestor(root, it.base.getCanonicalFile, false))
+  }
+
+  private val GlobalDirectory = new File(System.getProperty("user.home"), ".sbt")
+
+  private def sbtFilesIn(directory: File): Seq[File] = {
+    Option(directory.listFiles).map(_.toSeq).getOrElse(Seq.empty).flatMap { file =>
+      if (file.isDirectory) {
+        if (isExcluded(file)) Seq.empty else sbtFilesIn(file)
+      } else {
+        if (file.getName.endsWith(".sbt")) Seq(file) else Seq.empty
+      }
+    }
+  }
+
+  private def buildFilesIn(directory: File): Seq[File] = {
+    Option(directory.listFiles).map(_.toSeq).getOrElse(Seq.empty).flatMap { file =>
+      if (file.isDirectory) {
+        if (isExcluded(file)) Seq.empty else buildFilesIn(file)
+      } else {
+        val extension = FileUtil.getExtension(file.getName)
+        if (BuildFileExtensions.contains(extension)) Seq(file) else Seq.empty
+      }
+    }
+  }
+
+  private def isExcluded(directory: File) = directory.getName == "target" || directory.getName.startsWith(".")
+
+  private def hash(strings: Seq[String]): String = {
+    val digest = MessageDigest.getInstance("MD5")
+    strings.foreach { s =>
+      digest.update(s.getBytes("UTF-8"))
+      digest.update(0.toByte)
+    }
+    digest.digest.map("%02x".format(_)).mkString
+  }
+}
+
+case class StructureCacheStatistics(hits: Int, misses: Int, savedTime: Long) {
+  def hit(duration: Long) = copy(hits = hits + 1, savedTime = savedTime + duration)
+
+  def miss = copy(misses = misses + 1)
+
+  def hitRate: Double = if (hits + misses == 0) 0.0D else hits.toDouble / (hits + misses)
+
+  override def toString = "%d hits, %d misses (%.0f%% hit rate), %d s saved".format(hits, misses, hitRate * 100, savedTime / 1000)
+}
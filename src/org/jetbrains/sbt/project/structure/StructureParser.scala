@@ -1,19 +1,75 @@
 package org.jetbrains.sbt
 package project.structure
 
-import java.io.File
+import java.io.{BufferedInputStream, File, FileInputStream}
+import java.util.concurrent.Callable
+import javax.xml.stream.{XMLInputFactory, XMLStreamConstants, XMLStreamReader}
 
 import org.jetbrains.plugins.scala.project.Version
 import org.jetbrains.sbt.project.structure.FS._
 import org.jetbrains.sbt.project.structure.Play2Keys.{KeyTransformer, KeyExtractor}
 
-import scala.xml.Node
+import scala.collection.mutable.ArrayBuffer
+import scala.concurrent.forkjoin.{ForkJoinPool, ForkJoinTask}
+import scala.xml._
 
 /**
  * @author Pavel Fatin
  */
 
 object StructureParser {
+  private val InputFactory = {
+    val factory = XMLInputFactory.newInstance()
+    factory.setProperty(XMLInputFactory.IS_COALESCING, true)
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false)
+    factory
+  }
+
+  /**
+   * Reads the structure file without loading the whole document: only one project (or one repository module)
+   * is kept as a tree at a time, and the projects are parsed in parallel while the rest of the file is being read.
+   */
+  def parse(file: File, home: File): Structure = {
+    implicit val fs = new FS(home)
+
+    val pool = new ForkJoinPool()
+
+    try {
+      using(new BufferedInputStream(new FileInputStream(file))) { input =>
+        val reader = InputFactory.createXMLStreamReader(input)
+
+        try {
+          reader.nextTag()
+
+          val sbtVersion = Option(reader.getAttributeValue(null, "sbt")).getOrElse("")
+          val projects = new ArrayBuffer[ForkJoinTask[Project]]()
+          var repository: Option[Repository] = None
+          var localCachePath: Option[String] = None
+
+          forEachChild(reader) {
+            case "project" =>
+              val node = readElement(reader)
+              projects += pool.submit(new Callable[Project] {
+                def call() = parseProject(node)
+              })
+            case "repository" if repository.isEmpty =>
+              repository = Some(readRepository(reader))
+            case "localCachePath" if localCachePath.isEmpty =>
+              localCachePath = Some(reader.getElementText)
+            case _ =>
+              skipElement(reader)
+          }
+
+          Structure(projects.map(_.join()), repository, localCachePath, sbtVersion)
+        } finally {
+          reader.close()
+        }
+      }
+    } finally {
+      pool.shutdown()
+    }
+  }
+
   def parse(node: Node, home: File): Structure = {
     implicit val fs = new FS(home)
 
@@ -146,19 +202,32 @@ object StructureParser {
   }
 
   private def parseRepository(node: Node)(implicit fs: FS): Repository = {
-    val modules = (node \ "module").map { it =>
-      val identifier = parseModuleIdentifier(it)
+    val modules = (node \ "module").map(parseModule)
 
-      val binaries = (it \ "jar").map(e => file(e.text))
-      val docs = (it \ "doc").map(e => file(e.text))
-      val sources = (it \ "src").map(e => file(e.text))
+    Repository(new File("."), modules)
+  }
 
-      Module(identifier, binaries, docs, sources)
+  private def readRepository(reader: XMLStreamReader)(implicit fs: FS): Repository = {
+    val modules = new ArrayBuffer[Module]()
+
+    forEachChild(reader) {
+      case "module" => modules += parseModule(readElement(reader))
+      case _ => skipElement(reader)
     }
 
     Repository(new File("."), modules)
   }
 
+  private def parseModule(node: Node)(implicit fs: FS): Module = {
+    val identifier = parseModuleIdentifier(node)
+
+    val binaries = (node \ "jar").map(e => file(e.text))
+    val docs = (node \ "doc").map(e => file(e.text))
+    val sources = (node \ "src").map(e => file(e.text))
+
+    Module(identifier, binaries, docs, sources)
+  }
+
   private def parseResolvers(node: Node) =
     (node \ "resolver").map({ r =>
       val name = (r \ "@name").text
@@ -166,6 +235,51 @@ object StructureParser {
       Resolver(name, if (root.endsWith("/")) root else root + "/")
     }).toSet
 
+  // Calls the action for each child element of the current element, the action must consume the whole child
+  private def forEachChild(reader: XMLStreamReader)(action: String => Unit) {
+    while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+      action(reader.getLocalName)
+    }
+  }
+
+  private def skipElement(reader: XMLStreamReader) {
+    var depth = 1
+    while (depth > 0) {
+      reader.next() match {
+        case XMLStreamConstants.START_ELEMENT => depth += 1
+        case XMLStreamConstants.END_ELEMENT => depth -= 1
+        case _ =>
+      }
+    }
+  }
+
+  // Builds the same tree as XML.load does for the current element
+  private def readElement(reader: XMLStreamReader): Elem = {
+    val label = reader.getLocalName
+
+    var attributes: MetaData = Null
+    for (i <- (reader.getAttributeCount - 1) to 0 by -1) {
+      attributes = new UnprefixedAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i), attributes)
+    }
+
+    val children = new ArrayBuffer[Node]()
+    var done = false
+
+    while (!done) {
+      reader.next() match {
+        case XMLStreamConstants.START_ELEMENT =>
+          children += readElement(reader)
+        case XMLStreamConstants.CHARACTERS | XMLStreamConstants.CDATA | XMLStreamConstants.SPACE =>
+          children += Text(reader.getText)
+        case XMLStreamConstants.END_ELEMENT =>
+          done = true
+        case _ =>
+      }
+    }
+
+    Elem(null, label, attributes, TopScope, true, children: _*)
+  }
+
   private implicit class NodeExt(node: Node) {
     def !(name: String): Node = (node \ name) match {
       case Seq() => throw new RuntimeException(s"No $name node in $node")
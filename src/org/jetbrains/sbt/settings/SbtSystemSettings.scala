@@ -50,6 +50,12 @@ class SbtSystemSettings(project: Project)
   @BeanProperty
   var customSbtStructureDir: String = ""
 
+  @BeanProperty
+  var keepSbtProcessAlive: Boolean = false
+
+  @BeanProperty
+  var sbtProcessIdleTimeout: Int = 600
+
   def checkSettings(old: SbtProjectSettings, current: SbtProjectSettings) {
     if (old.jdkName != current.jdkName) {
       getPublisher.onJdkChanged(old.jdk, current.jdk)
@@ -75,6 +81,8 @@ class SbtSystemSettings(project: Project)
     state.customVMEnabled       = customVMEnabled
     state.customVMPath          = customVMPath
     state.customSbtStructureDir = customSbtStructureDir
+    state.keepSbtProcessAlive   = keepSbtProcessAlive
+    state.sbtProcessIdleTimeout = sbtProcessIdleTimeout
     state
   }
 
@@ -87,6 +95,8 @@ class SbtSystemSettings(project: Project)
     customVMEnabled       = state.customVMEnabled
     customVMPath          = state.customVMPath
     customSbtStructureDir = state.customSbtStructureDir
+    keepSbtProcessAlive   = state.keepSbtProcessAlive
+    sbtProcessIdleTimeout = state.sbtProcessIdleTimeout
   }
 
   def subscribe(listener: ExternalSystemSettingsListener[SbtProjectSettings]) {
@@ -143,6 +153,12 @@ class SbtSystemSettingsState extends AbstractExternalSystemSettings.State[SbtPro
   @BeanProperty
   var customSbtStructureDir: String = ""
 
+  @BeanProperty
+  var keepSbtProcessAlive: Boolean = false
+
+  @BeanProperty
+  var sbtProcessIdleTimeout: Int = 600
+
   @AbstractCollection(surroundWithTag = false, elementTypes = Array(classOf[SbtProjectSettings]))
   def getLinkedExternalProjectsSettings: util.Set[SbtProjectSettings] = {
     projectSettings
@@ -0,0 +1,63 @@
+package org.jetbrains.jps.incremental.scala
+package remote
+
+import java.io.File
+
+import com.intellij.util.Base64Converter
+import junit.framework.TestCase
+import org.jetbrains.jps.incremental.messages.BuildMessage.Kind
+import org.junit.Assert._
+
+class EventCodecTest extends TestCase {
+  private val source = new File("/project/src/main/scala/org/example/Foo.scala")
+  private val module = new File("/project/target/classes/org/example/Foo.class")
+
+  private val events = Seq(
+    MessageEvent(Kind.ERROR, "type mismatch;\n found   : Int\n required: String", Some(source), Some(42L), Some(7L)),
+    MessageEvent(Kind.INFO, "Compiling 3 Scala sources", None, None, None),
+    ProgressEvent("Compiling module foo", Some(0.5F)),
+    ProgressEvent("Searching for changed files...", None),
+    DebugEvent("Invalidated sources: " + source.getPath),
+    GeneratedEvent(source, module, "org.example.Foo"),
+    DeletedEvent(module),
+    SourceProcessedEvent(source),
+    CompilationEndEvent(),
+    WorksheetOutputEvent("res0: Int = 42\nфу\n")
+  )
+
+  def testRoundTrip() {
+    events.foreach { event =>
+      val bytes = EventCodec.encode(event)
+      assertTrue(EventCodec.isBinary(bytes))
+      assertEquals(event, EventCodec.decode(bytes))
+    }
+  }
+
+  def testTraceRoundTrip() {
+    val trace = TraceEvent("Boom", Array("java.lang.RuntimeException: Boom", "\tat Foo.bar(Foo.scala:1)"))
+    val decoded = EventCodec.decode(EventCodec.encode(trace)).asInstanceOf[TraceEvent]
+    assertEquals(trace.message, decoded.message)
+    assertArrayEquals(trace.lines.asInstanceOf[Array[AnyRef]], decoded.lines.asInstanceOf[Array[AnyRef]])
+  }
+
+  def testLegacyFramesAreNotBinary() {
+    events.foreach { event =>
+      assertFalse(EventCodec.isBinary(Base64Converter.encode(event.toBytes).getBytes))
+    }
+  }
+
+  def testNegotiation() {
+    assertTrue(EventCodec.isSupported(EventCodec.Version.toString))
+    assertFalse(EventCodec.isSupported(null))
+    assertFalse(EventCodec.isSupported(""))
+    assertFalse(EventCodec.isSupported("0"))
+  }
+
+  def testWireSize() {
+    events.foreach { event =>
+      val legacySize = Base64Converter.encode(event.toBytes).getBytes.length
+      val binarySize = EventCodec.encode(event).length
+      assertTrue(event + ": " + binarySize + " >= " + legacySize, binarySize < legacySize)
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package org.jetbrains.jps.incremental.scala
+package remote
+
+import java.io._
+import java.net.{InetAddress, ServerSocket, SocketTimeoutException}
+import java.nio.ByteBuffer
+
+import com.martiansoftware.nailgun.NGConstants
+import junit.framework.TestCase
+import org.jetbrains.jps.incremental.messages.BuildMessage.Kind
+import org.junit.Assert._
+
+class MultiplexedConnectionTest extends TestCase {
+  def testRequestFrameRoundTrip() {
+    val arguments = Seq("/path/to/sbt-interface.jar", "", "a\nb", "фу")
+    val bytes = MultiplexedConnection.requestFrame(MultiplexedConnection.RequestFrame, 42, arguments)
+    val input = new DataInputStream(new ByteArrayInputStream(bytes))
+    assertEquals((MultiplexedConnection.RequestFrame, 42, arguments), MultiplexedConnection.readFrame(input))
+    assertEquals(0, input.available)
+  }
+
+  def testConsecutiveFrames() {
+    val bytes = MultiplexedConnection.requestFrame(MultiplexedConnection.RequestFrame, 1, Seq("x")) ++
+            MultiplexedConnection.requestFrame(MultiplexedConnection.CancelFrame, 1, Seq.empty)
+    val input = new DataInputStream(new ByteArrayInputStream(bytes))
+    assertEquals((MultiplexedConnection.RequestFrame, 1, Seq("x")), MultiplexedConnection.readFrame(input))
+    assertEquals((MultiplexedConnection.CancelFrame, 1, Seq.empty), MultiplexedConnection.readFrame(input))
+  }
+
+  def testSessionNegotiation() {
+    assertTrue(MultiplexedConnection.isRequested(MultiplexedConnection.SessionVersion.toString))
+    assertFalse(MultiplexedConnection.isRequested(null))
+  }
+
+  def testRequestIsWrittenOnlyWhenInputIsRequested() {
+    val server = new ServerSocket(0, 1, InetAddress.getByName(null))
+    try {
+      val connection = new MultiplexedConnection(InetAddress.getByName(null), server.getLocalPort, "compile-server", ".")
+      val socket = server.accept()
+      socket.setSoTimeout(5000)
+      val input = new DataInputStream(new BufferedInputStream(socket.getInputStream))
+      val output = new DataOutputStream(socket.getOutputStream)
+
+      // environment, environment, working directory, command
+      for (_ <- 1 to 4) Chunk.readFrom(input)
+
+      @volatile var failure: Option[Throwable] = None
+      val sender = new Thread(new Runnable {
+        def run() {
+          try connection.send(Seq("a"), SilentClient)
+          catch {
+            case e: Throwable => failure = Some(e)
+          }
+        }
+      })
+      sender.start()
+
+      assertEquals(None, nextStdin(input, 500))
+
+      Chunk(NGConstants.CHUNKTYPE_SENDINPUT.toChar, Array.empty).writeTo(output)
+      output.flush()
+
+      val frame = nextStdin(input, 5000).getOrElse(throw new AssertionError("No request frame"))
+      val (kind, id, arguments) = MultiplexedConnection.readFrame(new DataInputStream(new ByteArrayInputStream(frame)))
+      assertEquals(MultiplexedConnection.RequestFrame, kind)
+      assertEquals(Seq("a"), arguments)
+
+      // an id alone ends the request
+      Chunk(NGConstants.CHUNKTYPE_STDOUT.toChar, ByteBuffer.allocate(4).putInt(id).array()).writeTo(output)
+      output.flush()
+
+      sender.join(5000)
+      assertFalse(sender.isAlive)
+      assertEquals(None, failure)
+
+      connection.close()
+      socket.close()
+    } finally {
+      server.close()
+    }
+  }
+
+  /**
+   * The data of the next stdin chunk, the heartbeats are skipped
+   */
+  private def nextStdin(input: DataInputStream, timeout: Long): Option[Array[Byte]] = {
+    val end = System.currentTimeMillis + timeout
+    try {
+      while (System.currentTimeMillis < end) {
+        Chunk.readFrom(input) match {
+          case Chunk(NGConstants.CHUNKTYPE_STDIN, data) => return Some(data)
+          case _ =>
+        }
+      }
+      None
+    } catch {
+      case _: SocketTimeoutException => None
+    }
+  }
+
+  private object SilentClient extends Client {
+    def message(kind: Kind, text: String, source: Option[File], line: Option[Long], column: Option[Long]) {}
+    def trace(exception: Throwable) {}
+    def progress(text: String, done: Option[Float]) {}
+    def debug(text: String) {}
+    def generated(source: File, module: File, name: String) {}
+    def processed(source: File) {}
+    def deleted(module: File) {}
+    def isCanceled = false
+  }
+}
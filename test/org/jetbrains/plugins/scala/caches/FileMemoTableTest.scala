@@ -0,0 +1,48 @@
+package org.jetbrains.plugins.scala
+package caches
+
+import junit.framework.TestCase
+import org.junit.Assert._
+
+class FileMemoTableTest extends TestCase {
+  def testGetAndPut() {
+    val table = new FileMemoTable
+    val (e1, e2) = (new Object, new Object)
+
+    assertNull(table.get(e1, 1, (true, false), 0L))
+
+    table.put(e1, 1, (true, false), "a", 0L)
+    table.put(e1, 2, (true, false), "b", 0L)
+    table.put(e2, 1, (true, false), "c", 0L)
+
+    assertEquals("a", table.get(e1, 1, (true, false), 0L))
+    assertEquals("b", table.get(e1, 2, (true, false), 0L))
+    assertEquals("c", table.get(e2, 1, (true, false), 0L))
+    assertNull(table.get(e1, 1, (false, false), 0L))
+    assertEquals(3, table.size)
+  }
+
+  def testGrowth() {
+    val table = new FileMemoTable
+    val elements = Seq.fill(1000)(new Object)
+
+    table.get(elements.head, 1, 0, 0L)
+    for ((e, i) <- elements.zipWithIndex) table.put(e, 1, i, i, 0L)
+
+    assertEquals(1000, table.size)
+    for ((e, i) <- elements.zipWithIndex) assertEquals(i, table.get(e, 1, i, 0L))
+  }
+
+  def testDroppedOnModification() {
+    val table = new FileMemoTable
+    val e = new Object
+
+    table.get(e, 1, true, 0L)
+    table.put(e, 1, true, "a", 0L)
+    assertNull(table.get(e, 1, true, 1L))
+    assertEquals(0, table.size)
+
+    table.put(e, 1, true, "outdated", 0L)
+    assertNull(table.get(e, 1, true, 1L))
+  }
+}
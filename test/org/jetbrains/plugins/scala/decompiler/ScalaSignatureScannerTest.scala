@@ -0,0 +1,49 @@
+package org.jetbrains.plugins.scala
+package decompiler
+
+import java.io.File
+import java.util.zip.ZipFile
+
+import com.intellij.openapi.util.io.FileUtil
+import com.intellij.testFramework.LightVirtualFile
+import junit.framework.TestCase
+import org.junit.Assert._
+
+import scala.collection.JavaConverters._
+
+/**
+ * Compares the scanner results with the full decompilation on the class files of the standard library.
+ */
+class ScalaSignatureScannerTest extends TestCase {
+  def testStandardLibrary() {
+    val jar = new File(classOf[Option[_]].getProtectionDomain.getCodeSource.getLocation.toURI)
+    val zip = new ZipFile(jar)
+
+    try {
+      val entries = zip.entries.asScala.filter(_.getName.endsWith(".class")).toList
+      assertTrue(entries.nonEmpty)
+
+      for (entry <- entries) {
+        val bytes = FileUtil.loadBytes(zip.getInputStream(entry))
+        val name = new File(entry.getName).getName
+
+        val expected = DecompilerUtil.decompileInner(new LightVirtualFile(name), bytes)
+        val actual = ScalaSignatureScanner.scan(bytes)
+
+        assertEquals(entry.getName, expected.isScala, actual.isScala)
+        if (expected.isScala) assertEquals(entry.getName, expected.sourceName, actual.sourceFileName)
+      }
+    } finally {
+      zip.close()
+    }
+  }
+
+  def testNotClassFile() {
+    try {
+      ScalaSignatureScanner.scan("class A".getBytes)
+      fail()
+    } catch {
+      case _: IllegalArgumentException =>
+    }
+  }
+}
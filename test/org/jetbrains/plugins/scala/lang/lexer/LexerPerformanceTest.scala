@@ -1,7 +1,11 @@
 package org.jetbrains.plugins.scala.lang.lexer
 
+import com.intellij.psi.tree.IElementType
 import com.intellij.testFramework.PlatformTestUtil
 import org.jetbrains.plugins.scala.base.ScalaFixtureTestCase
+import org.junit.Assert._
+
+import scala.collection.mutable.ArrayBuffer
 
 /**
  * @author Alefas
@@ -2187,4 +2191,78 @@ object Expressions {
       })
   }
 
+  /**
+   * Measures the cost of relexing after a keystroke in a 10k-line file, as the editor highlighter does it:
+   * from the nearest token which starts in the initial lexer state, until the states match the previous ones.
+   * The lexer reports a single "dirty" state inside XML literals and interpolated strings, as the highlighter
+   * of the platform can restart a lexer only from the initial state.
+   */
+  def testRelexingPerformance() {
+    val literal = (0 until 50).map(i => s"""      <item id="$i">{ items($i).name }</item>""").mkString("\n")
+    val chunk = (i: Int) =>
+      s"""class C$i {
+         |  def size = items.size + $i
+         |  val name = s"C$i $${items.size} $${items.head}"
+         |  val xml =
+         |    <items>
+         |$literal
+         |    </items>
+         |}
+         |""".stripMargin
+
+    val chunks = 10000 / chunk(0).count(_ == '\n') + 1
+    val text = (0 until chunks).map(chunk).mkString
+    val tokens = lex(text, 0, 0, _ => false)
+
+    def offsets(marker: String) = (1 to 20).map { i =>
+      text.indexOf(marker, text.length * i / 21) + marker.length
+    }
+
+    for ((context, marker) <- Seq(("code", "items.size + "), ("XML literal", "<item "), ("interpolated string", "${items."))) {
+      val (relexed, time) = relexingTime(text, tokens, offsets(marker))
+      println("Relexing per keystroke in %s: %d tokens, %d us".format(context, relexed, time / 1000))
+    }
+  }
+
+  private case class Token(start: Int, end: Int, tokenType: IElementType, state: Int)
+
+  private def lex(text: CharSequence, start: Int, state: Int, stop: Token => Boolean): Seq[Token] = {
+    val lexer = new ScalaLexer()
+    lexer.start(text, start, text.length, state)
+    val tokens = ArrayBuffer[Token]()
+    var continue = true
+    while (continue && lexer.getTokenType != null) {
+      val token = Token(lexer.getTokenStart, lexer.getTokenEnd, lexer.getTokenType, lexer.getState)
+      tokens += token
+      continue = !stop(token)
+      lexer.advance()
+    }
+    tokens
+  }
+
+  /**
+   * @return the average number of relexed tokens and the average time in nanoseconds
+   */
+  private def relexingTime(text: String, tokens: Seq[Token], offsets: Seq[Int]): (Int, Long) = {
+    var relexed = 0
+    var time = 0L
+
+    for (offset <- offsets) {
+      val changed = text.substring(0, offset) + "x" + text.substring(offset)
+      val previous = tokens.map(it => (it.start, it.state)).toSet
+
+      val start = System.nanoTime()
+      val restart = tokens.lastIndexWhere(it => it.end < offset && it.state == 0)
+      val from = if (restart < 0) Token(0, 0, null, 0) else tokens(restart)
+      val relexedTokens = lex(changed, from.start, 0, it => it.start > offset + 1 && previous.contains((it.start - 1, it.state)))
+      time += System.nanoTime() - start
+      relexed += relexedTokens.size
+
+      // the relexed tokens are the same as those of the whole text
+      val expected = lex(changed, 0, 0, _.start >= relexedTokens.last.start).dropWhile(_.start < from.start)
+      assertEquals(expected.map(it => (it.start, it.end, it.tokenType)), relexedTokens.map(it => (it.start, it.end, it.tokenType)))
+    }
+
+    (relexed / offsets.size, time / offsets.size)
+  }
 }
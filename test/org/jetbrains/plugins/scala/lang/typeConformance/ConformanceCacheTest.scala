@@ -0,0 +1,50 @@
+package org.jetbrains.plugins.scala
+package lang
+package typeConformance
+
+import junit.framework.TestCase
+import org.jetbrains.plugins.scala.lang.psi.types._
+import org.junit.Assert._
+
+class ConformanceCacheTest extends TestCase {
+  private val Result = (true, new ScUndefinedSubstitutor())
+
+  def testHitsAndMisses() {
+    val cache = new ConformanceCache(10)
+
+    assertEquals(None, cache.get((Any, Int, false)))
+
+    cache.put((Any, Int, false), Result, cache.modificationCount)
+
+    assertEquals(Some(Result), cache.get((Any, Int, false)))
+    assertEquals(None, cache.get((Any, Int, true)))
+    assertEquals(ConformanceCacheStatistics(1L, 2L), cache.statistics)
+
+    cache.resetStatistics()
+    assertEquals(ConformanceCacheStatistics(0L, 0L), cache.statistics)
+  }
+
+  def testLeastRecentlyUsedEviction() {
+    val cache = new ConformanceCache(2)
+
+    cache.put((Any, Int, false), Result, cache.modificationCount)
+    cache.put((Any, Long, false), Result, cache.modificationCount)
+    cache.get((Any, Int, false))
+    cache.put((Any, Float, false), Result, cache.modificationCount)
+
+    assertEquals(2, cache.size)
+    assertEquals(Some(Result), cache.get((Any, Int, false)))
+    assertEquals(None, cache.get((Any, Long, false)))
+    assertEquals(Some(Result), cache.get((Any, Float, false)))
+  }
+
+  def testOutdatedResult() {
+    val cache = new ConformanceCache(10)
+
+    val modificationCount = cache.modificationCount
+    cache.clear()
+    cache.put((Any, Int, false), Result, modificationCount)
+
+    assertEquals(None, cache.get((Any, Int, false)))
+  }
+}
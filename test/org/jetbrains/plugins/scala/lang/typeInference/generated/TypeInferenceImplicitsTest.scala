@@ -21,6 +21,8 @@ class TypeInferenceImplicitsTest extends TypeInferenceTestBase {
 
   def testImplicitParameterOnlyFirstStep() {doTest()}
 
+  def testImplicitParameterSubclassResult() {doTest()}
+
   def testSCL1580() {doTest()}
 
   def testSpecialConversion() {doTest()}
@@ -0,0 +1,73 @@
+package org.jetbrains.plugins.scala
+package performance.typedef
+
+import java.util.concurrent.{Callable, Executors, TimeUnit}
+
+import com.intellij.openapi.application.ApplicationManager
+import com.intellij.openapi.util.Computable
+import org.jetbrains.plugins.scala.base.ScalaLightCodeInsightFixtureTestAdapter
+import org.jetbrains.plugins.scala.lang.psi.api.ScalaFile
+import org.jetbrains.plugins.scala.lang.psi.api.toplevel.typedef.ScClass
+import org.jetbrains.plugins.scala.lang.psi.impl.toplevel.typedef.TypeDefinitionMembers.SignatureNodes
+import org.junit.Assert._
+
+import scala.collection.JavaConverters._
+
+/**
+ * Resolves all the member signatures of a class with a deep trait hierarchy from several threads at once,
+ * each thread must see the same nodes as a single-threaded lookup (the throughput is measured by MixinNodesBenchmark).
+ */
+class MixinNodesConcurrencyTest extends ScalaLightCodeInsightFixtureTestAdapter {
+  private val Traits = 30
+
+  private val Methods = 20
+
+  private val Rounds = 20
+
+  private val Threads = 4
+
+  def testConcurrentLookups() {
+    val traits = (0 until Traits).map { i =>
+      val parent = if (i == 0) "" else s" extends T${i - 1}"
+      val methods = (0 until Methods).map(j => s"  def m$j(x: Int): Int = x + $i\n  def t${i}m$j(s: String): String = s").mkString("\n")
+      s"trait T$i$parent {\n$methods\n}"
+    }
+
+    val text = traits.mkString("\n\n") + "\n\nclass C extends " + (0 until Traits).map("T" + _).mkString(" with ")
+
+    val file = myFixture.configureByText("dummy.scala", text).asInstanceOf[ScalaFile]
+    val clazz = file.typeDefinitions.collectFirst { case c: ScClass => c }.get
+
+    def readAction[T](body: => T): T = ApplicationManager.getApplication.runReadAction(new Computable[T] {
+      def compute(): T = body
+    })
+
+    val names = readAction(SignatureNodes.build(clazz).allNames().toSeq)
+    assertTrue(names.size >= Methods * (Traits + 1))
+
+    val expected = readAction(SignatureNodes.build(clazz).allFirstSeq().map(_.iterator.size).sum)
+
+    val executor = Executors.newFixedThreadPool(Threads)
+
+    try {
+      for (_ <- 0 until Rounds) {
+        // a fresh map per round, so that the nodes are calculated concurrently
+        val map = readAction(SignatureNodes.build(clazz))
+
+        val tasks = (0 until Threads).map { t =>
+          new Callable[Int] {
+            def call() = readAction {
+              val shifted = names.drop(t * names.size / Threads) ++ names.take(t * names.size / Threads)
+              shifted.map(name => map.forName(name)._1.iterator.size).sum
+            }
+          }
+        }
+
+        executor.invokeAll(tasks.asJava).asScala.foreach(it => assertEquals(expected, it.get))
+      }
+    } finally {
+      executor.shutdown()
+      executor.awaitTermination(1, TimeUnit.MINUTES)
+    }
+  }
+}
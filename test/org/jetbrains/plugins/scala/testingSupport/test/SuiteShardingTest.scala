@@ -0,0 +1,32 @@
+package org.jetbrains.plugins.scala
+package testingSupport.test
+
+import junit.framework.TestCase
+import org.junit.Assert._
+
+class SuiteShardingTest extends TestCase {
+  def testSingleFork() {
+    assertEquals(Seq(Seq("a.A", "a.B")), SuiteSharding.shard(Seq("a.A", "a.B"), 1, Map.empty))
+  }
+
+  def testMoreForksThanSuites() {
+    val shards = SuiteSharding.shard(Seq("a.A", "a.B"), 4, Map.empty)
+
+    assertEquals(2, shards.size)
+    assertEquals(Set("a.A", "a.B"), shards.flatten.toSet)
+  }
+
+  def testBalancedByDurations() {
+    val durations = Map("a.A" -> 100L, "a.B" -> 60L, "a.C" -> 50L, "D" -> 40L)
+    val shards = SuiteSharding.shard(Seq("a.A", "a.B", "a.C", "a.D"), 2, durations)
+
+    assertEquals(Set(Set("a.A", "a.D"), Set("a.B", "a.C")), shards.map(_.toSet).toSet)
+  }
+
+  def testUnknownDurations() {
+    val durations = Map("a.A" -> 30L, "a.B" -> 10L)
+    val shards = SuiteSharding.shard(Seq("a.A", "a.B", "a.C"), 2, durations)
+
+    assertEquals(Set(Set("a.A"), Set("a.B", "a.C")), shards.map(_.toSet).toSet)
+  }
+}
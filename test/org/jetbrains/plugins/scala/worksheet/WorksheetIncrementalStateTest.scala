@@ -0,0 +1,60 @@
+package org.jetbrains.plugins.scala
+package worksheet
+
+import junit.framework.TestCase
+import org.jetbrains.plugins.scala.worksheet.processor.WorksheetIncrementalState
+import org.jetbrains.plugins.scala.worksheet.processor.WorksheetSourceProcessor.IncrementalSegment
+import org.junit.Assert._
+
+class WorksheetIncrementalStateTest extends TestCase {
+  private val Path = "/worksheets/test.sc"
+
+  override def tearDown() {
+    WorksheetIncrementalState.reset(Path)
+    super.tearDown()
+  }
+
+  def testFirstRun() {
+    assertEquals(IncrementalSegment(Seq.empty, 0), WorksheetIncrementalState.nextSegment(Path, Seq("val a = 1", "a")))
+  }
+
+  def testChangedStatementIsRerunWithTheFollowingOnes() {
+    compiled(Seq("val a = 1", "val b = 2"), "A$A0")
+    compiled(Seq("val a = 1", "val b = 2", "val c = 3", "c"), "A$A1")
+
+    assertEquals(IncrementalSegment(Seq("A$A0", "A$A1"), 4),
+      WorksheetIncrementalState.nextSegment(Path, Seq("val a = 1", "val b = 2", "val c = 3", "c", "c + 1")))
+    assertEquals(IncrementalSegment(Seq("A$A0"), 2),
+      WorksheetIncrementalState.nextSegment(Path, Seq("val a = 1", "val b = 2", "val c = 4", "c")))
+    assertEquals(IncrementalSegment(Seq.empty, 0),
+      WorksheetIncrementalState.nextSegment(Path, Seq("val a = 2", "val b = 2", "val c = 3", "c")))
+  }
+
+  def testUnchangedWorksheetRerunsTheLastSegment() {
+    compiled(Seq("val a = 1"), "A$A0")
+    compiled(Seq("val a = 1", "a"), "A$A1")
+
+    assertEquals(IncrementalSegment(Seq("A$A0"), 1), WorksheetIncrementalState.nextSegment(Path, Seq("val a = 1", "a")))
+  }
+
+  def testSegmentsAfterTheRerunOneAreDropped() {
+    compiled(Seq("val a = 1"), "A$A0")
+    compiled(Seq("val a = 1", "val b = 2"), "A$A1")
+    compiled(Seq("val a = 1", "val b = 3"), "A$A2")
+
+    assertEquals(IncrementalSegment(Seq("A$A0", "A$A2"), 2),
+      WorksheetIncrementalState.nextSegment(Path, Seq("val a = 1", "val b = 3", "b")))
+  }
+
+  def testReset() {
+    compiled(Seq("val a = 1"), "A$A0")
+    WorksheetIncrementalState.reset(Path)
+
+    assertEquals(IncrementalSegment(Seq.empty, 0), WorksheetIncrementalState.nextSegment(Path, Seq("val a = 1", "a")))
+  }
+
+  private def compiled(statements: Seq[String], className: String) {
+    val segment = WorksheetIncrementalState.nextSegment(Path, statements)
+    WorksheetIncrementalState.segmentCompiled(Path, segment, className, statements)
+  }
+}
@@ -0,0 +1,49 @@
+package org.jetbrains.plugins.scala
+package worksheet
+
+import org.jetbrains.jps.incremental.scala.remote.WorksheetMarkers
+import org.jetbrains.plugins.scala.base.ScalaLightCodeInsightFixtureTestAdapter
+import org.jetbrains.plugins.scala.lang.psi.api.ScalaFile
+import org.jetbrains.plugins.scala.worksheet.processor.WorksheetSourceProcessor
+import org.jetbrains.plugins.scala.worksheet.processor.WorksheetSourceProcessor.IncrementalSegment
+import org.junit.Assert._
+
+class WorksheetSegmentSourceTest extends ScalaLightCodeInsightFixtureTestAdapter {
+  private val Text = "1 + 1\nval a = 2\na + 1\n"
+
+  def testFirstSegment() {
+    val code = generate(IncrementalSegment(Seq.empty, 0))
+
+    assertTrue(code.contains(s"var ${WorksheetMarkers.INSTANCE_METHOD}: AnyRef = null"))
+    assertFalse(code.contains(WorksheetMarkers.PREVIOUS_SEGMENT_METHOD))
+    assertTrue(code.contains("get$$instance$$res0"))
+    assertTrue(code.contains("get$$instance$$a"))
+    assertTrue(code.contains("get$$instance$$res1"))
+  }
+
+  def testPreviousStatementsAreSkipped() {
+    val from = statements.indexWhere(_.startsWith("a + 1"))
+    val code = generate(IncrementalSegment(Seq("A$A0"), from))
+
+    assertTrue(code.contains(s"""def ${WorksheetMarkers.PREVIOUS_SEGMENT_METHOD} = "A$$A0""""))
+    assertFalse(code.contains("get$$instance$$res0"))
+    assertFalse(code.contains("get$$instance$$a"))
+    // the results are numbered as if the skipped statements were compiled
+    assertTrue(code.contains("get$$instance$$res1"))
+  }
+
+  private def statements: Seq[String] = {
+    myFixture.configureByText("dummy.sc", Text)
+    WorksheetSourceProcessor.incrementalStatements(myFixture.getFile.asInstanceOf[ScalaFile]).get
+  }
+
+  private def generate(segment: IncrementalSegment): String = {
+    myFixture.configureByText("dummy.sc", Text)
+    WorksheetSourceProcessor.process(myFixture.getFile.asInstanceOf[ScalaFile], None, 1, Some(segment)) match {
+      case Left((code, name)) =>
+        assertEquals("A$A1", name)
+        code
+      case Right(error) => throw new AssertionError("Unexpected error: " + error)
+    }
+  }
+}
@@ -0,0 +1,126 @@
+package org.jetbrains.sbt
+package model
+
+import java.io.File
+
+import com.intellij.openapi.util.io.FileUtil
+import org.jetbrains.sbt.project.structure.StructureCache
+import org.junit.{Assert, Test}
+
+class StructureCacheTest {
+  @Test
+  def testSnapshot() {
+    withDirectory { directory =>
+      val cache = new StructureCache(directory)
+      val structure = StructureParserTest.createExpectedStructure.copy(projects = Seq.empty)
+
+      Assert.assertEquals(None, cache.get("key"))
+
+      cache.put("key", structure, 5000L)
+
+      Assert.assertEquals(Some(structure), cache.get("key"))
+      Assert.assertEquals(None, cache.get("other-key"))
+
+      val statistics = cache.statistics
+      Assert.assertEquals(1, statistics.hits)
+      Assert.assertEquals(1, statistics.misses)
+      Assert.assertEquals(5000L, statistics.savedTime)
+    }
+  }
+
+  @Test
+  def testKey() {
+    withDirectory { directory =>
+      writeLinesTo(directory / "build.sbt", "name := \"foo\"")
+      (directory / "project").mkdirs()
+      writeLinesTo(directory / "project" / "build.properties", "sbt.version=0.13.7")
+      (directory / "project" / "target").mkdirs()
+      writeLinesTo(directory / "project" / "target" / "Generated.scala", "object Generated")
+
+      val key = StructureCache.keyFor(directory, Seq("0.13.7"))
+
+      Assert.assertEquals(key, StructureCache.keyFor(directory, Seq("0.13.7")))
+      Assert.assertFalse(key == StructureCache.keyFor(directory, Seq("0.13.8")))
+
+      writeLinesTo(directory / "project" / "target" / "Generated.scala", "object Generated2")
+      Assert.assertEquals(key, StructureCache.keyFor(directory, Seq("0.13.7")))
+
+      writeLinesTo(directory / "project" / "Build.scala", "object Build")
+      Assert.assertFalse(key == StructureCache.keyFor(directory, Seq("0.13.7")))
+    }
+  }
+
+  @Test
+  def testProjectSnapshot() {
+    withDirectory { directory =>
+      val cache = new StructureCache(directory / "cache")
+
+      val libraryJar = directory / "scala-library.jar"
+      val compilerJar = directory / "scala-compiler.jar"
+      writeLinesTo(libraryJar, "library")
+      writeLinesTo(compilerJar, "compiler")
+
+      val expected = StructureParserTest.createExpectedStructure
+      val structure = expected.copy(projects = expected.projects.map { project =>
+        project.copy(scala = project.scala.map(_.copy(libraryJar = libraryJar, compilerJar = compilerJar)))
+      })
+
+      Assert.assertFalse(structure.projects.isEmpty)
+
+      cache.put("key", structure, 5000L)
+
+      Assert.assertEquals(Some(structure), cache.get("key"))
+
+      compilerJar.delete()
+      Assert.assertEquals(None, cache.get("key"))
+    }
+  }
+
+  @Test
+  def testKeyOfSubprojectsAndGlobalSettings() {
+    withDirectory { directory =>
+      val global = directory / "global"
+      val root = directory / "root"
+
+      (root / "sub").mkdirs()
+      writeLinesTo(root / "build.sbt", "lazy val sub = project")
+      writeLinesTo(root / "sub" / "build.sbt", "name := \"sub\"")
+      (global / "0.13" / "plugins").mkdirs()
+
+      val key = StructureCache.keyFor(root, Seq.empty, global)
+
+      writeLinesTo(root / "sub" / "build.sbt", "name := \"sub2\"")
+      val subprojectKey = StructureCache.keyFor(root, Seq.empty, global)
+      Assert.assertFalse(key == subprojectKey)
+
+      writeLinesTo(global / "0.13" / "global.sbt", "scalacOptions += \"-deprecation\"")
+      val settingsKey = StructureCache.keyFor(root, Seq.empty, global)
+      Assert.assertFalse(subprojectKey == settingsKey)
+
+      writeLinesTo(global / "0.13" / "plugins" / "plugins.sbt", "addSbtPlugin(\"foo\" % \"bar\" % \"1.0\")")
+      Assert.assertFalse(settingsKey == StructureCache.keyFor(root, Seq.empty, global))
+    }
+  }
+
+  @Test
+  def testCacheable() {
+    withDirectory { directory =>
+      val expected = StructureParserTest.createExpectedStructure
+
+      def structureBasedIn(base: File) = expected.copy(projects = expected.projects.map(_.copy(base = base)))
+
+      Assert.assertTrue(StructureCache.isCacheable(directory, structureBasedIn(directory)))
+      Assert.assertTrue(StructureCache.isCacheable(directory, structureBasedIn(directory / "sub")))
+      Assert.assertFalse(StructureCache.isCacheable(directory / "root", structureBasedIn(directory / "other")))
+    }
+  }
+
+  private def withDirectory(body: File => Unit) {
+    val directory = FileUtil.createTempDirectory("structure-cache", "", true)
+    try {
+      body(directory)
+    } finally {
+      FileUtil.delete(directory)
+    }
+  }
+}
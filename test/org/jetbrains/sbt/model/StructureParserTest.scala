@@ -1,8 +1,9 @@
 package org.jetbrains.sbt
 package model
 
-import java.io.File
+import java.io.{File, PrintWriter}
 
+import com.intellij.openapi.util.io.FileUtil
 import org.jetbrains.sbt.project.structure._
 import org.jetbrains.plugins.scala.project.Version
 import org.junit.{Assert, Test}
@@ -21,6 +22,28 @@ class StructureParserTest {
 
     Assert.assertEquals(expected, actual)
   }
+
+  @Test
+  def testStreamingParsing() {
+    val file = new File(getClass.getResource("structure.xml").toURI)
+    val actual = StructureParser.parse(file, new File("$HOME"))
+    val expected = StructureParserTest.createExpectedStructure
+
+    Assert.assertEquals(expected, actual)
+  }
+
+  @Test
+  def testStreamingParsingOfLargeStructure() {
+    val file = StructureParserTest.createLargeStructureFile(projects = 20, modules = 50)
+    try {
+      val expected = StructureParser.parse(XML.loadFile(file), new File("$HOME"))
+      val actual = StructureParser.parse(file, new File("$HOME"))
+
+      Assert.assertEquals(expected, actual)
+    } finally {
+      file.delete()
+    }
+  }
 }
 
 object StructureParserTest {
@@ -80,4 +103,71 @@ object StructureParserTest {
 
     Structure(Seq(project), Some(repository), None, "")
   }
-}
\ No newline at end of file
+
+  def createLargeStructureFile(projects: Int, modules: Int): File = {
+    val file = FileUtil.createTempFile("structure", ".xml", true)
+
+    using(new PrintWriter(file, "UTF-8")) { writer =>
+      writer.println("<structure sbt=\"0.13.7\">")
+
+      for (p <- 0 until projects) {
+        writer.println(s"""  <project>
+          |    <id>project$p</id>
+          |    <name>project-$p</name>
+          |    <organization>org.example</organization>
+          |    <version>1.0</version>
+          |    <base>/work/project$p</base>
+          |    <target>./target</target>
+          |    <build>
+          |      <import>import sbt._, Keys._</import>
+          |      <classes>~/.sbt/boot/scala-2.10.4/lib/scala-library.jar</classes>
+          |    </build>
+          |    <java>
+          |      <option>-Xlint</option>
+          |    </java>
+          |    <scala>
+          |      <version>2.11.4</version>
+          |      <library>~/.sbt/boot/scala-2.11.4/lib/scala-library.jar</library>
+          |      <compiler>~/.sbt/boot/scala-2.11.4/lib/scala-compiler.jar</compiler>
+          |      <extra>~/.sbt/boot/scala-2.11.4/lib/scala-reflect.jar</extra>
+          |      <option>-deprecation</option>
+          |    </scala>
+          |    <configuration id="compile">
+          |      <sources>./src/main/scala</sources>
+          |      <sources managed="true">./target/src_managed/main</sources>
+          |      <resources>./src/main/resources</resources>
+          |      <classes>./target/classes</classes>
+          |    </configuration>
+          |    <configuration id="test">
+          |      <sources>./src/test/scala</sources>
+          |      <resources>./src/test/resources</resources>
+          |      <classes>./target/test-classes</classes>
+          |    </configuration>
+          |    <resolver name="public" root="https://repo1.maven.org/maven2/"/>""".stripMargin)
+
+        if (p > 0) writer.println(s"""    <project configurations="compile">project${p - 1}</project>""")
+
+        for (m <- 0 until modules) {
+          writer.println(s"""    <module organization="org.example" name="library$m" revision="1.$m" configurations="compile;test"/>""")
+        }
+
+        writer.println(s"""    <jar configurations="test">/work/lib/fixture$p.jar</jar>""")
+        writer.println("  </project>")
+      }
+
+      writer.println("  <repository>")
+      for (m <- 0 until modules) {
+        writer.println(s"""    <module organization="org.example" name="library$m" revision="1.$m">
+          |      <jar>~/.ivy2/cache/org.example/library$m/jars/library$m-1.$m.jar</jar>
+          |      <doc>~/.ivy2/cache/org.example/library$m/docs/library$m-1.$m-javadoc.jar</doc>
+          |      <src>~/.ivy2/cache/org.example/library$m/srcs/library$m-1.$m-sources.jar</src>
+          |    </module>""".stripMargin)
+      }
+      writer.println("  </repository>")
+      writer.println("  <localCachePath>~/.ivy2/cache</localCachePath>")
+      writer.println("</structure>")
+    }
+
+    file
+  }
+}
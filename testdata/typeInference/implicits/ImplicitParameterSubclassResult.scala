@@ -0,0 +1,27 @@
+object ImplicitParameterSubclassResult {
+trait Show[T] {
+  def show(t: T): String
+}
+
+class IntShow extends Show[Int] {
+  def show(t: Int) = t.toString
+}
+
+trait Eq[T]
+
+object C {
+  type S = Show[String]
+
+  implicit val intEq: Eq[Int] = new Eq[Int] {}
+  implicit def ordering: Ordering[String] = Ordering.String
+  implicit val stringShow: S = new Show[String] {
+    def show(t: String) = t
+  }
+  implicit val intShow: IntShow = new IntShow
+
+  def show[T](t: T)(implicit s: Show[T]) = s
+
+  /*start*/(show(1), show(""))/*end*/
+}
+}
+//(Show[Int], Show[String])